@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import javax.annotation.Nullable;
+import org.apache.beam.sdk.options.Default;
+import org.apache.beam.sdk.options.Description;
+import org.apache.beam.sdk.options.PipelineOptions;
+
+/**
+ * Options that configure the batch {@link GroupAlsoByWindowsViaOutputBufferDoFn}.
+ */
+public interface GroupAlsoByWindowOptions extends PipelineOptions {
+  @Default.Long(-1L)
+  @Description(
+      "The number of bytes of encoded values that the batch GroupAlsoByWindow buffers in memory "
+          + "for a single key and window before spilling them to local disk. Must not be zero. If "
+          + "negative, values are always buffered in memory.")
+  long getGroupAlsoByWindowSpillThresholdBytes();
+  void setGroupAlsoByWindowSpillThresholdBytes(long thresholdBytes);
+
+  @Nullable
+  @Description(
+      "The local directory in which the batch GroupAlsoByWindow writes spilled values. "
+          + "Defaults to the directory named by the java.io.tmpdir system property.")
+  String getGroupAlsoByWindowSpillDirectory();
+  void setGroupAlsoByWindowSpillDirectory(String directory);
+}
@@ -18,6 +18,7 @@
 package org.apache.beam.runners.core;
 
 import com.google.common.collect.Iterables;
+import java.io.File;
 import java.util.List;
 import org.apache.beam.sdk.transforms.OldDoFn;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
@@ -34,6 +35,10 @@ import org.joda.time.Instant;
 /**
  * The default batch {@link GroupAlsoByWindowsDoFn} implementation, if no specialized "fast path"
  * implementation is applicable.
+ *
+ * <p>If {@link GroupAlsoByWindowOptions#getGroupAlsoByWindowSpillThresholdBytes()} is positive,
+ * buffered values are stored using {@link SpillingStateInternals}, so the values of a single key
+ * are not required to fit in memory.
  */
 @SystemDoFnInternal
 public class GroupAlsoByWindowsViaOutputBufferDoFn<K, InputT, OutputT, W extends BoundedWindow>
@@ -65,6 +70,16 @@ public class GroupAlsoByWindowsViaOutputBufferDoFn<K, InputT, OutputT, W extends
     timerInternals.advanceSynchronizedProcessingTime(
         TimerCallback.NO_OP, BoundedWindow.TIMESTAMP_MAX_VALUE);
     StateInternals<K> stateInternals = stateInternalsFactory.stateInternalsForKey(key);
+    GroupAlsoByWindowOptions options = c.getPipelineOptions().as(GroupAlsoByWindowOptions.class);
+    if (options.getGroupAlsoByWindowSpillThresholdBytes() >= 0) {
+      // Buffer the values of large keys on local disk rather than in memory.
+      String spillDirectory = options.getGroupAlsoByWindowSpillDirectory();
+      stateInternals =
+          SpillingStateInternals.wrap(
+              stateInternals,
+              options.getGroupAlsoByWindowSpillThresholdBytes(),
+              spillDirectory == null ? null : new File(spillDirectory));
+    }
 
     ReduceFnRunner<K, InputT, OutputT, W> reduceFnRunner =
         new ReduceFnRunner<K, InputT, OutputT, W>(
@@ -0,0 +1,543 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.Coder.Context;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.Combine.KeyedCombineFn;
+import org.apache.beam.sdk.transforms.CombineWithContext.KeyedCombineFnWithContext;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.OutputTimeFn;
+import org.apache.beam.sdk.util.state.AccumulatorCombiningState;
+import org.apache.beam.sdk.util.state.BagState;
+import org.apache.beam.sdk.util.state.ReadableState;
+import org.apache.beam.sdk.util.state.State;
+import org.apache.beam.sdk.util.state.StateContext;
+import org.apache.beam.sdk.util.state.StateContexts;
+import org.apache.beam.sdk.util.state.StateInternals;
+import org.apache.beam.sdk.util.state.StateNamespace;
+import org.apache.beam.sdk.util.state.StateTable;
+import org.apache.beam.sdk.util.state.StateTag;
+import org.apache.beam.sdk.util.state.StateTag.StateBinder;
+import org.apache.beam.sdk.util.state.ValueState;
+import org.apache.beam.sdk.util.state.WatermarkHoldState;
+
+/**
+ * {@link StateInternals} that store {@link BagState bags} as encoded values, spilling them to
+ * local files once the encoded values of a bag exceed a byte threshold. All other kinds of state
+ * are provided by an underlying {@link StateInternals}.
+ *
+ * <p>The contents of a bag are read lazily, decoding the spilled values from their files and the
+ * remaining values from memory, so reading a bag does not require all of its values to fit in
+ * memory. Spill files are deleted once neither the bag nor any {@link Iterable} read from it can be
+ * reached. They are written to a directory of their own within the spill directory, which is
+ * deleted when the JVM exits.
+ */
+public class SpillingStateInternals<K> implements StateInternals<K> {
+  /**
+   * Returns {@link StateInternals} that provide all state other than bags from the provided
+   * {@link StateInternals}, and spill bags to files in the provided directory once their encoded
+   * values exceed the provided number of bytes.
+   *
+   * @param spillDirectory the directory to write spill files to, or {@code null} to use the
+   *                       default temporary-file directory
+   */
+  public static <K> SpillingStateInternals<K> wrap(
+      StateInternals<K> underlying, long spillThresholdBytes, @Nullable File spillDirectory) {
+    checkArgument(
+        spillThresholdBytes > 0,
+        "Spill threshold must be positive, got %s",
+        spillThresholdBytes);
+    return new SpillingStateInternals<>(underlying, spillThresholdBytes, spillDirectory);
+  }
+
+  private final StateInternals<K> underlying;
+  private final long spillThresholdBytes;
+  @Nullable private final File spillDirectory;
+
+  private final StateTable<K> spillingState = new StateTable<K>() {
+    @Override
+    protected StateBinder<K> binderForNamespace(StateNamespace namespace, StateContext<?> c) {
+      return new SpillingStateBinder(namespace, c);
+    }
+  };
+
+  private SpillingStateInternals(
+      StateInternals<K> underlying, long spillThresholdBytes, @Nullable File spillDirectory) {
+    this.underlying = underlying;
+    this.spillThresholdBytes = spillThresholdBytes;
+    this.spillDirectory = spillDirectory;
+  }
+
+  @Override
+  public K getKey() {
+    return underlying.getKey();
+  }
+
+  @Override
+  public <T extends State> T state(StateNamespace namespace, StateTag<? super K, T> address) {
+    return spillingState.get(namespace, address, StateContexts.nullContext());
+  }
+
+  @Override
+  public <T extends State> T state(
+      StateNamespace namespace, StateTag<? super K, T> address, StateContext<?> c) {
+    return spillingState.get(namespace, address, c);
+  }
+
+  /**
+   * A {@link StateBinder} that binds bags to {@link SpillingBag SpillingBags}, and all other state
+   * to the state of the underlying {@link StateInternals}.
+   */
+  private class SpillingStateBinder implements StateBinder<K> {
+    private final StateNamespace namespace;
+    private final StateContext<?> c;
+
+    private SpillingStateBinder(StateNamespace namespace, StateContext<?> c) {
+      this.namespace = namespace;
+      this.c = c;
+    }
+
+    @Override
+    public <T> ValueState<T> bindValue(
+        StateTag<? super K, ValueState<T>> address, Coder<T> coder) {
+      return underlying.state(namespace, address, c);
+    }
+
+    @Override
+    public <T> BagState<T> bindBag(
+        StateTag<? super K, BagState<T>> address, Coder<T> elemCoder) {
+      return new SpillingBag<>(elemCoder, spillThresholdBytes, spillDirectory);
+    }
+
+    @Override
+    public <InputT, AccumT, OutputT> AccumulatorCombiningState<InputT, AccumT, OutputT>
+        bindCombiningValue(
+            StateTag<? super K, AccumulatorCombiningState<InputT, AccumT, OutputT>> address,
+            Coder<AccumT> accumCoder,
+            CombineFn<InputT, AccumT, OutputT> combineFn) {
+      return underlying.state(namespace, address, c);
+    }
+
+    @Override
+    public <InputT, AccumT, OutputT> AccumulatorCombiningState<InputT, AccumT, OutputT>
+        bindKeyedCombiningValue(
+            StateTag<? super K, AccumulatorCombiningState<InputT, AccumT, OutputT>> address,
+            Coder<AccumT> accumCoder,
+            KeyedCombineFn<? super K, InputT, AccumT, OutputT> combineFn) {
+      return underlying.state(namespace, address, c);
+    }
+
+    @Override
+    public <InputT, AccumT, OutputT> AccumulatorCombiningState<InputT, AccumT, OutputT>
+        bindKeyedCombiningValueWithContext(
+            StateTag<? super K, AccumulatorCombiningState<InputT, AccumT, OutputT>> address,
+            Coder<AccumT> accumCoder,
+            KeyedCombineFnWithContext<? super K, InputT, AccumT, OutputT> combineFn) {
+      return underlying.state(namespace, address, c);
+    }
+
+    @Override
+    public <W extends BoundedWindow> WatermarkHoldState<W> bindWatermark(
+        StateTag<? super K, WatermarkHoldState<W>> address,
+        OutputTimeFn<? super W> outputTimeFn) {
+      return underlying.state(namespace, address, c);
+    }
+  }
+
+  /**
+   * A {@link BagState} that buffers the encoded values added to it in memory, and writes the
+   * buffered values to a new {@link SpillFile} whenever the buffer exceeds the spill threshold.
+   */
+  static final class SpillingBag<T> implements BagState<T> {
+    private final Coder<T> elemCoder;
+    private final long spillThresholdBytes;
+    @Nullable private final File spillDirectory;
+
+    private List<SpillFile> spillFiles;
+    private ByteArrayOutputStream buffer;
+    private long bufferedElements;
+
+    SpillingBag(Coder<T> elemCoder, long spillThresholdBytes, @Nullable File spillDirectory) {
+      this.elemCoder = elemCoder;
+      this.spillThresholdBytes = spillThresholdBytes;
+      this.spillDirectory = spillDirectory;
+      this.spillFiles = new ArrayList<>();
+      this.buffer = new ByteArrayOutputStream();
+      this.bufferedElements = 0L;
+    }
+
+    @Override
+    public void clear() {
+      // Iterables previously returned from read() may still be in use, so the contents are
+      // replaced rather than modified. Spill files are deleted once they are unreachable.
+      spillFiles = new ArrayList<>();
+      buffer = new ByteArrayOutputStream();
+      bufferedElements = 0L;
+    }
+
+    @Override
+    public SpillingBag<T> readLater() {
+      return this;
+    }
+
+    @Override
+    public Iterable<T> read() {
+      List<Iterable<T>> contents = new ArrayList<>();
+      for (SpillFile spillFile : spillFiles) {
+        contents.add(new SpillFileIterable<>(elemCoder, spillFile));
+      }
+      if (bufferedElements > 0) {
+        contents.add(
+            new EncodedBytesIterable<>(elemCoder, buffer.toByteArray(), bufferedElements));
+      }
+      return new SpilledContents<>(elemCoder, contents);
+    }
+
+    @Override
+    public void add(T input) {
+      try {
+        elemCoder.encode(input, buffer, Context.NESTED);
+        bufferedElements++;
+        if (buffer.size() > spillThresholdBytes) {
+          spillFiles.add(SpillFile.write(spillDirectory, buffer, bufferedElements));
+          buffer = new ByteArrayOutputStream();
+          bufferedElements = 0L;
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(
+            String.format("Failed to buffer value %s with coder %s", input, elemCoder), e);
+      }
+    }
+
+    @Override
+    public ReadableState<Boolean> isEmpty() {
+      return new ReadableState<Boolean>() {
+        @Override
+        public ReadableState<Boolean> readLater() {
+          return this;
+        }
+
+        @Override
+        public Boolean read() {
+          return spillFiles.isEmpty() && bufferedElements == 0L;
+        }
+      };
+    }
+  }
+
+  /**
+   * A local file containing a number of values encoded in the {@link Context#NESTED nested}
+   * context.
+   *
+   * <p>The file is deleted once the {@link SpillFile} is no longer reachable.
+   */
+  static final class SpillFile {
+    /**
+     * The directories spill files are written to, by the directory they were created in. Each is
+     * deleted along with the files left in it when the JVM exits.
+     */
+    private static final Map<File, File> SPILL_DIRECTORIES = new HashMap<>();
+
+    private final File file;
+    private final long elements;
+
+    /**
+     * Writes the contents of the provided buffer to a new file in the provided directory, and
+     * returns a {@link SpillFile} for it.
+     */
+    static SpillFile write(@Nullable File directory, ByteArrayOutputStream contents, long elements)
+        throws IOException {
+      final File file = File.createTempFile("beam-gabw-", ".spill", spillDirectory(directory));
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+        contents.writeTo(out);
+      }
+      SpillFile spillFile = new SpillFile(file, elements);
+      ResourceReference.releaseWhenUnreachable(spillFile, new Closeable() {
+        @Override
+        public void close() {
+          file.delete();
+        }
+      });
+      return spillFile;
+    }
+
+    /**
+     * Returns the directory to write spill files to within the provided directory, creating it
+     * if necessary.
+     */
+    private static synchronized File spillDirectory(@Nullable File parent) throws IOException {
+      File parentDirectory =
+          parent == null ? new File(System.getProperty("java.io.tmpdir")) : parent;
+      File spillDirectory = SPILL_DIRECTORIES.get(parentDirectory);
+      if (spillDirectory == null || !spillDirectory.isDirectory()) {
+        spillDirectory =
+            Files.createTempDirectory(parentDirectory.toPath(), "beam-gabw-").toFile();
+        final File toDelete = spillDirectory;
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+          @Override
+          public void run() {
+            File[] files = toDelete.listFiles();
+            if (files != null) {
+              for (File file : files) {
+                file.delete();
+              }
+            }
+            toDelete.delete();
+          }
+        });
+        SPILL_DIRECTORIES.put(parentDirectory, spillDirectory);
+      }
+      return spillDirectory;
+    }
+
+    private SpillFile(File file, long elements) {
+      this.file = file;
+      this.elements = elements;
+    }
+
+    InputStream open() throws IOException {
+      return new BufferedInputStream(new FileInputStream(file));
+    }
+  }
+
+  /**
+   * Releases a resource, such as a spill file or a stream reading one, once the object using it
+   * is no longer reachable.
+   *
+   * <p>The released resource must not refer to the object using it.
+   */
+  private static final class ResourceReference extends PhantomReference<Object> {
+    private static final ReferenceQueue<Object> UNREACHABLE = new ReferenceQueue<>();
+    private static final Set<ResourceReference> REFERENCES =
+        Collections.newSetFromMap(new ConcurrentHashMap<ResourceReference, Boolean>());
+
+    private final Closeable resource;
+
+    static void releaseWhenUnreachable(Object referent, Closeable resource) {
+      releaseUnreachable();
+      REFERENCES.add(new ResourceReference(referent, resource));
+    }
+
+    /**
+     * Releases the resources of all objects which are no longer reachable.
+     */
+    private static void releaseUnreachable() {
+      Reference<?> unreachable = UNREACHABLE.poll();
+      while (unreachable != null) {
+        ResourceReference reference = (ResourceReference) unreachable;
+        REFERENCES.remove(reference);
+        try {
+          reference.resource.close();
+        } catch (IOException e) {
+          // The resource is no longer used, so there is nothing to do but leak it.
+        }
+        unreachable = UNREACHABLE.poll();
+      }
+    }
+
+    private ResourceReference(Object referent, Closeable resource) {
+      super(referent, UNREACHABLE);
+      this.resource = resource;
+    }
+  }
+
+  /**
+   * The contents of a {@link SpillingBag} at the time it was read.
+   *
+   * <p>The contents refer to local spill files, so they are serialized by reading them into a
+   * {@link List}. Java serialization does so through {@code writeReplace}. Serialization frameworks
+   * that do not honor {@code writeReplace}, such as Kryo, must register a serializer for this class
+   * that encodes the values with {@link #getElemCoder()}.
+   */
+  public static final class SpilledContents<T> implements Iterable<T>, Serializable {
+    private final transient Coder<T> elemCoder;
+    private final transient List<Iterable<T>> contents;
+
+    private SpilledContents(Coder<T> elemCoder, List<Iterable<T>> contents) {
+      this.elemCoder = elemCoder;
+      this.contents = contents;
+    }
+
+    /**
+     * Returns the {@link Coder} of the values.
+     */
+    public Coder<T> getElemCoder() {
+      return elemCoder;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return Iterables.concat(contents).iterator();
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+      return Lists.newArrayList(this);
+    }
+
+    @Override
+    public String toString() {
+      return Iterables.toString(this);
+    }
+  }
+
+  /**
+   * An {@link Iterable} over the values encoded in a {@link SpillFile}.
+   */
+  private static final class SpillFileIterable<T> implements Iterable<T> {
+    private final Coder<T> elemCoder;
+    private final SpillFile spillFile;
+
+    private SpillFileIterable(Coder<T> elemCoder, SpillFile spillFile) {
+      this.elemCoder = elemCoder;
+      this.spillFile = spillFile;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      InputStream in;
+      try {
+        in = spillFile.open();
+      } catch (IOException e) {
+        throw new RuntimeException(
+            String.format("Failed to open spill file %s", spillFile.file), e);
+      }
+      SpillFileIterator<T> iterator = new SpillFileIterator<>(elemCoder, in, spillFile);
+      // An iterator that is not read to the end does not close its stream, so close it once the
+      // iterator is no longer reachable.
+      ResourceReference.releaseWhenUnreachable(iterator, in);
+      return iterator;
+    }
+  }
+
+  /**
+   * A {@link DecodingIterator} over the values of a {@link SpillFile}, which keeps the file from
+   * being deleted while it is being read.
+   */
+  private static final class SpillFileIterator<T> extends DecodingIterator<T> {
+    @SuppressWarnings("unused")
+    private final SpillFile spillFile;
+
+    private SpillFileIterator(Coder<T> elemCoder, InputStream in, SpillFile spillFile) {
+      super(elemCoder, in, spillFile.elements);
+      this.spillFile = spillFile;
+    }
+  }
+
+  /**
+   * An {@link Iterable} over the values encoded in a byte array.
+   */
+  private static final class EncodedBytesIterable<T> implements Iterable<T> {
+    private final Coder<T> elemCoder;
+    private final byte[] encoded;
+    private final long elements;
+
+    private EncodedBytesIterable(Coder<T> elemCoder, byte[] encoded, long elements) {
+      this.elemCoder = elemCoder;
+      this.encoded = encoded;
+      this.elements = elements;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return new DecodingIterator<>(elemCoder, new ByteArrayInputStream(encoded), elements);
+    }
+  }
+
+  /**
+   * An {@link Iterator} that decodes a fixed number of values from an {@link InputStream}, closing
+   * the stream after the last value is decoded.
+   */
+  private static class DecodingIterator<T> implements Iterator<T> {
+    private final Coder<T> elemCoder;
+    private final InputStream in;
+    private long remaining;
+
+    private DecodingIterator(Coder<T> elemCoder, InputStream in, long elements) {
+      this.elemCoder = elemCoder;
+      this.in = in;
+      this.remaining = elements;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return remaining > 0;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      try {
+        T next = elemCoder.decode(in, Context.NESTED);
+        remaining--;
+        if (remaining == 0) {
+          in.close();
+        }
+        return next;
+      } catch (IOException e) {
+        remaining = 0;
+        try {
+          in.close();
+        } catch (IOException closeException) {
+          e.addSuppressed(closeException);
+        }
+        throw new RuntimeException(
+            String.format("Failed to decode spilled value with coder %s", elemCoder), e);
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
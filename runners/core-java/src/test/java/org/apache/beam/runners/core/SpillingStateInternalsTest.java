@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.core;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.util.SerializableUtils;
+import org.apache.beam.sdk.util.state.BagState;
+import org.apache.beam.sdk.util.state.InMemoryStateInternals;
+import org.apache.beam.sdk.util.state.StateNamespace;
+import org.apache.beam.sdk.util.state.StateNamespaces;
+import org.apache.beam.sdk.util.state.StateTag;
+import org.apache.beam.sdk.util.state.StateTags;
+import org.apache.beam.sdk.util.state.ValueState;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link SpillingStateInternals}.
+ */
+@RunWith(JUnit4.class)
+public class SpillingStateInternalsTest {
+  private static final StateNamespace NAMESPACE = StateNamespaces.global();
+  private static final StateTag<Object, BagState<Integer>> BAG_TAG =
+      StateTags.bag("bag", VarIntCoder.of());
+  private static final StateTag<Object, ValueState<String>> VALUE_TAG =
+      StateTags.value("value", StringUtf8Coder.of());
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private InMemoryStateInternals<String> underlying;
+  private SpillingStateInternals<String> stateInternals;
+
+  @Before
+  public void setup() {
+    underlying = InMemoryStateInternals.forKey("key");
+    stateInternals = SpillingStateInternals.wrap(underlying, 16L, tmp.getRoot());
+  }
+
+  @Test
+  public void bagReadsValuesInMemoryAndSpilled() {
+    BagState<Integer> bag = stateInternals.state(NAMESPACE, BAG_TAG);
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      bag.add(i);
+      expected.add(i);
+    }
+
+    assertThat(tmp.getRoot().list().length, not(equalTo(0)));
+    assertThat(bag.read(), contains(expected.toArray()));
+    // The contents can be read repeatedly
+    assertThat(bag.read(), contains(expected.toArray()));
+    assertThat(bag.isEmpty().read(), is(false));
+  }
+
+  @Test
+  public void bagReadBeforeClearIsUnchanged() {
+    BagState<Integer> bag = stateInternals.state(NAMESPACE, BAG_TAG);
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      bag.add(i);
+      expected.add(i);
+    }
+    Iterable<Integer> contents = bag.read();
+    bag.clear();
+
+    assertThat(bag.read(), emptyIterable());
+    assertThat(bag.isEmpty().read(), is(true));
+    assertThat(contents, contains(expected.toArray()));
+  }
+
+  @Test
+  public void bagContentsSerializeAsList() {
+    BagState<Integer> bag = stateInternals.state(NAMESPACE, BAG_TAG);
+    for (int i = 0; i < 10; i++) {
+      bag.add(i);
+    }
+
+    Object deserialized = SerializableUtils.clone((Serializable) bag.read());
+    assertThat(
+        deserialized, Matchers.<Object>equalTo(ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)));
+  }
+
+  @Test
+  public void stateOtherThanBagsIsUnderlying() {
+    ValueState<String> value = stateInternals.state(NAMESPACE, VALUE_TAG);
+    value.write("foo");
+
+    assertThat(value, sameInstance(underlying.state(NAMESPACE, VALUE_TAG)));
+    assertThat(underlying.state(NAMESPACE, VALUE_TAG).read(), equalTo("foo"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void zeroThresholdIsRejected() {
+    SpillingStateInternals.wrap(underlying, 0L, tmp.getRoot());
+  }
+
+  @Test
+  public void sameBagIsReturnedForSameTag() {
+    assertThat(
+        stateInternals.state(NAMESPACE, BAG_TAG),
+        sameInstance(stateInternals.state(NAMESPACE, BAG_TAG)));
+  }
+}
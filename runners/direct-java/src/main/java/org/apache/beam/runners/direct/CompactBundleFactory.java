@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.runners.direct.ImmutableListBundleFactory.CommittedImmutableListBundle;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.PCollection;
+import org.joda.time.Instant;
+
+/**
+ * A factory that produces bundles that store only the values of their elements while all of the
+ * elements share the same timestamp, windows, and pane.
+ *
+ * <p>Bundles of elements that all share the same metadata (for example, elements in the
+ * {@link org.apache.beam.sdk.transforms.windowing.GlobalWindow} at the minimum timestamp) do not
+ * retain a {@link WindowedValue} per element. The {@link WindowedValue WindowedValues} are
+ * reconstructed whenever the elements of the committed bundle are iterated. As soon as an element
+ * with different metadata is added, the bundle falls back to storing every {@link WindowedValue}.
+ */
+class CompactBundleFactory implements BundleFactory {
+  public static CompactBundleFactory create() {
+    return new CompactBundleFactory();
+  }
+
+  private CompactBundleFactory() {}
+
+  @Override
+  public <T> UncommittedBundle<T> createRootBundle() {
+    return UncommittedCompactBundle.create(null, StructuralKey.empty());
+  }
+
+  @Override
+  public <T> UncommittedBundle<T> createBundle(PCollection<T> output) {
+    return UncommittedCompactBundle.create(output, StructuralKey.empty());
+  }
+
+  @Override
+  public <K, T> UncommittedBundle<T> createKeyedBundle(
+      StructuralKey<K> key, PCollection<T> output) {
+    return UncommittedCompactBundle.create(output, key);
+  }
+
+  /**
+   * A {@link UncommittedBundle} that buffers elements in memory, storing only their values for as
+   * long as every element has the same metadata as the first element.
+   */
+  private static final class UncommittedCompactBundle<T> implements UncommittedBundle<T> {
+    private final PCollection<T> pcollection;
+    private final StructuralKey<?> key;
+    private boolean committed = false;
+
+    /**
+     * The first element added to this bundle. Its timestamp, windows, and pane are shared by all
+     * of the values in {@link #values}.
+     */
+    @Nullable private WindowedValue<T> uniformElement;
+    /**
+     * The values of the elements added to this bundle while all elements share the metadata of
+     * {@link #uniformElement}, or {@code null} if an element with different metadata was added.
+     * Values may be {@code null}, so they are not stored in an {@link ImmutableList}.
+     */
+    @Nullable private List<T> values;
+    /**
+     * All of the elements added to this bundle, or {@code null} while all elements share the
+     * metadata of {@link #uniformElement}.
+     */
+    @Nullable private List<WindowedValue<T>> elements;
+
+    /**
+     * Create a new {@link UncommittedCompactBundle} for the specified {@link PCollection}.
+     */
+    public static <T> UncommittedCompactBundle<T> create(
+        PCollection<T> pcollection,
+        StructuralKey<?> key) {
+      return new UncommittedCompactBundle<>(pcollection, key);
+    }
+
+    private UncommittedCompactBundle(PCollection<T> pcollection, StructuralKey<?> key) {
+      this.pcollection = pcollection;
+      this.key = key;
+      this.values = new ArrayList<>();
+    }
+
+    @Override
+    public PCollection<T> getPCollection() {
+      return pcollection;
+    }
+
+    @Override
+    public UncommittedCompactBundle<T> add(WindowedValue<T> element) {
+      checkState(
+          !committed,
+          "Can't add element %s to committed bundle in PCollection %s",
+          element,
+          pcollection);
+      if (elements != null) {
+        elements.add(element);
+      } else if (uniformElement == null) {
+        uniformElement = element;
+        values.add(element.getValue());
+      } else if (hasSameMetadata(uniformElement, element)) {
+        values.add(element.getValue());
+      } else {
+        elements = new ArrayList<>();
+        Iterables.addAll(elements, withUniformMetadata(uniformElement, values));
+        elements.add(element);
+        values = null;
+      }
+      return this;
+    }
+
+    @Override
+    public CommittedBundle<T> commit(final Instant synchronizedCompletionTime) {
+      checkState(!committed, "Can't commit already committed bundle %s", this);
+      committed = true;
+      Iterable<WindowedValue<T>> committedElements;
+      if (elements != null) {
+        committedElements = Collections.unmodifiableList(elements);
+      } else if (uniformElement != null) {
+        committedElements =
+            withUniformMetadata(uniformElement, Collections.unmodifiableList(values));
+      } else {
+        committedElements = ImmutableList.of();
+      }
+      return CommittedImmutableListBundle.create(
+          pcollection, key, committedElements, synchronizedCompletionTime);
+    }
+
+    private static boolean hasSameMetadata(WindowedValue<?> first, WindowedValue<?> second) {
+      return first.getTimestamp().isEqual(second.getTimestamp())
+          && first.getPane().equals(second.getPane())
+          && (first.getWindows() == second.getWindows()
+              || first.getWindows().equals(second.getWindows()));
+    }
+
+    /**
+     * Returns a view of the provided values as {@link WindowedValue WindowedValues} with the same
+     * timestamp, windows, and pane as the provided element.
+     */
+    private static <ValueT> Iterable<WindowedValue<ValueT>> withUniformMetadata(
+        final WindowedValue<ValueT> metadata, Iterable<ValueT> values) {
+      return Iterables.transform(
+          values,
+          new Function<ValueT, WindowedValue<ValueT>>() {
+            @Override
+            public WindowedValue<ValueT> apply(ValueT value) {
+              return metadata.withValue(value);
+            }
+          });
+    }
+  }
+}
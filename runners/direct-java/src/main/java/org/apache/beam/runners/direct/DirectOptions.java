@@ -64,6 +64,30 @@ public interface DirectOptions extends PipelineOptions, ApplicationNameOptions {
   boolean isEnforceEncodability();
   void setEnforceEncodability(boolean test);
 
+  @Default.Double(1.0)
+  @Description(
+      "The fraction of elements, between 0 and 1, that the DirectRunner checks when enforcing "
+          + "immutability and encodability. Lower values make enforcement cheaper at the cost of "
+          + "potentially missing violations.")
+  double getEnforcementSampleRate();
+  void setEnforcementSampleRate(double sampleRate);
+
+  @Default.Integer(Integer.MAX_VALUE)
+  @Description(
+      "The maximum number of elements in each bundle that the DirectRunner checks when enforcing "
+          + "immutability and encodability.")
+  int getEnforcementMaxElementsPerBundle();
+  void setEnforcementMaxElementsPerBundle(int maxElements);
+
+  @Default.Boolean(false)
+  @Description(
+      "Controls whether the DirectRunner stores bundles compactly. If set to true, bundles in "
+          + "which every element has the same timestamp, windows, and pane store only the values "
+          + "of their elements, which reduces the memory used by pipelines with many small "
+          + "elements at the cost of recreating each element whenever a bundle is read.")
+  boolean isCompactBundles();
+  void setCompactBundles(boolean compactBundles);
+
   @Default.InstanceFactory(AvailableParallelismFactory.class)
   @Description(
       "Controls the amount of target parallelism the DirectRunner will use. Defaults to"
@@ -72,6 +96,31 @@ public interface DirectOptions extends PipelineOptions, ApplicationNameOptions {
   int getTargetParallelism();
   void setTargetParallelism(int target);
 
+  @Default.Enum("FIXED_THREAD_POOL")
+  @Description(
+      "Controls the kind of thread pool the DirectRunner uses to evaluate bundles. "
+          + "FIXED_THREAD_POOL uses a fixed number of threads equal to the target parallelism. "
+          + "WORK_STEALING uses a work-stealing pool with the target parallelism, which reduces "
+          + "queueing and context switching when many small keyed bundles are scheduled.")
+  ExecutorMode getExecutorMode();
+  void setExecutorMode(ExecutorMode mode);
+
+  /**
+   * The kinds of thread pool the {@link org.apache.beam.runners.direct.DirectRunner} can use to
+   * evaluate bundles.
+   */
+  enum ExecutorMode {
+    /**
+     * A pool with a fixed number of threads sharing a single work queue.
+     */
+    FIXED_THREAD_POOL,
+    /**
+     * A {@link java.util.concurrent.ForkJoinPool} in asynchronous mode, where each thread has its
+     * own work queue and idle threads steal work from busy threads.
+     */
+    WORK_STEALING
+  }
+
   /**
    * A {@link DefaultValueFactory} that returns the result of {@link Runtime#availableProcessors()}
    * from the {@link #create(PipelineOptions)} method. Uses {@link Runtime#getRuntime()} to obtain
@@ -28,9 +28,11 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import javax.annotation.Nullable;
 import org.apache.beam.runners.core.GBKIntoKeyedWorkItems;
 import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupByKeyOnly;
+import org.apache.beam.runners.direct.DirectOptions.ExecutorMode;
 import org.apache.beam.runners.direct.DirectRunner.DirectPipelineResult;
 import org.apache.beam.runners.direct.TestStreamEvaluatorFactory.DirectTestStreamFactory;
 import org.apache.beam.runners.direct.ViewEvaluatorFactory.ViewOverrideFactory;
@@ -195,7 +197,7 @@ public class DirectRunner
 
   private DirectRunner(DirectOptions options) {
     this.options = options;
-    this.executorServiceSupplier = new FixedThreadPoolSupplier(options);
+    this.executorServiceSupplier = new TargetParallelismExecutorServiceSupplier(options);
   }
 
   /**
@@ -292,36 +294,43 @@ public class DirectRunner
       defaultModelEnforcements(DirectOptions options) {
     ImmutableMap.Builder<Class<? extends PTransform>, Collection<ModelEnforcementFactory>>
         enforcements = ImmutableMap.builder();
-    Collection<ModelEnforcementFactory> parDoEnforcements = createParDoEnforcements(options);
+    EnforcementSampler sampler = EnforcementSampler.fromOptions(options);
+    Collection<ModelEnforcementFactory> parDoEnforcements =
+        createParDoEnforcements(options, sampler);
     enforcements.put(ParDo.Bound.class, parDoEnforcements);
     enforcements.put(ParDo.BoundMulti.class, parDoEnforcements);
     if (options.isEnforceEncodability()) {
       enforcements.put(
           Read.Unbounded.class,
-          ImmutableSet.<ModelEnforcementFactory>of(EncodabilityEnforcementFactory.create()));
+          ImmutableSet.<ModelEnforcementFactory>of(EncodabilityEnforcementFactory.create(sampler)));
       enforcements.put(
           Read.Bounded.class,
-          ImmutableSet.<ModelEnforcementFactory>of(EncodabilityEnforcementFactory.create()));
+          ImmutableSet.<ModelEnforcementFactory>of(EncodabilityEnforcementFactory.create(sampler)));
     }
     return enforcements.build();
   }
 
   private Collection<ModelEnforcementFactory> createParDoEnforcements(
-      DirectOptions options) {
+      DirectOptions options, EnforcementSampler sampler) {
     ImmutableList.Builder<ModelEnforcementFactory> enforcements = ImmutableList.builder();
     if (options.isEnforceImmutability()) {
-      enforcements.add(ImmutabilityEnforcementFactory.create());
+      enforcements.add(ImmutabilityEnforcementFactory.create(sampler));
     }
     if (options.isEnforceEncodability()) {
-      enforcements.add(EncodabilityEnforcementFactory.create());
+      enforcements.add(EncodabilityEnforcementFactory.create(sampler));
     }
     return enforcements.build();
   }
 
   private BundleFactory createBundleFactory(DirectOptions pipelineOptions) {
-    BundleFactory bundleFactory = ImmutableListBundleFactory.create();
+    BundleFactory bundleFactory =
+        pipelineOptions.isCompactBundles()
+            ? CompactBundleFactory.create()
+            : ImmutableListBundleFactory.create();
     if (pipelineOptions.isEnforceImmutability()) {
-      bundleFactory = ImmutabilityCheckingBundleFactory.create(bundleFactory);
+      bundleFactory =
+          ImmutabilityCheckingBundleFactory.create(
+              bundleFactory, EnforcementSampler.fromOptions(pipelineOptions));
     }
     return bundleFactory;
   }
@@ -437,23 +446,41 @@ public class DirectRunner
   }
 
   /**
-   * A {@link Supplier} that creates a {@link ExecutorService} based on
-   * {@link Executors#newFixedThreadPool(int)}.
+   * A {@link Supplier} that creates a {@link ExecutorService} based on the
+   * {@link DirectOptions#getExecutorMode() executor mode} and
+   * {@link DirectOptions#getTargetParallelism() target parallelism} of the provided options.
+   *
+   * <p>{@link ExecutorMode#FIXED_THREAD_POOL} uses {@link Executors#newFixedThreadPool(int)}.
+   * {@link ExecutorMode#WORK_STEALING} uses a {@link ForkJoinPool} in asynchronous mode, which is
+   * suited to the event-style, never-joined tasks submitted by the executor.
    */
-  private static class FixedThreadPoolSupplier implements Supplier<ExecutorService> {
+  private static class TargetParallelismExecutorServiceSupplier
+      implements Supplier<ExecutorService> {
     private final DirectOptions options;
 
-    private FixedThreadPoolSupplier(DirectOptions options) {
+    private TargetParallelismExecutorServiceSupplier(DirectOptions options) {
       this.options = options;
     }
 
     @Override
     public ExecutorService get() {
-      return Executors.newFixedThreadPool(options.getTargetParallelism());
+      switch (options.getExecutorMode()) {
+        case FIXED_THREAD_POOL:
+          return Executors.newFixedThreadPool(options.getTargetParallelism());
+        case WORK_STEALING:
+          return new ForkJoinPool(
+              options.getTargetParallelism(),
+              ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+              null,
+              true);
+        default:
+          throw new IllegalArgumentException(
+              String.format(
+                  "Unknown %s %s", ExecutorMode.class.getSimpleName(), options.getExecutorMode()));
+      }
     }
   }
 
-
   /**
    * A {@link Supplier} that creates a {@link NanosOffsetClock}.
    */
@@ -20,6 +20,7 @@ package org.apache.beam.runners.direct;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.EnforcementSampler.BundleSample;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
 import org.apache.beam.sdk.util.CoderUtils;
@@ -40,13 +41,37 @@ class EncodabilityEnforcementFactory implements ModelEnforcementFactory {
     return INSTANCE;
   }
 
+  /**
+   * Returns an {@link EncodabilityEnforcementFactory} that only checks the elements selected by
+   * the provided {@link EnforcementSampler}.
+   */
+  public static EncodabilityEnforcementFactory create(EnforcementSampler sampler) {
+    return new EncodabilityEnforcementFactory(sampler);
+  }
+
+  private final EnforcementSampler sampler;
+
+  private EncodabilityEnforcementFactory() {
+    this(EnforcementSampler.all());
+  }
+
+  private EncodabilityEnforcementFactory(EnforcementSampler sampler) {
+    this.sampler = sampler;
+  }
+
   @Override
   public <T> ModelEnforcement<T> forBundle(
       CommittedBundle<T> input, AppliedPTransform<?, ?, ?> consumer) {
-    return new EncodabilityEnforcement<>();
+    return new EncodabilityEnforcement<>(sampler);
   }
 
   private static class EncodabilityEnforcement<T> extends AbstractModelEnforcement<T> {
+    private final EnforcementSampler sampler;
+
+    private EncodabilityEnforcement(EnforcementSampler sampler) {
+      this.sampler = sampler;
+    }
+
     @Override
     public void afterFinish(
         CommittedBundle<T> input,
@@ -59,7 +84,11 @@ class EncodabilityEnforcementFactory implements ModelEnforcementFactory {
 
     private <T> void ensureBundleEncodable(CommittedBundle<T> bundle) {
       Coder<T> coder = bundle.getPCollection().getCoder();
+      BundleSample sample = sampler.forBundle();
       for (WindowedValue<T> element : bundle.getElements()) {
+        if (!sample.sampleNext()) {
+          continue;
+        }
         try {
           T clone = CoderUtils.clone(coder, element.getValue());
           if (coder.consistentWithEquals()) {
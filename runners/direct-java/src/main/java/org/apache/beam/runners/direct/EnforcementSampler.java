@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.MoreObjects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Determines which elements of a bundle a {@link ModelEnforcement} checks.
+ *
+ * <p>An element is checked with probability equal to the sample rate, up to a maximum number of
+ * checked elements per bundle. The default {@link EnforcementSampler} checks every element.
+ */
+final class EnforcementSampler {
+  private static final EnforcementSampler ALL = new EnforcementSampler(1.0, Integer.MAX_VALUE);
+
+  /**
+   * Returns an {@link EnforcementSampler} that checks every element.
+   */
+  public static EnforcementSampler all() {
+    return ALL;
+  }
+
+  /**
+   * Returns an {@link EnforcementSampler} configured by the
+   * {@link DirectOptions#getEnforcementSampleRate() sample rate} and
+   * {@link DirectOptions#getEnforcementMaxElementsPerBundle() maximum elements per bundle} of the
+   * provided options.
+   */
+  public static EnforcementSampler fromOptions(DirectOptions options) {
+    return of(options.getEnforcementSampleRate(), options.getEnforcementMaxElementsPerBundle());
+  }
+
+  /**
+   * Returns an {@link EnforcementSampler} that checks each element with the provided probability,
+   * and checks at most the provided number of elements in each bundle.
+   */
+  public static EnforcementSampler of(double sampleRate, int maxElementsPerBundle) {
+    checkArgument(
+        sampleRate >= 0.0 && sampleRate <= 1.0,
+        "Enforcement sample rate must be between 0 and 1, got %s",
+        sampleRate);
+    checkArgument(
+        maxElementsPerBundle >= 0,
+        "Maximum enforced elements per bundle must be nonnegative, got %s",
+        maxElementsPerBundle);
+    return new EnforcementSampler(sampleRate, maxElementsPerBundle);
+  }
+
+  private final double sampleRate;
+  private final int maxElementsPerBundle;
+
+  private EnforcementSampler(double sampleRate, int maxElementsPerBundle) {
+    this.sampleRate = sampleRate;
+    this.maxElementsPerBundle = maxElementsPerBundle;
+  }
+
+  /**
+   * Returns a new {@link BundleSample} which selects the elements to check within a single bundle.
+   */
+  public BundleSample forBundle() {
+    return new BundleSample();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(EnforcementSampler.class)
+        .add("sampleRate", sampleRate)
+        .add("maxElementsPerBundle", maxElementsPerBundle)
+        .toString();
+  }
+
+  /**
+   * Selects the elements to check within a single bundle. Not thread-safe.
+   */
+  public class BundleSample {
+    private int sampledElements = 0;
+
+    private BundleSample() {}
+
+    /**
+     * Returns whether the next element of the bundle should be checked.
+     */
+    public boolean sampleNext() {
+      if (sampledElements >= maxElementsPerBundle) {
+        return false;
+      }
+      if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+        return false;
+      }
+      sampledElements++;
+      return true;
+    }
+  }
+}
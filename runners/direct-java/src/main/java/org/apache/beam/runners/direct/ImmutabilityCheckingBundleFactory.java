@@ -23,6 +23,7 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.SetMultimap;
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
 import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.runners.direct.EnforcementSampler.BundleSample;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.transforms.DoFn;
@@ -37,8 +38,8 @@ import org.joda.time.Instant;
  * A {@link BundleFactory} that ensures that elements added to it are not mutated after being
  * output. Immutability checks are enforced at the time {@link UncommittedBundle#commit(Instant)} is
  * called, checking the value at that time against the value at the time the element was added. All
- * elements added to the bundle will be encoded by the {@link Coder} of the underlying
- * {@link PCollection}.
+ * elements added to the bundle that are selected by the {@link EnforcementSampler} will be encoded
+ * by the {@link Coder} of the underlying {@link PCollection}.
  *
  * <p>This catches errors during the execution of a {@link DoFn} caused by modifying an element
  * after it is added to an output {@link PCollection}.
@@ -49,13 +50,25 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
    * {@link BundleFactory} to create the output bundle.
    */
   public static ImmutabilityCheckingBundleFactory create(BundleFactory underlying) {
-    return new ImmutabilityCheckingBundleFactory(underlying);
+    return create(underlying, EnforcementSampler.all());
+  }
+
+  /**
+   * Create a new {@link ImmutabilityCheckingBundleFactory} that uses the underlying
+   * {@link BundleFactory} to create the output bundle, and only checks the elements selected by
+   * the provided {@link EnforcementSampler}.
+   */
+  public static ImmutabilityCheckingBundleFactory create(
+      BundleFactory underlying, EnforcementSampler sampler) {
+    return new ImmutabilityCheckingBundleFactory(underlying, sampler);
   }
 
   private final BundleFactory underlying;
+  private final EnforcementSampler sampler;
 
-  private ImmutabilityCheckingBundleFactory(BundleFactory underlying) {
+  private ImmutabilityCheckingBundleFactory(BundleFactory underlying, EnforcementSampler sampler) {
     this.underlying = checkNotNull(underlying);
+    this.sampler = checkNotNull(sampler);
   }
 
   /**
@@ -71,22 +84,25 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
 
   @Override
   public <T> UncommittedBundle<T> createBundle(PCollection<T> output) {
-    return new ImmutabilityEnforcingBundle<>(underlying.createBundle(output));
+    return new ImmutabilityEnforcingBundle<>(underlying.createBundle(output), sampler.forBundle());
   }
 
   @Override
   public <K, T> UncommittedBundle<T> createKeyedBundle(
       StructuralKey<K> key, PCollection<T> output) {
-    return new ImmutabilityEnforcingBundle<>(underlying.createKeyedBundle(key, output));
+    return new ImmutabilityEnforcingBundle<>(
+        underlying.createKeyedBundle(key, output), sampler.forBundle());
   }
 
   private static class ImmutabilityEnforcingBundle<T> implements UncommittedBundle<T> {
     private final UncommittedBundle<T> underlying;
     private final SetMultimap<WindowedValue<T>, MutationDetector> mutationDetectors;
+    private final BundleSample sample;
     private Coder<T> coder;
 
-    public ImmutabilityEnforcingBundle(UncommittedBundle<T> underlying) {
+    public ImmutabilityEnforcingBundle(UncommittedBundle<T> underlying, BundleSample sample) {
       this.underlying = underlying;
+      this.sample = sample;
       mutationDetectors = HashMultimap.create();
       coder = getPCollection().getCoder();
     }
@@ -98,11 +114,13 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
 
     @Override
     public UncommittedBundle<T> add(WindowedValue<T> element) {
-      try {
-        mutationDetectors.put(
-            element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
-      } catch (CoderException e) {
-        throw new RuntimeException(e);
+      if (sample.sampleNext()) {
+        try {
+          mutationDetectors.put(
+              element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
+        } catch (CoderException e) {
+          throw new RuntimeException(e);
+        }
       }
       underlying.add(element);
       return this;
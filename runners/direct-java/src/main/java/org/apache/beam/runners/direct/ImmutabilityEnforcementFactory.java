@@ -20,6 +20,7 @@ package org.apache.beam.runners.direct;
 import java.util.IdentityHashMap;
 import java.util.Map;
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.EnforcementSampler.BundleSample;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
@@ -40,26 +41,49 @@ class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
     return new ImmutabilityEnforcementFactory();
   }
 
+  /**
+   * Returns a {@link ModelEnforcementFactory} that only checks the elements selected by the
+   * provided {@link EnforcementSampler}.
+   */
+  public static ModelEnforcementFactory create(EnforcementSampler sampler) {
+    return new ImmutabilityEnforcementFactory(sampler);
+  }
+
+  private final EnforcementSampler sampler;
+
+  ImmutabilityEnforcementFactory() {
+    this(EnforcementSampler.all());
+  }
+
+  private ImmutabilityEnforcementFactory(EnforcementSampler sampler) {
+    this.sampler = sampler;
+  }
+
   @Override
   public <T> ModelEnforcement<T> forBundle(
       CommittedBundle<T> input, AppliedPTransform<?, ?, ?> consumer) {
-    return new ImmutabilityCheckingEnforcement<T>(input, consumer);
+    return new ImmutabilityCheckingEnforcement<T>(input, consumer, sampler.forBundle());
   }
 
   private static class ImmutabilityCheckingEnforcement<T> extends AbstractModelEnforcement<T> {
     private final AppliedPTransform<?, ?, ?> transform;
     private final Map<WindowedValue<T>, MutationDetector> mutationElements;
     private final Coder<T> coder;
+    private final BundleSample sample;
 
     private ImmutabilityCheckingEnforcement(
-        CommittedBundle<T> input, AppliedPTransform<?, ?, ?> transform) {
+        CommittedBundle<T> input, AppliedPTransform<?, ?, ?> transform, BundleSample sample) {
       this.transform = transform;
       coder = input.getPCollection().getCoder();
       mutationElements = new IdentityHashMap<>();
+      this.sample = sample;
     }
 
     @Override
     public void beforeElement(WindowedValue<T> element) {
+      if (!sample.sampleNext()) {
+        return;
+      }
       try {
         mutationElements.put(
             element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
@@ -70,7 +94,10 @@ class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
 
     @Override
     public void afterElement(WindowedValue<T> element) {
-      verifyUnmodified(mutationElements.get(element));
+      MutationDetector detector = mutationElements.get(element);
+      if (detector != null) {
+        verifyUnmodified(detector);
+      }
     }
 
     @Override
@@ -212,10 +212,12 @@ class SideInputContainer {
     private final LoadingCache<
         PCollectionViewWindow<?>, Optional<? extends Iterable<? extends WindowedValue<?>>>>
         viewContents;
+    private final LoadingCache<PCollectionViewWindow<?>, Optional<?>> materializedViews;
 
     private SideInputContainerSideInputReader(Collection<PCollectionView<?>> readerViews) {
       this.readerViews = ImmutableSet.copyOf(readerViews);
       this.viewContents = CacheBuilder.newBuilder().build(new CurrentViewContentsLoader());
+      this.materializedViews = CacheBuilder.newBuilder().build(new MaterializedViewLoader());
     }
 
     @Override
@@ -240,11 +242,10 @@ class SideInputContainer {
           "calling get() on PCollectionView %s that is not ready in window %s",
           view,
           window);
-      // Safe covariant cast
-      @SuppressWarnings("unchecked") Iterable<WindowedValue<?>> values =
-          (Iterable<WindowedValue<?>>) viewContents.getUnchecked(PCollectionViewWindow.of(view,
-              window)).get();
-      return view.getViewFn().apply(values);
+      @SuppressWarnings("unchecked")
+      T materialized =
+          (T) materializedViews.getUnchecked(PCollectionViewWindow.of(view, window)).orNull();
+      return materialized;
     }
 
     @Override
@@ -256,6 +257,22 @@ class SideInputContainer {
     public boolean isEmpty() {
       return readerViews.isEmpty();
     }
+
+    /**
+     * A {@link CacheLoader} that applies the {@link org.apache.beam.sdk.transforms.ViewFn ViewFn}
+     * of a {@link PCollectionView} to the contents of a {@link PCollectionViewWindow} read by this
+     * reader, so that each view is only materialized once per window.
+     */
+    private class MaterializedViewLoader
+        extends CacheLoader<PCollectionViewWindow<?>, Optional<?>> {
+      @Override
+      public Optional<?> load(PCollectionViewWindow<?> key) {
+        // Safe covariant cast
+        @SuppressWarnings("unchecked") Iterable<WindowedValue<?>> values =
+            (Iterable<WindowedValue<?>>) viewContents.getUnchecked(key).get();
+        return Optional.fromNullable(key.getView().getViewFn().apply(values));
+      }
+    }
   }
 
   /**
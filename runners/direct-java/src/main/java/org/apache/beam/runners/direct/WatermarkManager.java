@@ -23,9 +23,11 @@ import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.SortedMultiset;
 import com.google.common.collect.TreeMultiset;
@@ -201,20 +203,19 @@ public class WatermarkManager {
    */
   private static class AppliedPTransformInputWatermark implements Watermark {
     private final Collection<? extends Watermark> inputWatermarks;
-    private final SortedMultiset<WindowedValue<?>> pendingElements;
+    private final Multiset<CommittedBundle<?>> pendingBundles;
+    private final SortedMultiset<Instant> pendingTimestamps;
     private final Map<StructuralKey<?>, NavigableSet<TimerData>> objectTimers;
 
     private AtomicReference<Instant> currentWatermark;
 
     public AppliedPTransformInputWatermark(Collection<? extends Watermark> inputWatermarks) {
       this.inputWatermarks = inputWatermarks;
-      // The ordering must order elements by timestamp, and must not compare two distinct elements
-      // as equal. This is built on the assumption that any element added as a pending element will
-      // be consumed without modifications.
-      Ordering<WindowedValue<?>> pendingElementComparator =
-          new WindowedValueByTimestampComparator().compound(Ordering.arbitrary());
-      this.pendingElements =
-          TreeMultiset.create(pendingElementComparator);
+      // Pending elements are tracked per bundle. A bundle is always added and removed as a whole,
+      // so only the minimum timestamp of each pending bundle can hold the watermark; the elements
+      // of a bundle do not need to be individually ordered.
+      this.pendingBundles = HashMultiset.create();
+      this.pendingTimestamps = TreeMultiset.create();
       this.objectTimers = new HashMap<>();
       currentWatermark = new AtomicReference<>(BoundedWindow.TIMESTAMP_MIN_VALUE);
     }
@@ -246,28 +247,45 @@ public class WatermarkManager {
       for (Watermark inputWatermark : inputWatermarks) {
         minInputWatermark = INSTANT_ORDERING.min(minInputWatermark, inputWatermark.get());
       }
-      if (!pendingElements.isEmpty()) {
+      if (!pendingTimestamps.isEmpty()) {
         minInputWatermark = INSTANT_ORDERING.min(
-            minInputWatermark, pendingElements.firstEntry().getElement().getTimestamp());
+            minInputWatermark, pendingTimestamps.firstEntry().getElement());
       }
       Instant newWatermark = INSTANT_ORDERING.max(oldWatermark, minInputWatermark);
       currentWatermark.set(newWatermark);
       return WatermarkUpdate.fromTimestamps(oldWatermark, newWatermark);
     }
 
-    private synchronized void addPendingElements(Iterable<? extends WindowedValue<?>> newPending) {
-      for (WindowedValue<?> pendingElement : newPending) {
-        pendingElements.add(pendingElement);
+    private synchronized void addPending(CommittedBundle<?> newPending) {
+      Instant minimumTimestamp = getMinimumTimestamp(newPending);
+      if (minimumTimestamp != null) {
+        pendingBundles.add(newPending);
+        pendingTimestamps.add(minimumTimestamp);
       }
     }
 
-    private synchronized void removePendingElements(
-        Iterable<? extends WindowedValue<?>> finishedElements) {
-      for (WindowedValue<?> finishedElement : finishedElements) {
-        pendingElements.remove(finishedElement);
+    private synchronized void removePending(CommittedBundle<?> completed) {
+      // Bundles that were never added (such as bundles containing fired timers) are ignored.
+      if (pendingBundles.remove(completed)) {
+        pendingTimestamps.remove(getMinimumTimestamp(completed));
       }
     }
 
+    /**
+     * Returns the minimum timestamp of the elements within the provided bundle, or {@code null} if
+     * the bundle is empty.
+     */
+    @Nullable
+    private static Instant getMinimumTimestamp(CommittedBundle<?> bundle) {
+      Instant minimumTimestamp = null;
+      for (WindowedValue<?> element : bundle.getElements()) {
+        if (minimumTimestamp == null || element.getTimestamp().isBefore(minimumTimestamp)) {
+          minimumTimestamp = element.getTimestamp();
+        }
+      }
+      return minimumTimestamp;
+    }
+
     private synchronized void updateTimers(TimerUpdate update) {
       NavigableSet<TimerData> keyTimers = objectTimers.get(update.key);
       if (keyTimers == null) {
@@ -294,7 +312,7 @@ public class WatermarkManager {
     @Override
     public synchronized String toString() {
       return MoreObjects.toStringHelper(AppliedPTransformInputWatermark.class)
-          .add("pendingElements", pendingElements)
+          .add("pendingTimestamps", pendingTimestamps)
           .add("currentWatermark", currentWatermark)
           .toString();
     }
@@ -1120,12 +1138,12 @@ public class WatermarkManager {
     }
 
     private void removePending(CommittedBundle<?> bundle) {
-      inputWatermark.removePendingElements(bundle.getElements());
+      inputWatermark.removePending(bundle);
       synchronizedProcessingInputWatermark.removePending(bundle);
     }
 
     private void addPending(CommittedBundle<?> bundle) {
-      inputWatermark.addPendingElements(bundle.getElements());
+      inputWatermark.addPending(bundle);
       synchronizedProcessingInputWatermark.addPending(bundle);
     }
 
@@ -1361,15 +1379,6 @@ public class WatermarkManager {
     }
   }
 
-  private static class WindowedValueByTimestampComparator extends Ordering<WindowedValue<?>> {
-    @Override
-    public int compare(WindowedValue<?> o1, WindowedValue<?> o2) {
-      return ComparisonChain.start()
-          .compare(o1.getTimestamp(), o2.getTimestamp())
-          .result();
-    }
-  }
-
   public Set<AppliedPTransform<?, ?, ?>> getCompletedTransforms() {
     Set<AppliedPTransform<?, ?, ?>> result = new HashSet<>();
     for (Map.Entry<AppliedPTransform<?, ?, ?>, TransformWatermarks> wms :
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.PCollection;
+import org.hamcrest.Matchers;
+import org.joda.time.Instant;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link CompactBundleFactory}.
+ */
+@RunWith(JUnit4.class)
+public class CompactBundleFactoryTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private CompactBundleFactory bundleFactory = CompactBundleFactory.create();
+
+  private PCollection<Integer> created;
+
+  @Before
+  public void setup() {
+    TestPipeline p = TestPipeline.create();
+    created = p.apply(Create.of(1, 2, 3));
+  }
+
+  @Test
+  public void getElementsBeforeAddShouldReturnEmptyIterable() {
+    CommittedBundle<Integer> committed = bundleFactory.createBundle(created).commit(Instant.now());
+
+    assertThat(committed.getElements(), Matchers.<WindowedValue<Integer>>emptyIterable());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void getElementsWithUniformMetadataShouldReturnAddedElements() {
+    WindowedValue<Integer> firstValue = WindowedValue.valueInGlobalWindow(1);
+    WindowedValue<Integer> secondValue = WindowedValue.valueInGlobalWindow(2);
+    WindowedValue<Integer> thirdValue = WindowedValue.valueInGlobalWindow(3);
+
+    CommittedBundle<Integer> committed =
+        bundleFactory
+            .createBundle(created)
+            .add(firstValue)
+            .add(secondValue)
+            .add(thirdValue)
+            .commit(Instant.now());
+
+    assertThat(committed.getElements(), contains(firstValue, secondValue, thirdValue));
+    // The elements can be iterated repeatedly
+    assertThat(committed.getElements(), contains(firstValue, secondValue, thirdValue));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void getElementsWithMixedMetadataShouldReturnAddedElements() {
+    WindowedValue<Integer> firstValue = WindowedValue.valueInGlobalWindow(1);
+    WindowedValue<Integer> secondValue = WindowedValue.valueInGlobalWindow(2);
+    WindowedValue<Integer> differentTimestamp =
+        WindowedValue.timestampedValueInGlobalWindow(3, new Instant(1000L));
+    WindowedValue<Integer> differentWindow =
+        WindowedValue.of(
+            4,
+            new Instant(1000L),
+            new IntervalWindow(new Instant(0L), new Instant(2048L)),
+            PaneInfo.NO_FIRING);
+    WindowedValue<Integer> sameAsFirst = WindowedValue.valueInGlobalWindow(5);
+
+    CommittedBundle<Integer> committed =
+        bundleFactory
+            .createBundle(created)
+            .add(firstValue)
+            .add(secondValue)
+            .add(differentTimestamp)
+            .add(differentWindow)
+            .add(sameAsFirst)
+            .commit(Instant.now());
+
+    assertThat(
+        committed.getElements(),
+        contains(firstValue, secondValue, differentTimestamp, differentWindow, sameAsFirst));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void getElementsWithNullValuesShouldReturnAddedElements() {
+    PCollection<Void> nulls = TestPipeline.create().apply(Create.of((Void) null));
+    WindowedValue<Void> firstValue = WindowedValue.valueInGlobalWindow(null);
+    WindowedValue<Void> secondValue = WindowedValue.valueInGlobalWindow(null);
+    WindowedValue<Void> differentTimestamp =
+        WindowedValue.timestampedValueInGlobalWindow(null, new Instant(1000L));
+
+    CommittedBundle<Void> uniform =
+        bundleFactory.createBundle(nulls).add(firstValue).add(secondValue).commit(Instant.now());
+    CommittedBundle<Void> mixed =
+        bundleFactory
+            .createBundle(nulls)
+            .add(firstValue)
+            .add(differentTimestamp)
+            .add(secondValue)
+            .commit(Instant.now());
+
+    assertThat(uniform.getElements(), contains(firstValue, secondValue));
+    assertThat(mixed.getElements(), contains(firstValue, differentTimestamp, secondValue));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void withElementsShouldReturnIndependentBundle() {
+    WindowedValue<Integer> firstValue = WindowedValue.valueInGlobalWindow(1);
+    WindowedValue<Integer> secondValue = WindowedValue.valueInGlobalWindow(2);
+    CommittedBundle<Integer> committed =
+        bundleFactory
+            .createBundle(created)
+            .add(firstValue)
+            .add(secondValue)
+            .commit(Instant.now());
+
+    WindowedValue<Integer> replacement =
+        WindowedValue.timestampedValueInGlobalWindow(-1, Instant.now());
+    CommittedBundle<Integer> withed = committed.withElements(ImmutableList.of(replacement));
+
+    assertThat(withed.getElements(), containsInAnyOrder(replacement));
+    assertThat(committed.getElements(), containsInAnyOrder(firstValue, secondValue));
+    assertThat(withed.getPCollection(), equalTo(committed.getPCollection()));
+    assertThat(
+        withed.getSynchronizedProcessingOutputWatermark(),
+        equalTo(committed.getSynchronizedProcessingOutputWatermark()));
+  }
+
+  @Test
+  public void createKeyedBundleKeyed() {
+    StructuralKey<String> key = StructuralKey.of("foo", StringUtf8Coder.of());
+    CommittedBundle<Integer> keyedBundle =
+        bundleFactory.createKeyedBundle(key, created).commit(Instant.now());
+    assertThat(keyedBundle.getKey(), Matchers.<StructuralKey<?>>equalTo(key));
+  }
+
+  @Test
+  public void addAfterCommitShouldThrowException() {
+    UncommittedBundle<Integer> bundle = bundleFactory.createRootBundle();
+    bundle.add(WindowedValue.valueInGlobalWindow(1));
+    bundle.commit(Instant.now());
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("committed");
+
+    bundle.add(WindowedValue.valueInGlobalWindow(3));
+  }
+}
@@ -32,9 +32,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.beam.runners.direct.DirectOptions.ExecutorMode;
 import org.apache.beam.runners.direct.DirectRunner.DirectPipelineResult;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.PipelineResult;
@@ -129,6 +131,36 @@ public class DirectRunnerTest implements Serializable {
     result.awaitCompletion();
   }
 
+  @Test
+  public void workStealingExecutorModeShouldSucceed() throws Throwable {
+    DirectOptions options = PipelineOptionsFactory.create().as(DirectOptions.class);
+    options.setRunner(DirectRunner.class);
+    options.setExecutorMode(ExecutorMode.WORK_STEALING);
+    Pipeline p = Pipeline.create(options);
+
+    PCollection<KV<Long, Long>> counts =
+        p.apply(CountingInput.upTo(1000L))
+            .apply(MapElements.via(new SimpleFunction<Long, Long>() {
+              @Override
+              public Long apply(Long input) {
+                return input % 100L;
+              }
+            }))
+            .apply(Count.<Long>perElement());
+    PCollection<Long> countValues =
+        counts.apply(MapElements.via(new SimpleFunction<KV<Long, Long>, Long>() {
+          @Override
+          public Long apply(KV<Long, Long> input) {
+            return input.getValue();
+          }
+        }));
+
+    PAssert.that(countValues).containsInAnyOrder(Collections.nCopies(100, 10L));
+
+    DirectPipelineResult result = ((DirectPipelineResult) p.run());
+    result.awaitCompletion();
+  }
+
   private static AtomicInteger changed;
   @Test
   public void reusePipelineSucceeds() throws Throwable {
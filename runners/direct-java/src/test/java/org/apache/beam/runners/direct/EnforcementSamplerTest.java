@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.runners.direct.EnforcementSampler.BundleSample;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link EnforcementSampler}.
+ */
+@RunWith(JUnit4.class)
+public class EnforcementSamplerTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void allSamplesEveryElement() {
+    BundleSample sample = EnforcementSampler.all().forBundle();
+    for (int i = 0; i < 1000; i++) {
+      assertThat(sample.sampleNext(), is(true));
+    }
+  }
+
+  @Test
+  public void zeroRateSamplesNoElements() {
+    BundleSample sample = EnforcementSampler.of(0.0, Integer.MAX_VALUE).forBundle();
+    for (int i = 0; i < 1000; i++) {
+      assertThat(sample.sampleNext(), is(false));
+    }
+  }
+
+  @Test
+  public void maxElementsPerBundleLimitsSamples() {
+    EnforcementSampler sampler = EnforcementSampler.of(1.0, 3);
+    BundleSample sample = sampler.forBundle();
+    assertThat(sample.sampleNext(), is(true));
+    assertThat(sample.sampleNext(), is(true));
+    assertThat(sample.sampleNext(), is(true));
+    assertThat(sample.sampleNext(), is(false));
+
+    // Each bundle is sampled independently
+    assertThat(sampler.forBundle().sampleNext(), is(true));
+  }
+
+  @Test
+  public void sampleRateAboveOneThrows() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("sample rate");
+    EnforcementSampler.of(1.5, 1);
+  }
+
+  @Test
+  public void negativeMaxElementsThrows() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("nonnegative");
+    EnforcementSampler.of(1.0, -1);
+  }
+}
@@ -179,6 +179,27 @@ public class ImmutabilityCheckingBundleFactoryTest {
     intermediate.commit(Instant.now());
   }
 
+  @Test
+  public void mutationAfterAddOfUnsampledElementSucceeds() {
+    factory =
+        ImmutabilityCheckingBundleFactory.create(
+            ImmutableListBundleFactory.create(), EnforcementSampler.of(0.0, Integer.MAX_VALUE));
+    UncommittedBundle<byte[]> intermediate = factory.createBundle(transformed);
+
+    byte[] array = new byte[] {4, 8, 12};
+    WindowedValue<byte[]> windowedArray =
+        WindowedValue.of(
+            array,
+            new Instant(891L),
+            new IntervalWindow(new Instant(0), new Instant(1000)),
+            PaneInfo.ON_TIME_AND_ONLY_FIRING);
+    intermediate.add(windowedArray);
+
+    array[2] = -3;
+    CommittedBundle<byte[]> committed = intermediate.commit(Instant.now());
+    assertThat(committed.getElements(), containsInAnyOrder(windowedArray));
+  }
+
   private static class IdentityDoFn<T> extends OldDoFn<T, T> {
     @Override
     public void processElement(OldDoFn<T, T>.ProcessContext c) throws Exception {
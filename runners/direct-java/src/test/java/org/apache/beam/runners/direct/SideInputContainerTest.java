@@ -21,6 +21,7 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.theInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doAnswer;
@@ -149,6 +150,20 @@ public class SideInputContainerTest {
     assertThat(viewContents.size(), is(2));
   }
 
+  @Test
+  public void getMaterializesViewOncePerWindow() throws Exception {
+    WindowedValue<KV<String, Integer>> one =
+        WindowedValue.of(
+            KV.of("one", 1), new Instant(1L), FIRST_WINDOW, PaneInfo.ON_TIME_AND_ONLY_FIRING);
+    container.write(mapView, ImmutableList.<WindowedValue<?>>of(one));
+
+    SideInputReader reader =
+        container.createReaderForViews(ImmutableList.<PCollectionView<?>>of(mapView));
+    Map<String, Integer> viewContents = reader.get(mapView, FIRST_WINDOW);
+    assertThat(viewContents, hasEntry("one", 1));
+    assertThat(reader.get(mapView, FIRST_WINDOW), theInstance(viewContents));
+  }
+
   @Test
   public void getReturnsLatestPaneInWindow() throws Exception {
     WindowedValue<KV<String, Integer>> one =
@@ -93,4 +93,16 @@ public interface FlinkPipelineOptions
   void setStateBackend(AbstractStateBackend stateBackend);
   AbstractStateBackend getStateBackend();
 
+  /**
+   * Enables Flink's object reuse mode. Beam does not allow mutating elements after they have
+   * been output or received as input, so elements can be handed between chained operators
+   * without being copied, which otherwise means encoding and decoding every element with its
+   * {@link org.apache.beam.sdk.coders.Coder}.
+   */
+  @Description("Sets the behavior of reusing objects. Since Beam elements must not be mutated, "
+      + "this avoids copying elements between chained operators.")
+  @Default.Boolean(false)
+  Boolean getObjectReuse();
+  void setObjectReuse(Boolean reuse);
+
 }
@@ -26,6 +26,8 @@ import java.util.List;
 import java.util.Map;
 import org.apache.beam.runners.flink.translation.functions.FlinkAssignWindows;
 import org.apache.beam.runners.flink.translation.functions.FlinkDoFnFunction;
+import org.apache.beam.runners.flink.translation.functions.FlinkExplodeWindowsFunction;
+import org.apache.beam.runners.flink.translation.functions.FlinkGroupByKeyReduceFunction;
 import org.apache.beam.runners.flink.translation.functions.FlinkMergingNonShuffleReduceFunction;
 import org.apache.beam.runners.flink.translation.functions.FlinkMergingPartialReduceFunction;
 import org.apache.beam.runners.flink.translation.functions.FlinkMergingReduceFunction;
@@ -35,6 +37,7 @@ import org.apache.beam.runners.flink.translation.functions.FlinkPartialReduceFun
 import org.apache.beam.runners.flink.translation.functions.FlinkReduceFunction;
 import org.apache.beam.runners.flink.translation.types.CoderTypeInformation;
 import org.apache.beam.runners.flink.translation.types.KvKeySelector;
+import org.apache.beam.runners.flink.translation.types.KvWindowKeySelector;
 import org.apache.beam.runners.flink.translation.wrappers.SourceInputFormat;
 import org.apache.beam.sdk.coders.CannotProvideCoderException;
 import org.apache.beam.sdk.coders.Coder;
@@ -178,17 +181,78 @@ class FlinkBatchTransformTranslators {
         GroupByKey<K, InputT> transform,
         FlinkBatchTranslationContext context) {
 
-      // for now, this is copied from the Combine.PerKey translater. Once we have the new runner API
-      // we can replace GroupByKey by a Combine.PerKey with the Concatenate CombineFn
-
       DataSet<WindowedValue<KV<K, InputT>>> inputDataSet =
           context.getInputDataSet(context.getInput(transform));
 
+      KvCoder<K, InputT> inputCoder = (KvCoder<K, InputT>) context.getInput(transform).getCoder();
+
+      WindowingStrategy<?, ?> windowingStrategy =
+          context.getInput(transform).getWindowingStrategy();
+
+      if (windowingStrategy.getWindowFn().isNonMerging()) {
+        translateNonMerging(transform, inputDataSet, inputCoder, windowingStrategy, context);
+      } else {
+        translateMerging(transform, inputDataSet, inputCoder, windowingStrategy, context);
+      }
+    }
+
+    /**
+     * Groups by the encoded key and window using Flink's sort-based grouping, so that each
+     * group holds the values of exactly one key and window and no pre-aggregation is needed.
+     */
+    private <W extends BoundedWindow> void translateNonMerging(
+        GroupByKey<K, InputT> transform,
+        DataSet<WindowedValue<KV<K, InputT>>> inputDataSet,
+        KvCoder<K, InputT> inputCoder,
+        WindowingStrategy<?, ?> windowingStrategy,
+        FlinkBatchTranslationContext context) {
+
+      @SuppressWarnings("unchecked")
+      WindowingStrategy<?, W> typedStrategy = (WindowingStrategy<?, W>) windowingStrategy;
+
+      TypeInformation<WindowedValue<KV<K, InputT>>> inputTypeInfo =
+          context.getTypeInfo(context.getInput(transform));
+
+      TypeInformation<WindowedValue<KV<K, Iterable<InputT>>>> outputTypeInfo =
+          context.getTypeInfo(context.getOutput(transform));
+
+      FlatMapOperator<WindowedValue<KV<K, InputT>>, WindowedValue<KV<K, InputT>>> exploded =
+          new FlatMapOperator<>(
+              inputDataSet,
+              inputTypeInfo,
+              new FlinkExplodeWindowsFunction<KV<K, InputT>>(),
+              "ExplodeWindows: " + transform.getName());
+
+      Grouping<WindowedValue<KV<K, InputT>>> inputGrouping =
+          exploded.groupBy(
+              new KvWindowKeySelector<InputT, K, W>(
+                  inputCoder.getKeyCoder(),
+                  typedStrategy.getWindowFn().windowCoder()));
+
+      GroupReduceOperator<
+          WindowedValue<KV<K, InputT>>, WindowedValue<KV<K, Iterable<InputT>>>> outputDataSet =
+          new GroupReduceOperator<>(
+              inputGrouping,
+              outputTypeInfo,
+              new FlinkGroupByKeyReduceFunction<K, InputT, W>(typedStrategy),
+              transform.getName());
+
+      context.setOutputDataSet(context.getOutput(transform), outputDataSet);
+    }
+
+    private void translateMerging(
+        GroupByKey<K, InputT> transform,
+        DataSet<WindowedValue<KV<K, InputT>>> inputDataSet,
+        KvCoder<K, InputT> inputCoder,
+        WindowingStrategy<?, ?> windowingStrategy,
+        FlinkBatchTranslationContext context) {
+
+      // for now, this is copied from the Combine.PerKey translater. Once we have the new runner API
+      // we can replace GroupByKey by a Combine.PerKey with the Concatenate CombineFn
+
       Combine.KeyedCombineFn<K, InputT, List<InputT>, List<InputT>> combineFn =
           new Concatenate<InputT>().asKeyedFn();
 
-      KvCoder<K, InputT> inputCoder = (KvCoder<K, InputT>) context.getInput(transform).getCoder();
-
       Coder<List<InputT>> accumulatorCoder;
 
       try {
@@ -201,9 +265,6 @@ class FlinkBatchTransformTranslators {
         throw new RuntimeException(e);
       }
 
-      WindowingStrategy<?, ?> windowingStrategy =
-          context.getInput(transform).getWindowingStrategy();
-
       TypeInformation<WindowedValue<KV<K, List<InputT>>>> partialReduceTypeInfo =
           new CoderTypeInformation<>(
               WindowedValue.getFullCoder(
@@ -214,48 +275,28 @@ class FlinkBatchTransformTranslators {
       Grouping<WindowedValue<KV<K, InputT>>> inputGrouping =
           inputDataSet.groupBy(new KvKeySelector<InputT, K>(inputCoder.getKeyCoder()));
 
-      FlinkPartialReduceFunction<K, InputT, List<InputT>, ?> partialReduceFunction;
-      FlinkReduceFunction<K, List<InputT>, List<InputT>, ?> reduceFunction;
-
-      if (windowingStrategy.getWindowFn().isNonMerging()) {
-        @SuppressWarnings("unchecked")
-        WindowingStrategy<?, BoundedWindow> boundedStrategy =
-            (WindowingStrategy<?, BoundedWindow>) windowingStrategy;
-
-        partialReduceFunction = new FlinkPartialReduceFunction<>(
-            combineFn,
-            boundedStrategy,
-            Collections.<PCollectionView<?>, WindowingStrategy<?, ?>>emptyMap(),
-            context.getPipelineOptions());
-
-        reduceFunction = new FlinkReduceFunction<>(
-            combineFn,
-            boundedStrategy,
-            Collections.<PCollectionView<?>, WindowingStrategy<?, ?>>emptyMap(),
-            context.getPipelineOptions());
-
-      } else {
-        if (!windowingStrategy.getWindowFn().windowCoder().equals(IntervalWindow.getCoder())) {
-          throw new UnsupportedOperationException(
-              "Merging WindowFn with windows other than IntervalWindow are not supported.");
-        }
+      if (!windowingStrategy.getWindowFn().windowCoder().equals(IntervalWindow.getCoder())) {
+        throw new UnsupportedOperationException(
+            "Merging WindowFn with windows other than IntervalWindow are not supported.");
+      }
 
-        @SuppressWarnings("unchecked")
-        WindowingStrategy<?, IntervalWindow> intervalStrategy =
-            (WindowingStrategy<?, IntervalWindow>) windowingStrategy;
+      @SuppressWarnings("unchecked")
+      WindowingStrategy<?, IntervalWindow> intervalStrategy =
+          (WindowingStrategy<?, IntervalWindow>) windowingStrategy;
+
+      FlinkPartialReduceFunction<K, InputT, List<InputT>, ?> partialReduceFunction =
+          new FlinkMergingPartialReduceFunction<>(
+              combineFn,
+              intervalStrategy,
+              Collections.<PCollectionView<?>, WindowingStrategy<?, ?>>emptyMap(),
+              context.getPipelineOptions());
 
-        partialReduceFunction = new FlinkMergingPartialReduceFunction<>(
-            combineFn,
-            intervalStrategy,
-            Collections.<PCollectionView<?>, WindowingStrategy<?, ?>>emptyMap(),
-            context.getPipelineOptions());
-
-        reduceFunction = new FlinkMergingReduceFunction<>(
-            combineFn,
-            intervalStrategy,
-            Collections.<PCollectionView<?>, WindowingStrategy<?, ?>>emptyMap(),
-            context.getPipelineOptions());
-      }
+      FlinkReduceFunction<K, List<InputT>, List<InputT>, ?> reduceFunction =
+          new FlinkMergingReduceFunction<>(
+              combineFn,
+              intervalStrategy,
+              Collections.<PCollectionView<?>, WindowingStrategy<?, ?>>emptyMap(),
+              context.getPipelineOptions());
 
       // Partially GroupReduce the values into the intermediate format AccumT (combine)
       GroupCombineOperator<
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.flink.translation.functions;
+
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.OutputTimeFn;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.util.WindowingStrategy;
+import org.apache.beam.sdk.values.KV;
+import org.apache.flink.api.common.functions.GroupReduceFunction;
+import org.apache.flink.util.Collector;
+import org.joda.time.Instant;
+
+/**
+ * Flink {@link GroupReduceFunction} for executing a
+ * {@link org.apache.beam.sdk.transforms.GroupByKey} with non-merging windows on Flink.
+ *
+ * <p>The input to {@link #reduce(Iterable, Collector)} are the elements of one key and
+ * one window, as grouped by
+ * {@link org.apache.beam.runners.flink.translation.types.KvWindowKeySelector}. The grouping
+ * is done by Flink's sort-based shuffle, which spills to disk if needed, so only the values
+ * of a single key and window are held in memory at a time.
+ */
+public class FlinkGroupByKeyReduceFunction<K, V, W extends BoundedWindow>
+    implements GroupReduceFunction<WindowedValue<KV<K, V>>, WindowedValue<KV<K, Iterable<V>>>> {
+
+  private final WindowingStrategy<?, W> windowingStrategy;
+
+  public FlinkGroupByKeyReduceFunction(WindowingStrategy<?, W> windowingStrategy) {
+    this.windowingStrategy = windowingStrategy;
+  }
+
+  @Override
+  public void reduce(
+      Iterable<WindowedValue<KV<K, V>>> elements,
+      Collector<WindowedValue<KV<K, Iterable<V>>>> out) throws Exception {
+
+    @SuppressWarnings("unchecked")
+    OutputTimeFn<? super W> outputTimeFn =
+        (OutputTimeFn<? super W>) windowingStrategy.getOutputTimeFn();
+
+    Iterator<WindowedValue<KV<K, V>>> iterator = elements.iterator();
+
+    WindowedValue<KV<K, V>> firstValue = iterator.next();
+    K key = firstValue.getValue().getKey();
+    @SuppressWarnings("unchecked")
+    W window = (W) Iterables.getOnlyElement(firstValue.getWindows());
+
+    List<V> values = new ArrayList<>();
+    values.add(firstValue.getValue().getValue());
+
+    // we use this to keep track of the timestamps assigned by the OutputTimeFn
+    Instant outputTimestamp = outputTimeFn.assignOutputTime(firstValue.getTimestamp(), window);
+    boolean combineTimestamps = !outputTimeFn.dependsOnlyOnWindow();
+
+    while (iterator.hasNext()) {
+      WindowedValue<KV<K, V>> nextValue = iterator.next();
+      values.add(nextValue.getValue().getValue());
+
+      if (combineTimestamps) {
+        outputTimestamp = outputTimeFn.combine(
+            outputTimestamp,
+            outputTimeFn.assignOutputTime(nextValue.getTimestamp(), window));
+      }
+    }
+
+    out.collect(
+        WindowedValue.of(
+            KV.<K, Iterable<V>>of(key, values),
+            outputTimestamp,
+            window,
+            PaneInfo.NO_FIRING));
+  }
+}
@@ -18,7 +18,6 @@
 package org.apache.beam.runners.flink.translation.types;
 
 import java.io.IOException;
-import java.util.Arrays;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.flink.api.common.typeutils.TypeComparator;
 import org.apache.flink.core.memory.DataInputView;
@@ -28,9 +27,22 @@ import org.apache.flink.core.memory.MemorySegment;
 /**
  * Flink {@link org.apache.flink.api.common.typeutils.TypeComparator} for Beam values that have
  * been encoded to byte data by a {@link Coder}.
+ *
+ * <p>Encoded values are ordered by comparing their bytes as unsigned values and then by their
+ * length. This is the same order in which Flink compares normalized keys, so the first
+ * {@link #NORMALIZED_KEY_LENGTH} bytes of the encoded value are used as a normalized key and
+ * most comparisons during sorting do not need to dereference the records.
  */
 public class EncodedValueComparator extends TypeComparator<byte[]> {
 
+  /** The number of leading bytes of an encoded value that are used as normalized key. */
+  static final int NORMALIZED_KEY_LENGTH = 16;
+
+  /** Multiplier and seed of the 64-bit MurmurHash2 that is used by {@link #hash(byte[])}. */
+  private static final long HASH_MULTIPLIER = 0xc6a4a7935bd1e995L;
+  private static final int HASH_SHIFT = 47;
+  private static final long HASH_SEED = 0xe17a1465L;
+
   /** For storing the Reference in encoded form. */
   private transient byte[] encodedReferenceKey;
 
@@ -42,7 +54,50 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
 
   @Override
   public int hash(byte[] record) {
-    return Arrays.hashCode(record);
+    long hash = hash64(record);
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  /**
+   * Computes a 64-bit MurmurHash2 of the given bytes, consuming eight bytes at a time.
+   */
+  static long hash64(byte[] bytes) {
+    final int length = bytes.length;
+    final int blockEnd = length & ~7;
+
+    long hash = HASH_SEED ^ (length * HASH_MULTIPLIER);
+
+    for (int i = 0; i < blockEnd; i += 8) {
+      long k = (bytes[i] & 0xffL)
+          | (bytes[i + 1] & 0xffL) << 8
+          | (bytes[i + 2] & 0xffL) << 16
+          | (bytes[i + 3] & 0xffL) << 24
+          | (bytes[i + 4] & 0xffL) << 32
+          | (bytes[i + 5] & 0xffL) << 40
+          | (bytes[i + 6] & 0xffL) << 48
+          | (bytes[i + 7] & 0xffL) << 56;
+
+      k *= HASH_MULTIPLIER;
+      k ^= k >>> HASH_SHIFT;
+      k *= HASH_MULTIPLIER;
+
+      hash ^= k;
+      hash *= HASH_MULTIPLIER;
+    }
+
+    if (blockEnd < length) {
+      long tail = 0;
+      for (int i = length - 1; i >= blockEnd; i--) {
+        tail = (tail << 8) | (bytes[i] & 0xffL);
+      }
+      hash ^= tail;
+      hash *= HASH_MULTIPLIER;
+    }
+
+    hash ^= hash >>> HASH_SHIFT;
+    hash *= HASH_MULTIPLIER;
+    hash ^= hash >>> HASH_SHIFT;
+    return hash;
   }
 
   @Override
@@ -76,9 +131,9 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
         otherEncodedValueComparator.encodedReferenceKey.length);
 
     for (int i = 0; i < len; i++) {
-      byte b1 = encodedReferenceKey[i];
-      byte b2 = otherEncodedValueComparator.encodedReferenceKey[i];
-      int result = (b1 < b2 ? -1 : (b1 == b2 ? 0 : 1));
+      int result = compareUnsigned(
+          encodedReferenceKey[i],
+          otherEncodedValueComparator.encodedReferenceKey[i]);
       if (result != 0) {
         return ascending ? -result : result;
       }
@@ -93,9 +148,7 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
   public int compare(byte[] first, byte[] second) {
     int len = Math.min(first.length, second.length);
     for (int i = 0; i < len; i++) {
-      byte b1 = first[i];
-      byte b2 = second[i];
-      int result = (b1 < b2 ? -1 : (b1 == b2 ? 0 : 1));
+      int result = compareUnsigned(first[i], second[i]);
       if (result != 0) {
         return ascending ? result : -result;
       }
@@ -113,9 +166,7 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
 
     int len = Math.min(lengthFirst, lengthSecond);
     for (int i = 0; i < len; i++) {
-      byte b1 = firstSource.readByte();
-      byte b2 = secondSource.readByte();
-      int result = (b1 < b2 ? -1 : (b1 == b2 ? 0 : 1));
+      int result = compareUnsigned(firstSource.readByte(), secondSource.readByte());
       if (result != 0) {
         return ascending ? result : -result;
       }
@@ -125,13 +176,16 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
     return ascending ? result : -result;
   }
 
-
+  /**
+   * Compares two bytes as unsigned values, which is how Flink compares normalized keys.
+   */
+  private static int compareUnsigned(byte b1, byte b2) {
+    return (b1 & 0xff) - (b2 & 0xff);
+  }
 
   @Override
   public boolean supportsNormalizedKey() {
-    // disabled because this seems to not work with some coders,
-    // such as the AvroCoder
-    return false;
+    return true;
   }
 
   @Override
@@ -141,21 +195,24 @@ public class EncodedValueComparator extends TypeComparator<byte[]> {
 
   @Override
   public int getNormalizeKeyLen() {
-    return Integer.MAX_VALUE;
+    return NORMALIZED_KEY_LENGTH;
   }
 
   @Override
   public boolean isNormalizedKeyPrefixOnly(int keyBytes) {
+    // values that are longer than the key, or that only differ in trailing zero bytes
+    // from a shorter value, cannot be told apart by the normalized key
     return true;
   }
 
   @Override
   public void putNormalizedKey(byte[] record, MemorySegment target, int offset, int numBytes) {
     final int limit = offset + numBytes;
+    final int copied = Math.min(numBytes, record.length);
 
-    target.put(offset, record, 0, Math.min(numBytes, record.length));
+    target.put(offset, record, 0, copied);
 
-    offset += record.length;
+    offset += copied;
 
     while (offset < limit) {
       target.put(offset++, (byte) 0);
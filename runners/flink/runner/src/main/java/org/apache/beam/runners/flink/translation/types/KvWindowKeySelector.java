@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.flink.translation.types;
+
+import com.google.common.collect.Iterables;
+import java.io.ByteArrayOutputStream;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.typeutils.ResultTypeQueryable;
+
+/**
+ * {@link KeySelector} that extracts the key from a {@link KV} together with the window of
+ * the {@link WindowedValue} and returns both in encoded form as a single {@code byte} array.
+ *
+ * <p>Grouping on this key yields one group per key and window. The input must have been
+ * exploded so that each {@link WindowedValue} is in exactly one window.
+ */
+public class KvWindowKeySelector<InputT, K, W extends BoundedWindow>
+    implements KeySelector<WindowedValue<KV<K, InputT>>, byte[]>, ResultTypeQueryable<byte[]> {
+
+  private final Coder<K> keyCoder;
+
+  private final Coder<W> windowCoder;
+
+  public KvWindowKeySelector(Coder<K> keyCoder, Coder<W> windowCoder) {
+    this.keyCoder = keyCoder;
+    this.windowCoder = windowCoder;
+  }
+
+  @Override
+  public byte[] getKey(WindowedValue<KV<K, InputT>> value) throws Exception {
+    @SuppressWarnings("unchecked")
+    W window = (W) Iterables.getOnlyElement(value.getWindows());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    keyCoder.encode(value.getValue().getKey(), out, Coder.Context.NESTED);
+    windowCoder.encode(window, out, Coder.Context.OUTER);
+    return out.toByteArray();
+  }
+
+  @Override
+  public TypeInformation<byte[]> getProducedType() {
+    return new EncodedValueTypeInformation();
+  }
+}
@@ -26,8 +26,10 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.apache.beam.runners.core.DoFnRunner;
 import org.apache.beam.runners.core.DoFnRunners;
 import org.apache.beam.runners.core.PushbackSideInputDoFnRunner;
@@ -51,6 +53,7 @@ import org.apache.beam.sdk.util.TimerInternals;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.util.WindowingStrategy;
 import org.apache.beam.sdk.util.state.StateInternals;
+import org.apache.beam.sdk.util.state.StateNamespaces;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.flink.api.common.ExecutionConfig;
@@ -61,6 +64,7 @@ import org.apache.flink.api.common.state.ReducingState;
 import org.apache.flink.api.common.state.ReducingStateDescriptor;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.common.typeutils.base.LongSerializer;
+import org.apache.flink.api.common.typeutils.base.StringSerializer;
 import org.apache.flink.api.common.typeutils.base.VoidSerializer;
 import org.apache.flink.api.java.typeutils.GenericTypeInfo;
 import org.apache.flink.runtime.state.AbstractStateBackend;
@@ -113,8 +117,29 @@ public class DoFnOperator<InputT, FnOutputT, OutputT>
 
   private final ReducingStateDescriptor<Long> pushedBackWatermarkDescriptor;
 
+  /**
+   * Pushed back elements, stored in the namespace of the side input window that blocks them.
+   * See {@link #getBlockingSideInputWindow(WindowedValue)}.
+   */
   private final ListStateDescriptor<WindowedValue<InputT>> pushedBackDescriptor;
 
+  /**
+   * Watermark hold of the pushed back elements in the namespace of one blocking side
+   * input window.
+   */
+  private final ReducingStateDescriptor<Long> pushedBackWindowWatermarkDescriptor;
+
+  /**
+   * The blocking side input windows that currently have pushed back elements.
+   */
+  private final ListStateDescriptor<String> pushedBackWindowsDescriptor;
+
+  /**
+   * Pushed back elements as stored in a single list by earlier versions. Restored elements
+   * are moved to {@link #pushedBackDescriptor} when the operator is opened.
+   */
+  private final ListStateDescriptor<WindowedValue<InputT>> legacyPushedBackDescriptor;
+
   private transient Map<String, KvStateSnapshot<?, ?, ?, ?, ?>> restoredSideInputState;
 
   public DoFnOperator(
@@ -143,7 +168,18 @@ public class DoFnOperator<InputT, FnOutputT, OutputT>
             LongSerializer.INSTANCE);
 
     this.pushedBackDescriptor =
-        new ListStateDescriptor<>("pushed-back-values", inputType);
+        new ListStateDescriptor<>("pushed-back-values-by-side-input-window", inputType);
+
+    this.pushedBackWindowWatermarkDescriptor =
+        new ReducingStateDescriptor<>(
+            "pushed-back-side-input-window-watermark-hold",
+            new LongMinReducer(),
+            LongSerializer.INSTANCE);
+
+    this.pushedBackWindowsDescriptor =
+        new ListStateDescriptor<>("pushed-back-side-input-windows", StringSerializer.INSTANCE);
+
+    this.legacyPushedBackDescriptor = new ListStateDescriptor<>("pushed-back-values", inputType);
 
     setChainingStrategy(ChainingStrategy.ALWAYS);
   }
@@ -183,6 +219,7 @@ public class DoFnOperator<InputT, FnOutputT, OutputT>
     };
 
     SideInputReader sideInputReader = NullSideInputReader.of(sideInputs);
+    boolean restoredSideInputs = false;
     if (!sideInputs.isEmpty()) {
       String operatorIdentifier =
           this.getClass().getSimpleName() + "_"
@@ -200,6 +237,7 @@ public class DoFnOperator<InputT, FnOutputT, OutputT>
         HashMap<String, KvStateSnapshot> castRestored = (HashMap) restoredSideInputState;
         sideInputStateBackend.injectKeyValueStateSnapshots(castRestored);
         restoredSideInputState = null;
+        restoredSideInputs = true;
       }
 
       sideInputStateBackend.setCurrentKey(
@@ -227,6 +265,38 @@ public class DoFnOperator<InputT, FnOutputT, OutputT>
         PushbackSideInputDoFnRunner.create(doFnRunner, sideInputs, sideInputHandler);
 
     doFn.setup();
+
+    if (restoredSideInputs) {
+      restoreLegacyPushedBack();
+    }
+  }
+
+  /**
+   * Files the pushed back elements of a snapshot taken by an earlier version, which kept them
+   * in a single list, under the side input windows that block them. The watermark hold of that
+   * list is replaced by the holds of the elements that are still blocked.
+   */
+  private void restoreLegacyPushedBack() throws Exception {
+    ListState<WindowedValue<InputT>> legacyPushedBack =
+        sideInputStateBackend.getPartitionedState(
+            null,
+            VoidSerializer.INSTANCE,
+            legacyPushedBackDescriptor);
+
+    Iterable<WindowedValue<InputT>> legacyContents = legacyPushedBack.get();
+    if (legacyContents == null || Iterables.isEmpty(legacyContents)) {
+      return;
+    }
+
+    pushbackDoFnRunner.startBundle();
+    List<WindowedValue<InputT>> newPushedBack = processPushedBack(legacyContents);
+    legacyPushedBack.clear();
+
+    for (WindowedValue<InputT> pushedBackValue : newPushedBack) {
+      pushBack(pushedBackValue);
+    }
+    recomputePushedBackWatermark();
+    pushbackDoFnRunner.finishBundle();
   }
 
   @Override
@@ -267,21 +337,8 @@ public class DoFnOperator<InputT, FnOutputT, OutputT>
     Iterable<WindowedValue<InputT>> justPushedBack =
         pushbackDoFnRunner.processElementInReadyWindows(streamRecord.getValue());
 
-    ListState<WindowedValue<InputT>> pushedBack =
-        sideInputStateBackend.getPartitionedState(
-            null,
-            VoidSerializer.INSTANCE,
-            pushedBackDescriptor);
-
-    ReducingState<Long> pushedBackWatermark =
-        sideInputStateBackend.getPartitionedState(
-            null,
-            VoidSerializer.INSTANCE,
-            pushedBackWatermarkDescriptor);
-
     for (WindowedValue<InputT> pushedBackValue : justPushedBack) {
-      pushedBackWatermark.add(pushedBackValue.getTimestamp().getMillis());
-      pushedBack.add(pushedBackValue);
+      pushBack(pushedBackValue);
     }
     pushbackDoFnRunner.finishBundle();
   }
@@ -298,46 +355,189 @@ public class DoFnOperator<InputT, FnOutputT, OutputT>
     PCollectionView<?> sideInput = sideInputTagMapping.get(streamRecord.getValue().getUnionTag());
     sideInputHandler.addSideInputValue(sideInput, value);
 
-    ListState<WindowedValue<InputT>> pushedBack =
+    // only the elements that are blocked on one of the windows that just became
+    // ready have to be replayed
+    Set<String> readyWindows = new HashSet<>();
+    for (BoundedWindow window : value.getWindows()) {
+      readyWindows.add(getSideInputWindowNamespace(sideInput, window));
+    }
+
+    ListState<String> pushedBackWindows =
         sideInputStateBackend.getPartitionedState(
             null,
             VoidSerializer.INSTANCE,
+            pushedBackWindowsDescriptor);
+
+    List<String> releasedWindows = new ArrayList<>();
+    List<String> blockedWindows = new ArrayList<>();
+    Iterable<String> pushedBackWindowsContents = pushedBackWindows.get();
+    if (pushedBackWindowsContents != null) {
+      for (String window : pushedBackWindowsContents) {
+        if (readyWindows.contains(window)) {
+          releasedWindows.add(window);
+        } else {
+          blockedWindows.add(window);
+        }
+      }
+    }
+
+    if (!releasedWindows.isEmpty()) {
+      pushedBackWindows.clear();
+      for (String window : blockedWindows) {
+        pushedBackWindows.add(window);
+      }
+
+      for (String window : releasedWindows) {
+        replayPushedBack(window);
+      }
+
+      // the released elements no longer hold the watermark
+      recomputePushedBackWatermark();
+    }
+
+    pushbackDoFnRunner.finishBundle();
+
+    // maybe output a new watermark
+    processWatermark1(new Watermark(currentInputWatermark));
+  }
+
+  /**
+   * Processes the elements that were pushed back because of the given side input window,
+   * which is now ready. Elements that are still blocked on another side input are pushed
+   * back again.
+   */
+  private void replayPushedBack(String blockingWindow) throws Exception {
+    ListState<WindowedValue<InputT>> pushedBack =
+        sideInputStateBackend.getPartitionedState(
+            blockingWindow,
+            StringSerializer.INSTANCE,
             pushedBackDescriptor);
 
     List<WindowedValue<InputT>> newPushedBack = new ArrayList<>();
 
     Iterable<WindowedValue<InputT>> pushedBackContents = pushedBack.get();
     if (pushedBackContents != null) {
-      for (WindowedValue<InputT> elem : pushedBackContents) {
+      newPushedBack = processPushedBack(pushedBackContents);
+    }
 
-        // we need to set the correct key in case the operator is
-        // a (keyed) window operator
-        setKeyContextElement1(new StreamRecord<>(elem));
+    pushedBack.clear();
+    getPushedBackWindowWatermark(blockingWindow).clear();
 
-        Iterable<WindowedValue<InputT>> justPushedBack =
-            pushbackDoFnRunner.processElementInReadyWindows(elem);
-        Iterables.addAll(newPushedBack, justPushedBack);
-      }
+    for (WindowedValue<InputT> pushedBackValue : newPushedBack) {
+      pushBack(pushedBackValue);
     }
+  }
+
+  /**
+   * Processes the given pushed back elements in the windows whose side inputs are ready and
+   * returns the elements that are still blocked.
+   */
+  private List<WindowedValue<InputT>> processPushedBack(
+      Iterable<WindowedValue<InputT>> pushedBackContents) throws Exception {
+    List<WindowedValue<InputT>> newPushedBack = new ArrayList<>();
+    for (WindowedValue<InputT> elem : pushedBackContents) {
+
+      // we need to set the correct key in case the operator is
+      // a (keyed) window operator
+      setKeyContextElement1(new StreamRecord<>(elem));
 
+      Iterable<WindowedValue<InputT>> justPushedBack =
+          pushbackDoFnRunner.processElementInReadyWindows(elem);
+      Iterables.addAll(newPushedBack, justPushedBack);
+    }
+    return newPushedBack;
+  }
 
+  /**
+   * Recomputes the global watermark hold from the holds of the side input windows that still
+   * have pushed back elements.
+   */
+  private void recomputePushedBackWatermark() throws Exception {
     ReducingState<Long> pushedBackWatermark =
         sideInputStateBackend.getPartitionedState(
             null,
             VoidSerializer.INSTANCE,
             pushedBackWatermarkDescriptor);
 
-    pushedBack.clear();
     pushedBackWatermark.clear();
-    for (WindowedValue<InputT> pushedBackValue : newPushedBack) {
-      pushedBackWatermark.add(pushedBackValue.getTimestamp().getMillis());
-      pushedBack.add(pushedBackValue);
+    Iterable<String> remainingWindows =
+        sideInputStateBackend.getPartitionedState(
+            null,
+            VoidSerializer.INSTANCE,
+            pushedBackWindowsDescriptor).get();
+    if (remainingWindows != null) {
+      for (String window : remainingWindows) {
+        Long windowHold = getPushedBackWindowWatermark(window).get();
+        if (windowHold != null) {
+          pushedBackWatermark.add(windowHold);
+        }
+      }
     }
+  }
 
-    pushbackDoFnRunner.finishBundle();
+  /**
+   * Stores the given element, which is in exactly one window, with the side input window
+   * that blocks it and holds the watermark at its timestamp.
+   */
+  private void pushBack(WindowedValue<InputT> element) throws Exception {
+    String blockingWindow = getBlockingSideInputWindow(element);
+    long timestamp = element.getTimestamp().getMillis();
 
-    // maybe output a new watermark
-    processWatermark1(new Watermark(currentInputWatermark));
+    ReducingState<Long> windowWatermark = getPushedBackWindowWatermark(blockingWindow);
+    if (windowWatermark.get() == null) {
+      sideInputStateBackend.getPartitionedState(
+          null,
+          VoidSerializer.INSTANCE,
+          pushedBackWindowsDescriptor).add(blockingWindow);
+    }
+    windowWatermark.add(timestamp);
+
+    sideInputStateBackend.getPartitionedState(
+        blockingWindow,
+        StringSerializer.INSTANCE,
+        pushedBackDescriptor).add(element);
+
+    sideInputStateBackend.getPartitionedState(
+        null,
+        VoidSerializer.INSTANCE,
+        pushedBackWatermarkDescriptor).add(timestamp);
+  }
+
+  private ReducingState<Long> getPushedBackWindowWatermark(String blockingWindow)
+      throws Exception {
+    return sideInputStateBackend.getPartitionedState(
+        blockingWindow,
+        StringSerializer.INSTANCE,
+        pushedBackWindowWatermarkDescriptor);
+  }
+
+  /**
+   * Returns the namespace of the first side input window that is not ready for the given
+   * pushed back element, which is in exactly one window.
+   */
+  private String getBlockingSideInputWindow(WindowedValue<InputT> element) {
+    BoundedWindow mainInputWindow = Iterables.getOnlyElement(element.getWindows());
+    for (PCollectionView<?> view : sideInputs) {
+      BoundedWindow sideInputWindow =
+          view.getWindowingStrategyInternal()
+              .getWindowFn()
+              .getSideInputWindow(mainInputWindow);
+      if (!sideInputHandler.isReady(view, sideInputWindow)) {
+        return getSideInputWindowNamespace(view, sideInputWindow);
+      }
+    }
+    throw new IllegalStateException(
+        "Element " + element + " was pushed back but all side inputs are ready.");
+  }
+
+  private static String getSideInputWindowNamespace(
+      PCollectionView<?> view,
+      BoundedWindow window) {
+    @SuppressWarnings("unchecked")
+    Coder<BoundedWindow> windowCoder =
+        (Coder<BoundedWindow>) view.getWindowingStrategyInternal().getWindowFn().windowCoder();
+    return view.getTagInternal().getId()
+        + StateNamespaces.window(windowCoder, window).stringKey();
   }
 
   @Override
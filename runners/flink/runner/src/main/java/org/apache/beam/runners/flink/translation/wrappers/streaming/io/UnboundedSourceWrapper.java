@@ -21,6 +21,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -118,6 +119,37 @@ public class UnboundedSourceWrapper<
    */
   private static final int MAX_NUMBER_PENDING_CHECKPOINTS = 32;
 
+  /**
+   * Maximum number of elements that are emitted from one reader while holding the
+   * checkpoint lock.
+   */
+  private static final int MAX_BATCH_SIZE = 1000;
+
+  /**
+   * Maximum time in microseconds that is spent emitting elements from one reader while
+   * holding the checkpoint lock.
+   */
+  private static final long MAX_BATCH_DURATION_MICROS = 1000;
+
+  /**
+   * Bounds for the time that we wait when none of the readers has data. The wait time
+   * doubles with every consecutive round in which no reader had data.
+   */
+  private long minIdleWaitMillis = 1;
+  private long maxIdleWaitMillis = 50;
+
+  /**
+   * Monitor on which we wait when none of the readers has data.
+   * {@link UnboundedSource.NotifyingReader NotifyingReaders} and {@link #cancel()} wake us up
+   * through it.
+   */
+  private transient Object idleMonitor;
+
+  /**
+   * Whether data was signalled since the last wait. Guarded by {@link #idleMonitor}.
+   */
+  private transient boolean dataSignalled;
+
   /**
    * When restoring from a snapshot we put the restored sources/checkpoint marks here
    * and open in {@link #open(Configuration)}.
@@ -172,6 +204,9 @@ public class UnboundedSourceWrapper<
 
     pendingCheckpoints = new LinkedHashMap<>();
 
+    idleMonitor = new Object();
+    dataSignalled = false;
+
     if (restoredState != null) {
 
       // restore the splitSources from the checkpoint to ensure consistent ordering
@@ -249,80 +284,109 @@ public class UnboundedSourceWrapper<
           }
         }
       }
-    } else if (localReaders.size() == 1) {
-      // the easy case, we just read from one reader
-      UnboundedSource.UnboundedReader<OutputT> reader = localReaders.get(0);
-
-      boolean dataAvailable = reader.start();
-      if (dataAvailable) {
-        emitElement(ctx, reader);
-      }
-
-      setNextWatermarkTimer(this.runtimeContext);
-
-      while (isRunning) {
-        dataAvailable = reader.advance();
-
-        if (dataAvailable)  {
-          emitElement(ctx, reader);
-        } else {
-          Thread.sleep(50);
+    } else {
+      for (UnboundedSource.UnboundedReader<OutputT> reader : localReaders) {
+        if (reader instanceof UnboundedSource.NotifyingReader) {
+          ((UnboundedSource.NotifyingReader) reader).setDataAvailableListener(new Runnable() {
+            @Override
+            public void run() {
+              notifyDataAvailable();
+            }
+          });
         }
       }
-    } else {
-      // a bit more complicated, we are responsible for several localReaders
-      // loop through them and sleep if none of them had any data
-
-      int numReaders = localReaders.size();
-      int currentReader = 0;
 
       // start each reader and emit data if immediately available
-      for (UnboundedSource.UnboundedReader<OutputT> reader : localReaders) {
-        boolean dataAvailable = reader.start();
-        if (dataAvailable) {
-          emitElement(ctx, reader);
+      synchronized (ctx.getCheckpointLock()) {
+        for (UnboundedSource.UnboundedReader<OutputT> reader : localReaders) {
+          if (reader.start()) {
+            emitElement(ctx, reader);
+          }
         }
       }
 
-      // a flag telling us whether any of the localReaders had data
-      // if no reader had data, sleep for bit
-      boolean hadData = false;
-      while (isRunning) {
-        UnboundedSource.UnboundedReader<OutputT> reader = localReaders.get(currentReader);
-        boolean dataAvailable = reader.advance();
+      setNextWatermarkTimer(this.runtimeContext);
 
-        if (dataAvailable) {
-          emitElement(ctx, reader);
-          hadData = true;
+      // loop through the readers and emit a batch from each of them, if none of them
+      // had any data wait for a bit, waiting longer the longer they stay idle
+      long idleWaitMillis = minIdleWaitMillis;
+      while (isRunning) {
+        boolean hadData = false;
+        for (UnboundedSource.UnboundedReader<OutputT> reader : localReaders) {
+          hadData |= emitBatch(ctx, reader);
         }
 
-        currentReader = (currentReader + 1) % numReaders;
-        if (currentReader == 0 && !hadData) {
-          Thread.sleep(50);
-        } else if (currentReader == 0) {
-          hadData = false;
+        if (hadData) {
+          idleWaitMillis = minIdleWaitMillis;
+        } else {
+          waitForData(idleWaitMillis);
+          idleWaitMillis = Math.min(2 * idleWaitMillis, maxIdleWaitMillis);
         }
       }
+    }
+  }
 
+  /**
+   * Advances the given reader and emits its elements until it has no more data, or until
+   * {@link #MAX_BATCH_SIZE} elements have been emitted or {@link #MAX_BATCH_DURATION_MICROS}
+   * have passed. The checkpoint lock is only taken once per batch, and advancing the reader
+   * and emitting its elements are atomic with respect to snapshots.
+   *
+   * @return whether any element was emitted
+   */
+  private boolean emitBatch(
+      SourceContext<WindowedValue<OutputT>> ctx,
+      UnboundedSource.UnboundedReader<OutputT> reader) throws IOException {
+    int numEmitted = 0;
+    synchronized (ctx.getCheckpointLock()) {
+      long deadline = System.nanoTime() + MAX_BATCH_DURATION_MICROS * 1000L;
+      while (numEmitted < MAX_BATCH_SIZE && isRunning && reader.advance()) {
+        emitElement(ctx, reader);
+        numEmitted++;
+        if (System.nanoTime() - deadline >= 0) {
+          break;
+        }
+      }
     }
+    return numEmitted > 0;
   }
 
   /**
    * Emit the current element from the given Reader. The reader is guaranteed to have data.
+   * Must be called while holding the checkpoint lock, so that reader state update and
+   * element emission are atomic with respect to snapshots.
    */
   private void emitElement(
       SourceContext<WindowedValue<OutputT>> ctx,
       UnboundedSource.UnboundedReader<OutputT> reader) {
-    // make sure that reader state update and element emission are atomic
-    // with respect to snapshots
-    synchronized (ctx.getCheckpointLock()) {
+    OutputT item = reader.getCurrent();
+    Instant timestamp = reader.getCurrentTimestamp();
 
-      OutputT item = reader.getCurrent();
-      Instant timestamp = reader.getCurrentTimestamp();
+    WindowedValue<OutputT> windowedValue =
+        WindowedValue.of(item, timestamp, GlobalWindow.INSTANCE, PaneInfo.NO_FIRING);
+    ctx.collectWithTimestamp(windowedValue, timestamp.getMillis());
+  }
+
+  /**
+   * Waits until a {@link UnboundedSource.NotifyingReader} signals that data is available, the
+   * source is stopped, or the given time has passed.
+   */
+  private void waitForData(long timeoutMillis) throws InterruptedException {
+    synchronized (idleMonitor) {
+      if (!dataSignalled && isRunning) {
+        idleMonitor.wait(timeoutMillis);
+      }
+      dataSignalled = false;
+    }
+  }
 
-      WindowedValue<OutputT> windowedValue =
-          WindowedValue.of(item, timestamp, GlobalWindow.INSTANCE, PaneInfo.NO_FIRING);
-      ctx.collectWithTimestamp(windowedValue, timestamp.getMillis());
+  /**
+   * Wakes up the source if it is waiting for data.
+   */
+  private void notifyDataAvailable() {
+    synchronized (idleMonitor) {
+      dataSignalled = true;
+      idleMonitor.notifyAll();
     }
   }
 
@@ -339,11 +403,17 @@ public class UnboundedSourceWrapper<
   @Override
   public void cancel() {
     isRunning = false;
+    if (idleMonitor != null) {
+      notifyDataAvailable();
+    }
   }
 
   @Override
   public void stop() {
     isRunning = false;
+    if (idleMonitor != null) {
+      notifyDataAvailable();
+    }
   }
 
   @Override
@@ -433,6 +503,16 @@ public class UnboundedSourceWrapper<
     return System.currentTimeMillis() + watermarkInterval;
   }
 
+  /**
+   * Visible so that we can control the waiting for data in tests. Must not be used for
+   * anything else.
+   */
+  @VisibleForTesting
+  public void setIdleWaitMillis(long minIdleWaitMillis, long maxIdleWaitMillis) {
+    this.minIdleWaitMillis = minIdleWaitMillis;
+    this.maxIdleWaitMillis = maxIdleWaitMillis;
+  }
+
   /**
    * Visible so that we can check this in tests. Must not be used for anything else.
    */
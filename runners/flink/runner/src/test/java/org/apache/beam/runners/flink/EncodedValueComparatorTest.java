@@ -61,7 +61,10 @@ public class EncodedValueComparatorTest extends ComparatorTestBase<byte[]> {
           CoderUtils.encodeToByteArray(coder, "abce"),
           CoderUtils.encodeToByteArray(coder, "abdd"),
           CoderUtils.encodeToByteArray(coder, "accd"),
-          CoderUtils.encodeToByteArray(coder, "bbcd")
+          CoderUtils.encodeToByteArray(coder, "bbcd"),
+          // multi-byte UTF-8 sequences have the high bit set and must sort as unsigned bytes
+          CoderUtils.encodeToByteArray(coder, "\u00e9t\u00e9"),
+          CoderUtils.encodeToByteArray(coder, "\u00e9t\u00e9 plus long que la cl\u00e9")
       };
     } catch (CoderException e) {
       throw new RuntimeException("Could not encode values.", e);
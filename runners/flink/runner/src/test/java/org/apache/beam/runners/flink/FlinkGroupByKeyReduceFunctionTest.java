@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.flink;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.runners.flink.translation.functions.FlinkGroupByKeyReduceFunction;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.OutputTimeFns;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.util.WindowingStrategy;
+import org.apache.beam.sdk.values.KV;
+import org.apache.flink.api.common.functions.util.ListCollector;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link FlinkGroupByKeyReduceFunction}.
+ */
+@RunWith(JUnit4.class)
+public class FlinkGroupByKeyReduceFunctionTest {
+
+  private static final IntervalWindow WINDOW =
+      new IntervalWindow(new Instant(0), new Instant(10));
+
+  @Test
+  public void testGroupsValuesOfOneKeyAndWindow() throws Exception {
+    WindowingStrategy<?, IntervalWindow> windowingStrategy =
+        WindowingStrategy.of(FixedWindows.of(Duration.millis(10)))
+            .withOutputTimeFn(OutputTimeFns.outputAtEarliestInputTimestamp());
+
+    List<WindowedValue<KV<String, Iterable<Integer>>>> output = reduce(windowingStrategy);
+
+    assertEquals(1, output.size());
+    WindowedValue<KV<String, Iterable<Integer>>> result = output.get(0);
+    assertEquals("k", result.getValue().getKey());
+    assertThat(result.getValue().getValue(), containsInAnyOrder(1, 2, 3));
+    assertThat(result.getWindows(), containsInAnyOrder(WINDOW));
+    assertEquals(new Instant(2), result.getTimestamp());
+  }
+
+  @Test
+  public void testOutputTimestampDependsOnlyOnWindow() throws Exception {
+    WindowingStrategy<?, IntervalWindow> windowingStrategy =
+        WindowingStrategy.of(FixedWindows.of(Duration.millis(10)));
+
+    List<WindowedValue<KV<String, Iterable<Integer>>>> output = reduce(windowingStrategy);
+
+    assertEquals(1, output.size());
+    assertEquals(WINDOW.maxTimestamp(), output.get(0).getTimestamp());
+  }
+
+  private static List<WindowedValue<KV<String, Iterable<Integer>>>> reduce(
+      WindowingStrategy<?, IntervalWindow> windowingStrategy) throws Exception {
+    List<WindowedValue<KV<String, Integer>>> input = new ArrayList<>();
+    input.add(WindowedValue.of(KV.of("k", 1), new Instant(5), WINDOW, PaneInfo.NO_FIRING));
+    input.add(WindowedValue.of(KV.of("k", 2), new Instant(2), WINDOW, PaneInfo.NO_FIRING));
+    input.add(WindowedValue.of(KV.of("k", 3), new Instant(7), WINDOW, PaneInfo.NO_FIRING));
+
+    List<WindowedValue<KV<String, Iterable<Integer>>>> output = new ArrayList<>();
+    new FlinkGroupByKeyReduceFunction<String, Integer, IntervalWindow>(windowingStrategy)
+        .reduce(input, new ListCollector<>(output));
+    return output;
+  }
+}
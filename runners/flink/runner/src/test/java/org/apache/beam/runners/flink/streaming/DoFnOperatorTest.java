@@ -17,8 +17,12 @@
  */
 package org.apache.beam.runners.flink.streaming;
 
+import static org.hamcrest.Matchers.emptyIterable;
 import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
@@ -26,6 +30,8 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
+import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.HashMap;
 import javax.annotation.Nullable;
@@ -33,6 +39,7 @@ import org.apache.beam.runners.flink.FlinkPipelineOptions;
 import org.apache.beam.runners.flink.translation.types.CoderTypeInformation;
 import org.apache.beam.runners.flink.translation.wrappers.streaming.DoFnOperator;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VoidCoder;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.PCollectionViewTesting;
 import org.apache.beam.sdk.transforms.OldDoFn;
@@ -41,11 +48,27 @@ import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.FixedWindows;
 import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.util.WindowingStrategy;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.TupleTag;
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.functions.ReduceFunction;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.state.ReducingStateDescriptor;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.common.typeutils.base.LongSerializer;
+import org.apache.flink.api.common.typeutils.base.VoidSerializer;
+import org.apache.flink.api.java.typeutils.GenericTypeInfo;
+import org.apache.flink.runtime.operators.testutils.DummyEnvironment;
+import org.apache.flink.runtime.state.AbstractStateBackend;
+import org.apache.flink.runtime.state.KvStateSnapshot;
+import org.apache.flink.runtime.state.StateHandle;
+import org.apache.flink.runtime.state.memory.MemoryStateBackend;
+import org.apache.flink.streaming.api.watermark.Watermark;
 import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.runtime.tasks.StreamTaskState;
 import org.apache.flink.streaming.util.OneInputStreamOperatorTestHarness;
 import org.apache.flink.streaming.util.TwoInputStreamOperatorTestHarness;
 import org.joda.time.Duration;
@@ -54,6 +77,8 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * Tests for {@link DoFnOperator}.
@@ -240,6 +265,234 @@ public class DoFnOperatorTest {
     testHarness.close();
   }
 
+  /**
+   * An element that is blocked on the first side input is filed under the second side input
+   * once the first is ready, and is processed once the second is ready.
+   */
+  @Test
+  public void testPushedBackElementIsRefiledUnderNextBlockingSideInput() throws Exception {
+    TwoInputStreamOperatorTestHarness<WindowedValue<String>, RawUnionValue, String> testHarness =
+        createSideInputHarness(createSideInputOperator());
+    testHarness.open();
+
+    IntervalWindow mainWindow = new IntervalWindow(new Instant(0), new Instant(100));
+    testHarness.processElement1(
+        new StreamRecord<>(valueInWindow("hello", new Instant(0), mainWindow)));
+
+    // view1 becomes ready, the element is now blocked on view2
+    testHarness.processElement2(
+        new StreamRecord<>(
+            new RawUnionValue(
+                1, valuesInWindow(ImmutableList.of("a"), new Instant(0), mainWindow))));
+    testHarness.processWatermark1(new Watermark(1000));
+
+    assertThat(
+        this.<String>stripStreamRecordFromWindowedValue(testHarness.getOutput()),
+        emptyIterable());
+    // the element still holds the watermark
+    assertThat(stripWatermarks(testHarness.getOutput()), contains(new Watermark(0)));
+
+    IntervalWindow view2Window = new IntervalWindow(new Instant(0), new Instant(500));
+    testHarness.processElement2(
+        new StreamRecord<>(
+            new RawUnionValue(
+                2, valuesInWindow(ImmutableList.of("b"), new Instant(0), view2Window))));
+
+    assertThat(
+        this.<String>stripStreamRecordFromWindowedValue(testHarness.getOutput()),
+        contains(valueInWindow("hello", new Instant(0), mainWindow)));
+    assertThat(
+        stripWatermarks(testHarness.getOutput()),
+        contains(new Watermark(0), new Watermark(1000)));
+
+    testHarness.close();
+  }
+
+  /**
+   * Pushed back elements and their side input windows are restored from a snapshot.
+   */
+  @Test
+  public void testPushedBackElementsAreRestored() throws Exception {
+    DoFnOperator<String, String, String> doFnOperator = createSideInputOperator();
+    TwoInputStreamOperatorTestHarness<WindowedValue<String>, RawUnionValue, String> testHarness =
+        createSideInputHarness(doFnOperator);
+    testHarness.open();
+
+    IntervalWindow mainWindow = new IntervalWindow(new Instant(0), new Instant(100));
+    testHarness.processElement1(
+        new StreamRecord<>(valueInWindow("hello", new Instant(0), mainWindow)));
+
+    StreamTaskState snapshot = doFnOperator.snapshotOperatorState(1L, 1L);
+    testHarness.close();
+
+    doFnOperator = createSideInputOperator();
+    testHarness = createSideInputHarness(doFnOperator);
+    doFnOperator.restoreState(snapshot);
+    testHarness.open();
+
+    testHarness.processElement2(
+        new StreamRecord<>(
+            new RawUnionValue(
+                1, valuesInWindow(ImmutableList.of("a"), new Instant(0), mainWindow))));
+    assertThat(
+        this.<String>stripStreamRecordFromWindowedValue(testHarness.getOutput()),
+        emptyIterable());
+
+    testHarness.processElement2(
+        new StreamRecord<>(
+            new RawUnionValue(
+                2,
+                valuesInWindow(
+                    ImmutableList.of("b"),
+                    new Instant(0),
+                    new IntervalWindow(new Instant(0), new Instant(500))))));
+    testHarness.processWatermark1(new Watermark(1000));
+
+    assertThat(
+        this.<String>stripStreamRecordFromWindowedValue(testHarness.getOutput()),
+        contains(valueInWindow("hello", new Instant(0), mainWindow)));
+    assertThat(stripWatermarks(testHarness.getOutput()), contains(new Watermark(1000)));
+
+    testHarness.close();
+  }
+
+  /**
+   * Pushed back elements in a snapshot of an earlier version, which kept them in a single list,
+   * are filed under their blocking side input windows and no longer hold the watermark once they
+   * are processed.
+   */
+  @Test
+  public void testLegacyPushedBackElementsAreRestored() throws Exception {
+    IntervalWindow mainWindow = new IntervalWindow(new Instant(0), new Instant(100));
+
+    MemoryStateBackend legacyBackend = createStateBackend("legacy");
+    legacyBackend.setCurrentKey(
+        ByteBuffer.wrap(CoderUtils.encodeToByteArray(VoidCoder.of(), null)));
+    legacyBackend.getPartitionedState(
+        null,
+        VoidSerializer.INSTANCE,
+        new ListStateDescriptor<>(
+            "pushed-back-values",
+            new CoderTypeInformation<>(
+                WindowedValue.getFullCoder(StringUtf8Coder.of(), IntervalWindow.getCoder()))))
+        .add(valueInWindow("hello", new Instant(0), mainWindow));
+    legacyBackend.getPartitionedState(
+        null,
+        VoidSerializer.INSTANCE,
+        new ReducingStateDescriptor<>(
+            "pushed-back-elements-watermark-hold",
+            new LongMinReducer(),
+            LongSerializer.INSTANCE))
+        .add(0L);
+
+    HashMap<String, KvStateSnapshot<?, ?, ?, ?, ?>> legacySnapshot =
+        legacyBackend.snapshotPartitionedState(1L, 1L);
+    @SuppressWarnings("unchecked,rawtypes")
+    StateHandle<Serializable> legacyHandle =
+        (StateHandle) legacyBackend.checkpointStateSerializable(legacySnapshot, 1L, 1L);
+    StreamTaskState snapshot = new StreamTaskState();
+    snapshot.setFunctionState(legacyHandle);
+
+    DoFnOperator<String, String, String> doFnOperator = createSideInputOperator();
+    TwoInputStreamOperatorTestHarness<WindowedValue<String>, RawUnionValue, String> testHarness =
+        createSideInputHarness(doFnOperator);
+    doFnOperator.restoreState(snapshot);
+    testHarness.open();
+
+    // view1 becomes ready, the element is now blocked on view2
+    testHarness.processElement2(
+        new StreamRecord<>(
+            new RawUnionValue(
+                1, valuesInWindow(ImmutableList.of("a"), new Instant(0), mainWindow))));
+    assertThat(
+        this.<String>stripStreamRecordFromWindowedValue(testHarness.getOutput()),
+        emptyIterable());
+
+    testHarness.processElement2(
+        new StreamRecord<>(
+            new RawUnionValue(
+                2,
+                valuesInWindow(
+                    ImmutableList.of("b"),
+                    new Instant(0),
+                    new IntervalWindow(new Instant(0), new Instant(500))))));
+    testHarness.processWatermark1(new Watermark(1000));
+
+    assertThat(
+        this.<String>stripStreamRecordFromWindowedValue(testHarness.getOutput()),
+        contains(valueInWindow("hello", new Instant(0), mainWindow)));
+    assertThat(stripWatermarks(testHarness.getOutput()), contains(new Watermark(1000)));
+
+    testHarness.close();
+  }
+
+  /**
+   * Creates an operator with the side inputs {@link #view1} and {@link #view2}.
+   */
+  @SuppressWarnings("unchecked")
+  private DoFnOperator<String, String, String> createSideInputOperator() {
+    CoderTypeInformation<WindowedValue<String>> coderTypeInfo =
+        new CoderTypeInformation<>(
+            WindowedValue.getFullCoder(StringUtf8Coder.of(), IntervalWindow.getCoder()));
+
+    return new DoFnOperator<>(
+        new IdentityDoFn<String>(),
+        coderTypeInfo,
+        new TupleTag<String>("main-output"),
+        Collections.<TupleTag<?>>emptyList(),
+        new DoFnOperator.DefaultOutputManagerFactory(),
+        windowingStrategy1,
+        ImmutableMap.<Integer, PCollectionView<?>>of(1, view1, 2, view2),
+        ImmutableList.<PCollectionView<?>>of(view1, view2),
+        PipelineOptionsFactory.as(FlinkPipelineOptions.class));
+  }
+
+  /**
+   * Creates a harness for the given operator, which uses a {@link MemoryStateBackend} for its
+   * side input state.
+   */
+  @SuppressWarnings("unchecked")
+  private TwoInputStreamOperatorTestHarness<WindowedValue<String>, RawUnionValue, String>
+      createSideInputHarness(DoFnOperator<String, String, String> doFnOperator) throws Exception {
+    TwoInputStreamOperatorTestHarness<WindowedValue<String>, RawUnionValue, String> testHarness =
+        new TwoInputStreamOperatorTestHarness<>(doFnOperator);
+
+    // the harness sets up the operator with a mock task, which does not create state backends
+    when(doFnOperator.getContainingTask().getUserCodeClassLoader())
+        .thenReturn(getClass().getClassLoader());
+    when(doFnOperator.getContainingTask()
+        .createStateBackend(anyString(), any(TypeSerializer.class)))
+        .thenAnswer(new Answer<AbstractStateBackend>() {
+          @Override
+          public AbstractStateBackend answer(InvocationOnMock invocation) throws Exception {
+            return createStateBackend((String) invocation.getArguments()[0]);
+          }
+        });
+
+    return testHarness;
+  }
+
+  private static MemoryStateBackend createStateBackend(String operatorIdentifier)
+      throws Exception {
+    MemoryStateBackend backend = new MemoryStateBackend();
+    backend.initializeForJob(
+        new DummyEnvironment("test", 1, 0),
+        operatorIdentifier,
+        new GenericTypeInfo<>(ByteBuffer.class).createSerializer(new ExecutionConfig()));
+    return backend;
+  }
+
+  private static Iterable<Watermark> stripWatermarks(Iterable<Object> input) {
+    return FluentIterable.from(input).filter(Watermark.class);
+  }
+
+  private static class LongMinReducer implements ReduceFunction<Long> {
+    @Override
+    public Long reduce(Long a, Long b) throws Exception {
+      return Math.min(a, b);
+    }
+  }
+
   private <T> Iterable<WindowedValue<T>> stripStreamRecordFromWindowedValue(
       Iterable<Object> input) {
 
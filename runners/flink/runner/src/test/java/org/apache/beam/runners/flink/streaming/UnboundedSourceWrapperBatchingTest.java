@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.flink.streaming;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.apache.beam.runners.flink.translation.wrappers.streaming.io.UnboundedSourceWrapper;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.io.UnboundedSource;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.flink.streaming.api.operators.Output;
+import org.apache.flink.streaming.api.operators.StreamSource;
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+/**
+ * Tests for the batched emission and the waiting for data of {@link UnboundedSourceWrapper}.
+ */
+public class UnboundedSourceWrapperBatchingTest {
+
+  /**
+   * Verify that the readers are started and advanced under the checkpoint lock, that every
+   * element is emitted right after it was read, and that no checkpoint mark is taken outside
+   * of snapshots.
+   */
+  @Test
+  public void testBatchesAreReadUnderTheCheckpointLock() throws Exception {
+    final int numElements = 5000;
+    final Object checkpointLock = new Object();
+    final QueueSource source = new QueueSource(checkpointLock);
+    List<Integer> expectedElements = new ArrayList<>();
+    for (int i = 0; i < numElements; i++) {
+      source.elements.add(i);
+      expectedElements.add(i);
+    }
+
+    UnboundedSourceWrapper<Integer, UnboundedSource.CheckpointMark> flinkWrapper =
+        new UnboundedSourceWrapper<>(PipelineOptionsFactory.create(), source, 1);
+    StreamSource<
+        WindowedValue<Integer>,
+        UnboundedSourceWrapper<Integer, UnboundedSource.CheckpointMark>> sourceOperator =
+        new StreamSource<>(flinkWrapper);
+    UnboundedSourceWrapperTest.setupSourceOperator(sourceOperator, 1);
+
+    final List<Integer> emittedElements = new ArrayList<>();
+
+    try {
+      sourceOperator.open();
+      sourceOperator.run(checkpointLock, new Output<StreamRecord<WindowedValue<Integer>>>() {
+        @Override
+        public void emitWatermark(Watermark watermark) {
+        }
+
+        @Override
+        public void collect(StreamRecord<WindowedValue<Integer>> windowedValueStreamRecord) {
+          assertTrue(Thread.holdsLock(checkpointLock));
+          emittedElements.add(windowedValueStreamRecord.getValue().getValue());
+          assertEquals(source.numRead, emittedElements.size());
+          if (emittedElements.size() >= numElements) {
+            throw new SuccessException();
+          }
+        }
+
+        @Override
+        public void close() {
+        }
+      });
+    } catch (SuccessException e) {
+      assertEquals(expectedElements, emittedElements);
+      assertFalse("Reader was read outside the checkpoint lock.", source.readOutsideLock);
+      assertEquals(0, source.numCheckpointMarks);
+
+      // success
+      return;
+    }
+    fail("Read terminated without producing expected number of outputs");
+  }
+
+  /**
+   * Verify that the time waited between polls of an idle reader starts small and grows.
+   */
+  @Test
+  public void testIdleWaitGrows() throws Exception {
+    final Object checkpointLock = new Object();
+    QueueSource source = new QueueSource(checkpointLock);
+
+    final UnboundedSourceWrapper<Integer, UnboundedSource.CheckpointMark> flinkWrapper =
+        new UnboundedSourceWrapper<>(PipelineOptionsFactory.create(), source, 1);
+    StreamSource<
+        WindowedValue<Integer>,
+        UnboundedSourceWrapper<Integer, UnboundedSource.CheckpointMark>> sourceOperator =
+        new StreamSource<>(flinkWrapper);
+    UnboundedSourceWrapperTest.setupSourceOperator(sourceOperator, 1);
+
+    final int numPolls = 10;
+    final List<Long> pollNanos = new ArrayList<>();
+    source.advanceListener = new Runnable() {
+      @Override
+      public void run() {
+        pollNanos.add(System.nanoTime());
+        if (pollNanos.size() >= numPolls) {
+          flinkWrapper.cancel();
+        }
+      }
+    };
+
+    sourceOperator.open();
+    sourceOperator.run(checkpointLock, new NoOpOutput<Integer>());
+
+    assertEquals(numPolls, pollNanos.size());
+    long firstWaitMillis = TimeUnit.NANOSECONDS.toMillis(pollNanos.get(1) - pollNanos.get(0));
+    long lastWaitMillis =
+        TimeUnit.NANOSECONDS.toMillis(pollNanos.get(numPolls - 1) - pollNanos.get(numPolls - 2));
+    assertThat(firstWaitMillis, lessThan(25L));
+    assertThat(lastWaitMillis, greaterThanOrEqualTo(40L));
+  }
+
+  /**
+   * Verify that a {@link UnboundedSource.NotifyingReader} wakes up the waiting source when it
+   * has data, and that cancelling wakes it up as well.
+   */
+  @Test
+  public void testNotifyingReaderWakesUpSource() throws Exception {
+    final Object checkpointLock = new Object();
+    QueueSource source = new QueueSource(checkpointLock);
+
+    UnboundedSourceWrapper<Integer, UnboundedSource.CheckpointMark> flinkWrapper =
+        new UnboundedSourceWrapper<>(PipelineOptionsFactory.create(), source, 1);
+    // without being woken up, the source waits far longer than this test runs
+    long idleWaitMillis = TimeUnit.MINUTES.toMillis(10);
+    flinkWrapper.setIdleWaitMillis(idleWaitMillis, idleWaitMillis);
+    final StreamSource<
+        WindowedValue<Integer>,
+        UnboundedSourceWrapper<Integer, UnboundedSource.CheckpointMark>> sourceOperator =
+        new StreamSource<>(flinkWrapper);
+    UnboundedSourceWrapperTest.setupSourceOperator(sourceOperator, 1);
+
+    final CountDownLatch polled = new CountDownLatch(1);
+    source.advanceListener = new Runnable() {
+      @Override
+      public void run() {
+        polled.countDown();
+      }
+    };
+    final CountDownLatch emitted = new CountDownLatch(1);
+
+    sourceOperator.open();
+    Thread sourceThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          sourceOperator.run(checkpointLock, new NoOpOutput<Integer>() {
+            @Override
+            public void collect(StreamRecord<WindowedValue<Integer>> windowedValueStreamRecord) {
+              emitted.countDown();
+            }
+          });
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    sourceThread.start();
+
+    assertTrue("Reader was not polled.", polled.await(10, TimeUnit.SECONDS));
+    source.elements.add(42);
+    source.dataAvailableListener.run();
+    assertTrue("Source was not woken up by the reader.", emitted.await(10, TimeUnit.SECONDS));
+
+    flinkWrapper.cancel();
+    sourceThread.join(TimeUnit.SECONDS.toMillis(10));
+    assertFalse("Source was not woken up by cancel().", sourceThread.isAlive());
+  }
+
+  /**
+   * An {@link Output} that discards everything.
+   */
+  private static class NoOpOutput<T> implements Output<StreamRecord<WindowedValue<T>>> {
+    @Override
+    public void emitWatermark(Watermark watermark) {
+    }
+
+    @Override
+    public void collect(StreamRecord<WindowedValue<T>> windowedValueStreamRecord) {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * An unbounded source that reads the elements that the test adds to its queue. Its reader is
+   * a {@link UnboundedSource.NotifyingReader}, and it records whether it is read outside the
+   * checkpoint lock and how many checkpoint marks were taken.
+   */
+  private static class QueueSource
+      extends UnboundedSource<Integer, UnboundedSource.CheckpointMark> {
+
+    private static final UnboundedSource.CheckpointMark NO_OP_MARK =
+        new UnboundedSource.CheckpointMark() {
+          @Override
+          public void finalizeCheckpoint() {
+          }
+        };
+
+    private final transient Object checkpointLock;
+    private final transient BlockingQueue<Integer> elements = new LinkedBlockingQueue<>();
+    private transient volatile Runnable dataAvailableListener;
+    private transient volatile Runnable advanceListener;
+    private transient boolean readOutsideLock;
+    private transient int numRead;
+    private transient int numCheckpointMarks;
+
+    QueueSource(Object checkpointLock) {
+      this.checkpointLock = checkpointLock;
+    }
+
+    @Override
+    public List<QueueSource> generateInitialSplits(
+        int desiredNumSplits, PipelineOptions options) {
+      return Collections.singletonList(this);
+    }
+
+    @Override
+    public UnboundedReader<Integer> createReader(
+        PipelineOptions options, @Nullable UnboundedSource.CheckpointMark checkpointMark) {
+      return new QueueReader();
+    }
+
+    @Override
+    public Coder<UnboundedSource.CheckpointMark> getCheckpointMarkCoder() {
+      return null;
+    }
+
+    @Override
+    public void validate() {}
+
+    @Override
+    public Coder<Integer> getDefaultOutputCoder() {
+      return VarIntCoder.of();
+    }
+
+    private class QueueReader extends UnboundedReader<Integer>
+        implements UnboundedSource.NotifyingReader {
+      private Integer current;
+
+      @Override
+      public boolean start() {
+        return read();
+      }
+
+      @Override
+      public boolean advance() {
+        boolean hasData = read();
+        Runnable listener = advanceListener;
+        if (listener != null) {
+          listener.run();
+        }
+        return hasData;
+      }
+
+      private boolean read() {
+        if (!Thread.holdsLock(checkpointLock)) {
+          readOutsideLock = true;
+        }
+        current = elements.poll();
+        if (current == null) {
+          return false;
+        }
+        numRead++;
+        return true;
+      }
+
+      @Override
+      public Integer getCurrent() {
+        if (current == null) {
+          throw new NoSuchElementException();
+        }
+        return current;
+      }
+
+      @Override
+      public Instant getCurrentTimestamp() {
+        return new Instant(getCurrent());
+      }
+
+      @Override
+      public Instant getWatermark() {
+        return BoundedWindow.TIMESTAMP_MIN_VALUE;
+      }
+
+      @Override
+      public UnboundedSource.CheckpointMark getCheckpointMark() {
+        numCheckpointMarks++;
+        return NO_OP_MARK;
+      }
+
+      @Override
+      public void setDataAvailableListener(Runnable listener) {
+        dataAvailableListener = listener;
+      }
+
+      @Override
+      public void close() {}
+
+      @Override
+      public QueueSource getCurrentSource() {
+        return QueueSource.this;
+      }
+    }
+  }
+
+  /**
+   * A special {@link RuntimeException} that we throw to signal that the test was successful.
+   */
+  private static class SuccessException extends RuntimeException {}
+}
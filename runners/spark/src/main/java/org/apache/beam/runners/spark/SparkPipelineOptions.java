@@ -83,6 +83,19 @@ public interface SparkPipelineOptions extends PipelineOptions, StreamingOptions,
   Boolean getEnableSparkSinks();
   void setEnableSparkSinks(Boolean enableSparkSinks);
 
+  @Description("The storage level used to persist RDDs that are read more than once, "
+      + "e.g. MEMORY_ONLY, MEMORY_AND_DISK_SER or OFF_HEAP. In batch pipelines, the RDDs stay "
+      + "persisted until the pipeline has finished, not only until their last reader has.")
+  @Default.String("MEMORY_ONLY")
+  String getStorageLevel();
+  void setStorageLevel(String storageLevel);
+
+  @Description("Persist RDDs as elements encoded with their Beam coders, rather than as "
+      + "Java objects.")
+  @Default.Boolean(false)
+  boolean getCacheEncodedBytes();
+  void setCacheEncodedBytes(boolean cacheEncodedBytes);
+
   @Description("If the spark runner will be initialized with a provided Spark Context")
   @Default.Boolean(false)
   boolean getUsesProvidedSparkContext();
@@ -161,8 +161,10 @@ public final class SparkRunner extends PipelineRunner<EvaluationResult> {
         JavaSparkContext jsc = SparkContextFactory.getSparkContext(mOptions);
         EvaluationContext ctxt = new EvaluationContext(jsc, pipeline);
         SparkPipelineTranslator translator = new TransformTranslator.Translator();
+        pipeline.traverseTopologically(new ConsumerCounter(translator, ctxt));
         pipeline.traverseTopologically(new Evaluator(translator, ctxt));
         ctxt.computeOutputs();
+        ctxt.unpersistIntermediateRDDs();
 
         LOG.info("Pipeline execution complete.");
 
@@ -279,5 +281,28 @@ public final class SparkRunner extends PipelineRunner<EvaluationResult> {
       return isBounded;
     }
   }
-}
 
+  /**
+   * Counts the transforms that read each value, visiting the same transforms as the
+   * {@link Evaluator} but without evaluating them.
+   */
+  static class ConsumerCounter extends Evaluator {
+    private final EvaluationContext ctxt;
+
+    ConsumerCounter(SparkPipelineTranslator translator, EvaluationContext ctxt) {
+      super(translator, ctxt);
+      this.ctxt = ctxt;
+    }
+
+    @Override
+    <TransformT extends PTransform<? super PInput, POutput>> void
+        doVisitTransform(TransformTreeNode node) {
+      PInput input = node.getInput();
+      if (!(input instanceof PBegin)) {
+        for (PValue pValue : input.expand()) {
+          ctxt.addConsumer(pValue);
+        }
+      }
+    }
+  }
+}
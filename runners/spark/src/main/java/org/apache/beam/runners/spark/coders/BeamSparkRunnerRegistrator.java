@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.coders;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.runners.core.SpillingStateInternals.SpilledContents;
+import org.apache.beam.runners.spark.util.ByteArray;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.SerializableUtils;
+import org.apache.spark.serializer.KryoRegistrator;
+
+/**
+ * Registers the runner's internal shuffle types with Kryo.
+ *
+ * <p>The runner encodes the elements it shuffles using their Beam {@link
+ * org.apache.beam.sdk.coders.Coder}s, so Spark's serializer only sees byte arrays and their
+ * {@link ByteArray} wrappers. Registering them saves writing their class names along with every
+ * record.
+ *
+ * <p>It also registers a serializer for the grouped values of keys that were spilled to local disk,
+ * which Kryo could not otherwise serialize. It encodes the values with their Beam Coder as well.
+ */
+public class BeamSparkRunnerRegistrator implements KryoRegistrator {
+
+  @Override
+  public void registerClasses(Kryo kryo) {
+    kryo.register(ByteArray.class);
+    kryo.register(ByteArray[].class);
+    kryo.register(byte[].class);
+    kryo.register(byte[][].class);
+    kryo.register(SpilledContents.class, new SpilledContentsSerializer());
+  }
+
+  /**
+   * Serializes {@link SpilledContents} by reading them into a {@link List}, as their Java
+   * serialization does. The contents refer to local spill files, and Kryo ignores the
+   * {@code writeReplace} method that Java serialization uses to replace them. The values are
+   * encoded with their {@link Coder}, which is written ahead of them.
+   */
+  private static class SpilledContentsSerializer extends Serializer<Iterable<?>> {
+    @Override
+    public void write(Kryo kryo, Output output, Iterable<?> contents) {
+      writeValues(output, (SpilledContents<?>) contents);
+    }
+
+    private static <T> void writeValues(Output output, SpilledContents<T> contents) {
+      Coder<T> coder = contents.getElemCoder();
+      writeBytes(output, SerializableUtils.serializeToByteArray(coder));
+      List<T> values = Lists.newArrayList(contents);
+      output.writeInt(values.size(), true);
+      for (T value : values) {
+        try {
+          writeBytes(output, CoderUtils.encodeToByteArray(coder, value));
+        } catch (CoderException e) {
+          throw new RuntimeException(
+              String.format("Failed to encode value %s with coder %s", value, coder), e);
+        }
+      }
+    }
+
+    @Override
+    public Iterable<?> read(Kryo kryo, Input input, Class<Iterable<?>> type) {
+      Coder<?> coder =
+          (Coder<?>) SerializableUtils.deserializeFromByteArray(readBytes(input), "Coder");
+      return readValues(input, coder);
+    }
+
+    private static <T> List<T> readValues(Input input, Coder<T> coder) {
+      int size = input.readInt(true);
+      List<T> values = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        try {
+          values.add(CoderUtils.decodeFromByteArray(coder, readBytes(input)));
+        } catch (CoderException e) {
+          throw new RuntimeException(
+              String.format("Failed to decode value with coder %s", coder), e);
+        }
+      }
+      return values;
+    }
+
+    private static void writeBytes(Output output, byte[] bytes) {
+      output.writeInt(bytes.length, true);
+      output.writeBytes(bytes);
+    }
+
+    private static byte[] readBytes(Input input) {
+      return input.readBytes(input.readInt(true));
+    }
+  }
+}
@@ -23,12 +23,16 @@ import static com.google.common.base.Preconditions.checkArgument;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
 import org.apache.beam.runners.spark.EvaluationResult;
+import org.apache.beam.runners.spark.SparkPipelineOptions;
 import org.apache.beam.runners.spark.aggregators.AccumulatorSingleton;
 import org.apache.beam.runners.spark.coders.CoderHelpers;
 import org.apache.beam.sdk.AggregatorRetrievalException;
@@ -44,13 +48,20 @@ import org.apache.beam.sdk.transforms.windowing.GlobalWindows;
 import org.apache.beam.sdk.transforms.windowing.WindowFn;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.PInput;
 import org.apache.beam.sdk.values.POutput;
 import org.apache.beam.sdk.values.PValue;
+import org.apache.beam.sdk.values.TupleTag;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaRDDLike;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.PairFunction;
+import org.apache.spark.storage.StorageLevel;
 import org.joda.time.Duration;
+import scala.Tuple2;
 
 
 /**
@@ -63,14 +74,22 @@ public class EvaluationContext implements EvaluationResult {
   private final Map<PValue, RDDHolder<?>> pcollections = new LinkedHashMap<>();
   private final Set<RDDHolder<?>> leafRdds = new LinkedHashSet<>();
   private final Set<PValue> multireads = new LinkedHashSet<>();
+  private final Map<PValue, Integer> numConsumers = new HashMap<>();
+  private final Set<RDDHolder<?>> persistedRdds = new LinkedHashSet<>();
+  private final List<JavaPairRDD<TupleTag<?>, ?>> persistedTaggedRdds = new ArrayList<>();
   private final Map<PValue, Object> pobjects = new LinkedHashMap<>();
   private final Map<PValue, Iterable<? extends WindowedValue<?>>> pview = new LinkedHashMap<>();
+  private final StorageLevel storageLevel;
+  private final boolean cacheEncodedBytes;
   protected AppliedPTransform<?, ?, ?> currentTransform;
 
   public EvaluationContext(JavaSparkContext jsc, Pipeline pipeline) {
     this.jsc = jsc;
     this.pipeline = pipeline;
     this.runtime = new SparkRuntimeContext(pipeline, jsc);
+    SparkPipelineOptions options = pipeline.getOptions().as(SparkPipelineOptions.class);
+    this.storageLevel = StorageLevel.fromString(options.getStorageLevel());
+    this.cacheEncodedBytes = options.getCacheEncodedBytes();
   }
 
   /**
@@ -85,15 +104,26 @@ public class EvaluationContext implements EvaluationResult {
     private Iterable<WindowedValue<T>> windowedValues;
     private Coder<T> coder;
     private JavaRDDLike<WindowedValue<T>, ?> rdd;
+    private WindowedValue.WindowedValueCoder<T> windowedValueCoder;
+    private JavaRDDLike<byte[], ?> encodedRdd;
+    private boolean wasRead;
+    private boolean persisted;
 
     RDDHolder(Iterable<T> values, Coder<T> coder) {
       this.windowedValues =
           Iterables.transform(values, WindowingHelpers.<T>windowValueFunction());
       this.coder = coder;
+      this.windowedValueCoder = WindowedValue.getValueOnlyCoder(coder);
     }
 
-    RDDHolder(JavaRDDLike<WindowedValue<T>, ?> rdd) {
+    /**
+     * Holds the given RDD. Its elements can only be persisted as coder-encoded bytes if
+     * the coder of its {@link WindowedValue WindowedValues} is given.
+     */
+    RDDHolder(JavaRDDLike<WindowedValue<T>, ?> rdd,
+        @Nullable WindowedValue.WindowedValueCoder<T> windowedValueCoder) {
       this.rdd = rdd;
+      this.windowedValueCoder = windowedValueCoder;
     }
 
     JavaRDDLike<WindowedValue<T>, ?> getRDD() {
@@ -106,19 +136,50 @@ public class EvaluationContext implements EvaluationResult {
       return rdd;
     }
 
+    /**
+     * Returns the RDD to a transform that reads it. Once it was read, persisting it no longer
+     * switches it to its coder-encoded form.
+     */
+    JavaRDDLike<WindowedValue<T>, ?> read() {
+      wasRead = true;
+      return getRDD();
+    }
+
+    /**
+     * Persists the RDD with the configured {@link StorageLevel}, unless it is already persisted.
+     * If configured, and if it was not read yet, the elements are persisted as coder-encoded
+     * bytes and the RDD is then read through them. RDDs that were already read are persisted as
+     * they are, so that the transforms that read them before use the persisted RDD as well.
+     */
+    void persist() {
+      if (persisted) {
+        return;
+      }
+      JavaRDDLike<WindowedValue<T>, ?> current = getRDD();
+      if (cacheEncodedBytes && !wasRead && windowedValueCoder != null) {
+        encodedRdd = current.map(CoderHelpers.toByteFunction(windowedValueCoder));
+        rdd = encodedRdd.map(CoderHelpers.fromByteFunction(windowedValueCoder));
+      }
+      JavaRDDLike<?, ?> toPersist = encodedRdd != null ? encodedRdd : rdd;
+      if (toPersist.rdd().getStorageLevel().equals(StorageLevel.NONE())) {
+        toPersist.rdd().persist(storageLevel);
+      }
+      persisted = true;
+      persistedRdds.add(this);
+    }
+
+    void unpersist() {
+      if (persisted) {
+        JavaRDDLike<?, ?> toUnpersist = encodedRdd != null ? encodedRdd : rdd;
+        toUnpersist.rdd().unpersist(false);
+        persisted = false;
+      }
+    }
+
     Iterable<WindowedValue<T>> getValues(PCollection<T> pcollection) {
       if (windowedValues == null) {
-        WindowFn<?, ?> windowFn =
-                pcollection.getWindowingStrategy().getWindowFn();
-        Coder<? extends BoundedWindow> windowCoder = windowFn.windowCoder();
-        final WindowedValue.WindowedValueCoder<T> windowedValueCoder;
-            if (windowFn instanceof GlobalWindows) {
-              windowedValueCoder =
-                  WindowedValue.ValueOnlyWindowedValueCoder.of(pcollection.getCoder());
-            } else {
-              windowedValueCoder =
-                  WindowedValue.FullWindowedValueCoder.of(pcollection.getCoder(), windowCoder);
-            }
+        final WindowedValue.WindowedValueCoder<T> windowedValueCoder =
+            getWindowedValueCoder(pcollection);
         JavaRDDLike<byte[], ?> bytesRDD =
             rdd.map(CoderHelpers.toByteFunction(windowedValueCoder));
         List<byte[]> clientBytes = bytesRDD.collect();
@@ -134,6 +195,17 @@ public class EvaluationContext implements EvaluationResult {
     }
   }
 
+  private static <T> WindowedValue.WindowedValueCoder<T> getWindowedValueCoder(
+      PCollection<T> pcollection) {
+    WindowFn<?, ?> windowFn = pcollection.getWindowingStrategy().getWindowFn();
+    if (windowFn instanceof GlobalWindows) {
+      return WindowedValue.ValueOnlyWindowedValueCoder.of(pcollection.getCoder());
+    } else {
+      Coder<? extends BoundedWindow> windowCoder = windowFn.windowCoder();
+      return WindowedValue.FullWindowedValueCoder.of(pcollection.getCoder(), windowCoder);
+    }
+  }
+
   protected JavaSparkContext getSparkContext() {
     return jsc;
   }
@@ -175,6 +247,59 @@ public class EvaluationContext implements EvaluationResult {
     setRDD((PValue) getOutput(transform), rdd);
   }
 
+  /**
+   * Sets the RDD of the output of the given transform, and persists it even if it is read only
+   * once, e.g. so that a source is not read again when Spark evaluates the RDD again.
+   */
+  protected <T> void setPersistedOutputRDD(PTransform<?, ?> transform,
+      JavaRDDLike<WindowedValue<T>, ?> rdd) {
+    PValue pvalue = (PValue) getOutput(transform);
+    setRDD(pvalue, rdd);
+    pcollections.get(pvalue).persist();
+  }
+
+  /**
+   * Sets the RDDs of the outputs of the given multi-output transform from an RDD of all of its
+   * outputs, keyed by their {@link TupleTag TupleTags}. That RDD is persisted, so that the
+   * transform is evaluated only once for all of its outputs. If configured, it is persisted as
+   * coder-encoded bytes.
+   */
+  @SuppressWarnings("unchecked")
+  protected void setOutputRDDs(PTransform<?, PCollectionTuple> transform,
+      JavaPairRDD<TupleTag<?>, WindowedValue<?>> all) {
+    PCollectionTuple pct = getOutput(transform);
+    Map<TupleTag<?>, Coder<WindowedValue<?>>> coders = new HashMap<>();
+    for (Map.Entry<TupleTag<?>, PCollection<?>> e : pct.getAll().entrySet()) {
+      coders.put(e.getKey(), (Coder) getWindowedValueCoder(e.getValue()));
+    }
+    JavaPairRDD<TupleTag<?>, ?> persisted =
+        cacheEncodedBytes ? all.mapToPair(toTaggedByteFunction(coders)) : all;
+    persisted.persist(storageLevel);
+    persistedTaggedRdds.add(persisted);
+
+    for (Map.Entry<TupleTag<?>, PCollection<?>> e : pct.getAll().entrySet()) {
+      JavaRDD<?> values =
+          persisted.filter(new TranslationUtils.TupleTagFilter(e.getKey())).values();
+      // Object is the best we can do since different outputs can have different tags
+      JavaRDD<WindowedValue<Object>> outputValues = cacheEncodedBytes
+          ? ((JavaRDD<byte[]>) values).map(CoderHelpers.fromByteFunction(
+              (Coder<WindowedValue<Object>>) (Coder) coders.get(e.getKey())))
+          : (JavaRDD<WindowedValue<Object>>) values;
+      setRDD(e.getValue(), outputValues);
+    }
+  }
+
+  private static PairFunction<Tuple2<TupleTag<?>, WindowedValue<?>>, TupleTag<?>, byte[]>
+      toTaggedByteFunction(final Map<TupleTag<?>, Coder<WindowedValue<?>>> coders) {
+    return new PairFunction<Tuple2<TupleTag<?>, WindowedValue<?>>, TupleTag<?>, byte[]>() {
+      @Override
+      public Tuple2<TupleTag<?>, byte[]> call(Tuple2<TupleTag<?>, WindowedValue<?>> tagged) {
+        return new Tuple2<TupleTag<?>, byte[]>(tagged._1(),
+            CoderHelpers.toByteArray(tagged._2(), coders.get(tagged._1())));
+      }
+    };
+  }
+
   protected  <T> void setOutputRDDFromValues(PTransform<?, ?> transform, Iterable<T> values,
       Coder<T> coder) {
     pcollections.put((PValue) getOutput(transform), new RDDHolder<>(values, coder));
@@ -191,15 +316,25 @@ public class EvaluationContext implements EvaluationResult {
 
   public JavaRDDLike<?, ?> getRDD(PValue pvalue) {
     RDDHolder<?> rddHolder = pcollections.get(pvalue);
-    JavaRDDLike<?, ?> rdd = rddHolder.getRDD();
     leafRdds.remove(rddHolder);
-    if (multireads.contains(pvalue)) {
-      // Ensure the RDD is marked as cached
-      rdd.rdd().cache();
-    } else {
-      multireads.add(pvalue);
+    Integer consumers = numConsumers.get(pvalue);
+    if (multireads.contains(pvalue) || (consumers != null && consumers > 1)) {
+      // Ensure the RDD is persisted, as it has more than one consumer. This is done before
+      // the first consumer reads it if the consumers were counted up front.
+      rddHolder.persist();
     }
-    return rdd;
+    multireads.add(pvalue);
+    return rddHolder.read();
+  }
+
+  /**
+   * Counts one more transform that will read the given value. Counting the consumers of the
+   * values before evaluating the pipeline lets their RDDs be persisted before they are first
+   * read, e.g. as coder-encoded bytes.
+   */
+  public void addConsumer(PValue pvalue) {
+    Integer consumers = numConsumers.get(pvalue);
+    numConsumers.put(pvalue, consumers == null ? 1 : consumers + 1);
   }
 
   protected <T> void setRDD(PValue pvalue, JavaRDDLike<WindowedValue<T>, ?> rdd) {
@@ -208,7 +343,13 @@ public class EvaluationContext implements EvaluationResult {
     } catch (IllegalStateException e) {
       // name not set, ignore
     }
-    RDDHolder<T> rddHolder = new RDDHolder<>(rdd);
+    WindowedValue.WindowedValueCoder<T> windowedValueCoder = null;
+    if (pvalue instanceof PCollection) {
+      @SuppressWarnings("unchecked")
+      PCollection<T> pcollection = (PCollection<T>) pvalue;
+      windowedValueCoder = getWindowedValueCoder(pcollection);
+    }
+    RDDHolder<T> rddHolder = new RDDHolder<>(rdd, windowedValueCoder);
     pcollections.put(pvalue, rddHolder);
     leafRdds.add(rddHolder);
   }
@@ -229,10 +370,29 @@ public class EvaluationContext implements EvaluationResult {
    */
   public void computeOutputs() {
     for (RDDHolder<?> rddHolder : leafRdds) {
-      JavaRDDLike<?, ?> rdd = rddHolder.getRDD();
-      rdd.rdd().cache(); // cache so that any subsequent get() is cheap
-      rdd.count(); // force the RDD to be computed
+      rddHolder.persist(); // persist so that any subsequent get() is cheap
+      rddHolder.getRDD().count(); // force the RDD to be computed
+    }
+  }
+
+  /**
+   * Unpersists the RDDs that were persisted for their consumers, such as the RDDs that are read
+   * more than once, the outputs of sources and the RDDs of all outputs of multi-output transforms.
+   * The leaves stay persisted, as their results can still be retrieved. Should only be called
+   * once all outputs were computed, since all consumers are evaluated lazily, so the RDDs stay
+   * persisted until then.
+   */
+  public void unpersistIntermediateRDDs() {
+    for (RDDHolder<?> rddHolder : persistedRdds) {
+      if (!leafRdds.contains(rddHolder)) {
+        rddHolder.unpersist();
+      }
+    }
+    persistedRdds.clear();
+    for (JavaPairRDD<TupleTag<?>, ?> rdd : persistedTaggedRdds) {
+      rdd.unpersist(false);
     }
+    persistedTaggedRdds.clear();
   }
 
   @Override
@@ -32,6 +32,7 @@ import org.apache.beam.runners.spark.util.ByteArray;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.IterableCoder;
 import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.VoidCoder;
 import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.OldDoFn;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
@@ -140,6 +141,42 @@ public class GroupCombineFunctions {
     return globally.extractOutput(CoderHelpers.fromByteArray(acc, aCoder));
   }
 
+  /**
+   * Apply a composite {@link org.apache.beam.sdk.transforms.Combine.Globally} transformation,
+   * combining the elements of each window separately.
+   *
+   * <p>Elements are combined within each partition before the shuffle, so that only partial
+   * accumulators are transferred over the network. The windows must not merge, as each window
+   * of the input is combined as is.
+   */
+  public static <InputT, AccumT, OutputT> JavaRDD<WindowedValue<OutputT>>
+  combineGloballyPerWindow(JavaRDD<WindowedValue<InputT>> rdd,
+                           Combine.CombineFn<InputT, AccumT, OutputT> globally,
+                           Coder<InputT> iCoder,
+                           Coder<AccumT> aCoder,
+                           Coder<? extends BoundedWindow> windowCoder) {
+    // key all elements with the same (null) key, so that the windowed key is the window itself.
+    JavaRDD<WindowedValue<KV<Void, InputT>>> keyedRdd = rdd.map(
+        new Function<WindowedValue<InputT>, WindowedValue<KV<Void, InputT>>>() {
+          @Override
+          public WindowedValue<KV<Void, InputT>> call(WindowedValue<InputT> wvi) {
+            return wvi.withValue(KV.of((Void) null, wvi.getValue()));
+          }
+        });
+    Combine.KeyedCombineFn<Void, InputT, AccumT, OutputT> keyed = globally.asKeyedFn();
+    JavaRDD<WindowedValue<KV<Void, OutputT>>> combined = combinePerKey(keyedRdd, keyed,
+        WindowedValue.FullWindowedValueCoder.of(VoidCoder.of(), windowCoder),
+        WindowedValue.FullWindowedValueCoder.of(KvCoder.of(VoidCoder.of(), iCoder), windowCoder),
+        WindowedValue.FullWindowedValueCoder.of(KvCoder.of(VoidCoder.of(), aCoder), windowCoder));
+    return combined.map(
+        new Function<WindowedValue<KV<Void, OutputT>>, WindowedValue<OutputT>>() {
+          @Override
+          public WindowedValue<OutputT> call(WindowedValue<KV<Void, OutputT>> wkvo) {
+            return wkvo.withValue(wkvo.getValue().getValue());
+          }
+        });
+  }
+
   /**
    * Apply a composite {@link org.apache.beam.sdk.transforms.Combine.PerKey} transformation.
    */
@@ -169,7 +206,11 @@ public class GroupCombineFunctions {
                   for (BoundedWindow boundedWindow: kv.getWindows()) {
                     WindowedValue<K> wk = WindowedValue.of(kv.getValue().getKey(),
                         boundedWindow.maxTimestamp(), boundedWindow, kv.getPane());
-                    tuple2s.add(new Tuple2<>(wk, kv));
+                    // the accumulators are created from the values, so each value is kept in
+                    // the window of its key only, to output each result in its own window.
+                    WindowedValue<KV<K, InputT>> wkvi = WindowedValue.of(kv.getValue(),
+                        kv.getTimestamp(), boundedWindow, kv.getPane());
+                    tuple2s.add(new Tuple2<>(wk, wkvi));
                   }
                 return tuple2s;
               }
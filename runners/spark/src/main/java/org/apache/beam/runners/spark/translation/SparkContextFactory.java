@@ -19,6 +19,7 @@
 package org.apache.beam.runners.spark.translation;
 
 import org.apache.beam.runners.spark.SparkPipelineOptions;
+import org.apache.beam.runners.spark.coders.BeamSparkRunnerRegistrator;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.serializer.KryoSerializer;
@@ -85,6 +86,9 @@ public final class SparkContextFactory {
       }
       conf.setAppName(options.getAppName());
       conf.set("spark.serializer", KryoSerializer.class.getCanonicalName());
+      if (!conf.contains("spark.kryo.registrator")) {
+        conf.set("spark.kryo.registrator", BeamSparkRunnerRegistrator.class.getName());
+      }
       return new JavaSparkContext(conf);
     }
   }
@@ -22,6 +22,7 @@ import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import org.apache.beam.runners.spark.aggregators.NamedAggregators;
@@ -56,6 +57,8 @@ public abstract class SparkProcessContext<InputT, OutputT, ValueT>
   private final OldDoFn<InputT, OutputT> fn;
   private final SparkRuntimeContext mRuntimeContext;
   private final Map<TupleTag<?>, BroadcastHelper<?>> mSideInputs;
+  // side inputs are materialized once per partition, rather than on every access.
+  private final Map<TupleTag<?>, Object> mMaterializedSideInputs = new HashMap<>();
 
   protected WindowedValue<InputT> windowedValue;
 
@@ -79,11 +82,17 @@ public abstract class SparkProcessContext<InputT, OutputT, ValueT>
 
   @Override
   public <T> T sideInput(PCollectionView<T> view) {
+    TupleTag<?> tag = view.getTagInternal();
+    if (!mMaterializedSideInputs.containsKey(tag)) {
+      @SuppressWarnings("unchecked")
+      BroadcastHelper<Iterable<WindowedValue<?>>> broadcastHelper =
+          (BroadcastHelper<Iterable<WindowedValue<?>>>) mSideInputs.get(tag);
+      Iterable<WindowedValue<?>> contents = broadcastHelper.getValue();
+      mMaterializedSideInputs.put(tag, view.getViewFn().apply(contents));
+    }
     @SuppressWarnings("unchecked")
-    BroadcastHelper<Iterable<WindowedValue<?>>> broadcastHelper =
-        (BroadcastHelper<Iterable<WindowedValue<?>>>) mSideInputs.get(view.getTagInternal());
-    Iterable<WindowedValue<?>> contents = broadcastHelper.getValue();
-    return view.getViewFn().apply(contents);
+    T materialized = (T) mMaterializedSideInputs.get(tag);
+    return materialized;
   }
 
   @Override
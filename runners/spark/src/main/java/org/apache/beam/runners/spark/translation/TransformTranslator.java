@@ -62,9 +62,7 @@ import org.apache.beam.sdk.transforms.windowing.Window;
 import org.apache.beam.sdk.transforms.windowing.WindowFn;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.KV;
-import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionList;
-import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.NullWritable;
@@ -272,19 +270,8 @@ public final class TransformTranslator {
             .mapPartitionsToPair(
                 new MultiDoFnFunction<>(accum, transform.getFn(), context.getRuntimeContext(),
                 transform.getMainOutputTag(), TranslationUtils.getSideInputs(
-                    transform.getSideInputs(), context)))
-                        .cache();
-        PCollectionTuple pct = context.getOutput(transform);
-        for (Map.Entry<TupleTag<?>, PCollection<?>> e : pct.getAll().entrySet()) {
-          @SuppressWarnings("unchecked")
-          JavaPairRDD<TupleTag<?>, WindowedValue<?>> filtered =
-              all.filter(new TranslationUtils.TupleTagFilter(e.getKey()));
-          @SuppressWarnings("unchecked")
-          // Object is the best we can do since different outputs can have different tags
-          JavaRDD<WindowedValue<Object>> values =
-              (JavaRDD<WindowedValue<Object>>) (JavaRDD<?>) filtered.values();
-          context.setRDD(e.getValue(), values);
-        }
+                    transform.getSideInputs(), context)));
+        context.setOutputRDDs(transform, all);
       }
     };
   }
@@ -307,9 +294,11 @@ public final class TransformTranslator {
       @Override
       public void evaluate(TextIO.Write.Bound<T> transform, EvaluationContext context) {
         @SuppressWarnings("unchecked")
-        JavaPairRDD<T, Void> last =
+        JavaRDD<T> values =
             ((JavaRDDLike<WindowedValue<T>, ?>) context.getInputRDD(transform))
-            .map(WindowingHelpers.<T>unwindowFunction())
+            .map(WindowingHelpers.<T>unwindowFunction());
+        JavaPairRDD<T, Void> last =
+            shard(values, transform.getNumShards(), context.getInput(transform).getCoder())
             .mapToPair(new PairFunction<T, T,
                     Void>() {
               @Override
@@ -363,9 +352,11 @@ public final class TransformTranslator {
         }
         AvroJob.setOutputKeySchema(job, transform.getSchema());
         @SuppressWarnings("unchecked")
-        JavaPairRDD<AvroKey<T>, NullWritable> last =
+        JavaRDD<T> values =
             ((JavaRDDLike<WindowedValue<T>, ?>) context.getInputRDD(transform))
-            .map(WindowingHelpers.<T>unwindowFunction())
+            .map(WindowingHelpers.<T>unwindowFunction());
+        JavaPairRDD<AvroKey<T>, NullWritable> last =
+            shard(values, transform.getNumShards(), context.getInput(transform).getCoder())
             .mapToPair(new PairFunction<T, AvroKey<T>, NullWritable>() {
               @Override
               public Tuple2<AvroKey<T>, NullWritable> call(T t) throws Exception {
@@ -391,8 +382,8 @@ public final class TransformTranslator {
         // create an RDD from a BoundedSource.
         JavaRDD<WindowedValue<T>> input = new SourceRDD.Bounded<>(
             jsc.sc(), transform.getSource(), runtimeContext).toJavaRDD();
-        // cache to avoid re-evaluation of the source by Spark's lazy DAG evaluation.
-        context.setOutputRDD(transform, input.cache());
+        // persist to avoid re-evaluation of the source by Spark's lazy DAG evaluation.
+        context.setPersistedOutputRDD(transform, input);
       }
     };
   }
@@ -425,9 +416,11 @@ public final class TransformTranslator {
       @Override
       public void evaluate(HadoopIO.Write.Bound<K, V> transform, EvaluationContext context) {
         @SuppressWarnings("unchecked")
-        JavaPairRDD<K, V> last = ((JavaRDDLike<WindowedValue<KV<K, V>>, ?>) context
+        JavaRDD<KV<K, V>> values = ((JavaRDDLike<WindowedValue<KV<K, V>>, ?>) context
             .getInputRDD(transform))
-            .map(WindowingHelpers.<KV<K, V>>unwindowFunction())
+            .map(WindowingHelpers.<KV<K, V>>unwindowFunction());
+        JavaPairRDD<K, V> last =
+            shard(values, transform.getNumShards(), context.getInput(transform).getCoder())
             .mapToPair(new PairFunction<KV<K, V>, K, V>() {
               @Override
               public Tuple2<K, V> call(KV<K, V> t) throws Exception {
@@ -479,17 +472,27 @@ public final class TransformTranslator {
     }
   }
 
+  /**
+   * Repartitions the given RDD into {@code numShards} partitions if the number of shards was set
+   * explicitly. Elements are shuffled as byte arrays encoded with the given {@link Coder}, rather
+   * than using Spark's serializer.
+   */
+  private static <T> JavaRDD<T> shard(JavaRDD<T> rdd, int numShards, Coder<T> coder) {
+    if (numShards == 0) {
+      return rdd;
+    }
+    return rdd.map(CoderHelpers.toByteFunction(coder))
+        .repartition(numShards)
+        .map(CoderHelpers.fromByteFunction(coder));
+  }
+
   private static <K, V> void writeHadoopFile(JavaPairRDD<K, V> rdd, Configuration conf,
       ShardTemplateInformation shardTemplateInfo, Class<?> keyClass, Class<?> valueClass,
       Class<? extends FileOutputFormat> formatClass) {
-    int numShards = shardTemplateInfo.getNumShards();
     String shardTemplate = shardTemplateInfo.getShardTemplate();
     String filenamePrefix = shardTemplateInfo.getFilenamePrefix();
     String filenameSuffix = shardTemplateInfo.getFilenameSuffix();
-    if (numShards != 0) {
-      // number of shards was set explicitly, so repartition
-      rdd = rdd.repartition(numShards);
-    }
+    // the RDD was already repartitioned if the number of shards was set explicitly.
     int actualNumShards = rdd.partitions().size();
     String template = replaceShardCount(shardTemplate, actualNumShards);
     String outputDir = getOutputDirectory(filenamePrefix, template);
@@ -56,6 +56,7 @@ import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindows;
 import org.apache.beam.sdk.transforms.windowing.SlidingWindows;
 import org.apache.beam.sdk.transforms.windowing.Window;
 import org.apache.beam.sdk.transforms.windowing.WindowFn;
@@ -328,12 +329,20 @@ public final class StreamingTransformTranslator {
         } catch (CannotProvideCoderException e) {
           throw new IllegalStateException("Could not determine coder for accumulator", e);
         }
+        final WindowFn<?, ?> windowFn =
+            sec.getInput(transform).getWindowingStrategy().getWindowFn();
+        final Coder<? extends BoundedWindow> windowCoder = windowFn.windowCoder();
 
         JavaDStream<WindowedValue<OutputT>> outStream = dStream.transform(
             new Function<JavaRDD<WindowedValue<InputT>>, JavaRDD<WindowedValue<OutputT>>>() {
           @Override
           public JavaRDD<WindowedValue<OutputT>> call(JavaRDD<WindowedValue<InputT>> rdd)
               throws Exception {
+            if (windowFn.isNonMerging() && !(windowFn instanceof GlobalWindows)) {
+              // combine each window separately, shuffling only partial accumulators.
+              return GroupCombineFunctions.combineGloballyPerWindow(
+                  rdd, globally, iCoder, aCoder, windowCoder);
+            }
             JavaRDD<byte[]> outRdd = new JavaSparkContext(rdd.context()).parallelize(
             // don't use Guava's ImmutableList.of as output may be null
             CoderHelpers.toByteArrays(Collections.singleton(
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.coders;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.runners.core.SpillingStateInternals;
+import org.apache.beam.runners.spark.util.ByteArray;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.util.state.BagState;
+import org.apache.beam.sdk.util.state.InMemoryStateInternals;
+import org.apache.beam.sdk.util.state.StateNamespaces;
+import org.apache.beam.sdk.util.state.StateTags;
+import org.apache.beam.sdk.values.KV;
+import org.apache.spark.SparkConf;
+import org.apache.spark.serializer.KryoSerializer;
+import org.apache.spark.serializer.SerializerInstance;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import scala.reflect.ClassTag;
+import scala.reflect.ClassTag$;
+
+/**
+ * Tests for BeamSparkRunnerRegistrator.
+ */
+public class BeamSparkRunnerRegistratorTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static SerializerInstance newSerializer() {
+    SparkConf conf = new SparkConf()
+        .set("spark.kryo.registrator", BeamSparkRunnerRegistrator.class.getName())
+        .set("spark.kryo.registrationRequired", "true");
+    return new KryoSerializer(conf).newInstance();
+  }
+
+  @Test
+  public void testByteArrayRoundTrip() throws Exception {
+    SerializerInstance serializer = newSerializer();
+    ClassTag<ByteArray> classTag = ClassTag$.MODULE$.apply(ByteArray.class);
+
+    ByteArray value = new ByteArray(new byte[] {1, 2, 3});
+    ByteBuffer bytes = serializer.serialize(value, classTag);
+
+    assertEquals(value, serializer.deserialize(bytes, classTag));
+  }
+
+  @Test
+  public void testSpilledContentsRoundTrip() throws Exception {
+    SerializerInstance serializer = newSerializer();
+    ClassTag<Iterable<Integer>> classTag = ClassTag$.MODULE$.apply(Iterable.class);
+
+    // Spill after every other value, so the contents are read from files
+    BagState<Integer> bag =
+        SpillingStateInternals.wrap(InMemoryStateInternals.forKey("key"), 1L, tmp.getRoot())
+            .state(StateNamespaces.global(), StateTags.bag("bag", VarIntCoder.of()));
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      bag.add(i);
+      expected.add(i);
+    }
+    ByteBuffer bytes = serializer.serialize(bag.read(), classTag);
+
+    Iterable<Integer> deserialized = serializer.deserialize(bytes, classTag);
+    assertEquals(expected, ImmutableList.copyOf(deserialized));
+  }
+
+  @Test
+  public void testSpilledContentsAreEncodedWithTheirCoder() throws Exception {
+    SerializerInstance serializer = newSerializer();
+    ClassTag<Iterable<KV<String, Integer>>> classTag = ClassTag$.MODULE$.apply(Iterable.class);
+
+    // KV is not registered with Kryo, so this fails unless the values are encoded with the coder
+    BagState<KV<String, Integer>> bag =
+        SpillingStateInternals.wrap(InMemoryStateInternals.forKey("key"), 1L, tmp.getRoot())
+            .state(
+                StateNamespaces.global(),
+                StateTags.bag("bag", KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of())));
+    List<KV<String, Integer>> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      bag.add(KV.of("key" + i, i));
+      expected.add(KV.of("key" + i, i));
+    }
+    ByteBuffer bytes = serializer.serialize(bag.read(), classTag);
+
+    Iterable<KV<String, Integer>> deserialized = serializer.deserialize(bytes, classTag);
+    assertEquals(expected, ImmutableList.copyOf(deserialized));
+  }
+}
@@ -35,8 +35,13 @@ import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.SlidingWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -63,6 +68,24 @@ public class CombinePerKeyTest {
         Assert.assertEquals(Long.valueOf(2L), actualCnts.get("the"));
     }
 
+    @Test
+    public void testSlidingWindows() {
+        PipelineOptions options = PipelineOptionsFactory.create();
+        options.setRunner(SparkRunner.class);
+        Pipeline p = Pipeline.create(options);
+        PCollection<String> inputWords = p
+            .apply(Create.timestamped(TimestampedValue.of("the", new Instant(0L)))
+                .withCoder(StringUtf8Coder.of()))
+            .apply(Window.<String>into(SlidingWindows.of(Duration.standardMinutes(2))
+                .every(Duration.standardMinutes(1))));
+        PCollection<KV<String, Long>> cnts = inputWords.apply(new SumPerKey<String>());
+        EvaluationResult res = (EvaluationResult) p.run();
+        // one result in each of the two windows holding the word, not one per pair of windows.
+        List<KV<String, Long>> actualCnts = ImmutableList.copyOf(res.get(cnts));
+        Assert.assertEquals(
+            ImmutableList.of(KV.of("the", 1L), KV.of("the", 1L)), actualCnts);
+    }
+
     private static class SumPerKey<T> extends PTransform<PCollection<T>, PCollection<KV<T, Long>>> {
       @Override
       public PCollection<KV<T, Long>> apply(PCollection<T> pcol) {
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.translation;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apache.beam.runners.spark.SparkPipelineOptions;
+import org.apache.beam.runners.spark.SparkRunner;
+import org.apache.beam.runners.spark.examples.WordCount;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.CountingInput;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionTuple;
+import org.apache.beam.sdk.values.TupleTag;
+import org.apache.beam.sdk.values.TupleTagList;
+import org.junit.Test;
+
+/**
+ * Test persisting RDDs that are read more than once with a configured storage level.
+ */
+public class StorageLevelTest {
+  private static final List<String> WORDS =
+      Arrays.asList("hi", "there", "hi", "hi", "sue", "bob", "hi", "sue", "bob", "hi");
+
+  @Test
+  public void testSerializedStorageLevel() throws Exception {
+    runMultipleConsumers("MEMORY_AND_DISK_SER", false);
+  }
+
+  @Test
+  public void testCacheEncodedBytes() throws Exception {
+    runMultipleConsumers("MEMORY_AND_DISK", true);
+  }
+
+  @Test
+  public void testCacheEncodedBytesOfReadAndMultipleOutputs() throws Exception {
+    SparkPipelineOptions options = PipelineOptionsFactory.as(SparkPipelineOptions.class);
+    options.setRunner(SparkRunner.class);
+    options.setStorageLevel("MEMORY_AND_DISK");
+    options.setCacheEncodedBytes(true);
+    Pipeline p = Pipeline.create(options);
+
+    // the bounded read and all outputs of the multi-output ParDo are persisted.
+    PCollectionTuple numbers = p
+        .apply(CountingInput.upTo(10))
+        .apply(ParDo.withOutputTags(EVEN, TupleTagList.of(ODD)).of(new SplitEvenOddFn()));
+
+    PAssert.that(numbers.get(EVEN)).containsInAnyOrder(0L, 2L, 4L, 6L, 8L);
+    PAssert.that(numbers.get(ODD)).containsInAnyOrder(1L, 3L, 5L, 7L, 9L);
+
+    p.run();
+  }
+
+  private static final TupleTag<Long> EVEN = new TupleTag<Long>() {};
+  private static final TupleTag<Long> ODD = new TupleTag<Long>() {};
+
+  private static class SplitEvenOddFn extends DoFn<Long, Long> {
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      if (c.element() % 2 == 0) {
+        c.output(c.element());
+      } else {
+        c.sideOutput(ODD, c.element());
+      }
+    }
+  }
+
+  private void runMultipleConsumers(String storageLevel, boolean cacheEncodedBytes) {
+    SparkPipelineOptions options = PipelineOptionsFactory.as(SparkPipelineOptions.class);
+    options.setRunner(SparkRunner.class);
+    options.setStorageLevel(storageLevel);
+    options.setCacheEncodedBytes(cacheEncodedBytes);
+    Pipeline p = Pipeline.create(options);
+
+    // the words are read by two consumers, so their RDD is persisted.
+    PCollection<String> words = p.apply(Create.of(WORDS).withCoder(StringUtf8Coder.of()));
+    PCollection<String> counts = words
+        .apply(Count.<String>perElement())
+        .apply(MapElements.via(new WordCount.FormatAsTextFn()));
+    PCollection<Long> total = words.apply(Count.<String>globally());
+
+    PAssert.that(counts).containsInAnyOrder("hi: 5", "there: 1", "sue: 2", "bob: 2");
+    PAssert.thatSingleton(total).isEqualTo(10L);
+
+    p.run();
+  }
+}
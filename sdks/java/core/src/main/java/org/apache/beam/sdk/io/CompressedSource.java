@@ -22,17 +22,25 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Ints;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import org.apache.beam.sdk.annotations.Experimental;
 import org.apache.beam.sdk.coders.Coder;
@@ -54,10 +62,15 @@ import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
  *     .withDecompression(CompressedSource.CompressionMode.GZIP)));
  * } </pre>
  *
- * <p>Supported compression algorithms are {@link CompressionMode#GZIP} and
- * {@link CompressionMode#BZIP2}. User-defined compression types are supported by implementing
+ * <p>Supported compression algorithms are {@link CompressionMode#GZIP},
+ * {@link CompressionMode#BZIP2}, {@link CompressionMode#SPLITTABLE_BZIP2} and
+ * {@link CompressionMode#ZIP}. User-defined compression types are supported by implementing
  * {@link DecompressingChannelFactory}.
  *
+ * <p>Compressed files are read as a single bundle, except with
+ * {@link CompressionMode#SPLITTABLE_BZIP2}, which splits bzip2 files on their block boundaries
+ * when the delegate source is itself splittable.
+ *
  * <p>By default, the compression algorithm is selected from those supported in
  * {@link CompressionMode} based on the file name provided to the source, namely
  * {@code ".bz2"} indicates {@link CompressionMode#BZIP2} and {@code ".gz"} indicates
@@ -152,6 +165,30 @@ public class CompressedSource<T> extends FileBasedSource<T> {
       }
     },
 
+    /**
+     * Reads a byte channel assuming it is compressed with bzip2, possibly as several concatenated
+     * streams, and allows the file to be split on its block boundaries.
+     *
+     * <p>Each bzip2 block is located by scanning for its bit-aligned magic number and is
+     * decompressed on its own, so a file can be read in parallel in ranges of blocks, and reads
+     * can be dynamically split. This is only used when the delegate source is splittable, as the
+     * records of a range are found by starting the delegate reader inside the decompressed data
+     * of the first block of the range.
+     */
+    SPLITTABLE_BZIP2 {
+      @Override
+      public boolean matches(String fileName) {
+        return fileName.toLowerCase().endsWith(".bz2");
+      }
+
+      @Override
+      public ReadableByteChannel createDecompressingChannel(ReadableByteChannel channel)
+          throws IOException {
+        return Channels.newChannel(
+            new BZip2CompressorInputStream(Channels.newInputStream(channel), true));
+      }
+    },
+
     /**
      * Reads a byte channel assuming it is compressed with zip.
      * If the zip file contains multiple entries, files in the zip are concatenated all together.
@@ -317,7 +354,7 @@ public class CompressedSource<T> extends FileBasedSource<T> {
     this.sourceDelegate = sourceDelegate;
     this.channelFactory = channelFactory;
     checkArgument(
-        isSplittable() || startOffset == 0,
+        isUncompressed() || channelFactory == CompressionMode.SPLITTABLE_BZIP2 || startOffset == 0,
         "CompressedSources must start reading at offset 0. Requested offset: " + startOffset);
   }
 
@@ -345,10 +382,22 @@ public class CompressedSource<T> extends FileBasedSource<T> {
   /**
    * Determines whether a single file represented by this source is splittable. Returns true
    * if we are using the default decompression factory and and it determines
-   * from the requested file name that the file is not compressed.
+   * from the requested file name that the file is not compressed, or if the file is read with
+   * {@link CompressionMode#SPLITTABLE_BZIP2} and the delegate source is splittable.
    */
   @Override
-  protected final boolean isSplittable() {
+  protected final boolean isSplittable() throws Exception {
+    if (isUncompressed()) {
+      return true;
+    }
+    return channelFactory == CompressionMode.SPLITTABLE_BZIP2 && sourceDelegate.isSplittable();
+  }
+
+  /**
+   * Returns true if we are using the default decompression factory and it determines from the
+   * requested file name that the file is not compressed.
+   */
+  private boolean isUncompressed() {
     if (channelFactory instanceof FileNameBasedDecompressingChannelFactory) {
       FileNameBasedDecompressingChannelFactory fileNameBasedChannelFactory =
           (FileNameBasedDecompressingChannelFactory) channelFactory;
@@ -363,16 +412,16 @@ public class CompressedSource<T> extends FileBasedSource<T> {
    * <p>Uses the delegate source to create a single file reader for the delegate source.
    * Utilizes the default decompression channel factory to not wrap the source reader
    * if the file name does not represent a compressed file allowing for splitting of
-   * the source.
+   * the source. Files read with {@link CompressionMode#SPLITTABLE_BZIP2} are read block by
+   * block, so that the reader can start in the middle of the file.
    */
   @Override
   protected final FileBasedReader<T> createSingleFileReader(PipelineOptions options) {
-    if (channelFactory instanceof FileNameBasedDecompressingChannelFactory) {
-      FileNameBasedDecompressingChannelFactory fileNameBasedChannelFactory =
-          (FileNameBasedDecompressingChannelFactory) channelFactory;
-      if (!fileNameBasedChannelFactory.isCompressed(getFileOrPatternSpec())) {
-        return sourceDelegate.createSingleFileReader(options);
-      }
+    if (isUncompressed()) {
+      return sourceDelegate.createSingleFileReader(options);
+    }
+    if (channelFactory == CompressionMode.SPLITTABLE_BZIP2) {
+      return new SplittableBZip2Reader<T>(this, options);
     }
     return new CompressedReader<T>(
         this, sourceDelegate.createSingleFileReader(options));
@@ -571,4 +620,452 @@ public class CompressedSource<T> extends FileBasedSource<T> {
       }
     }
   }
+
+  /**
+   * Reader for a {@link CompressedSource} using {@link CompressionMode#SPLITTABLE_BZIP2}, which
+   * can read any offset range of the file.
+   *
+   * <p>Each bzip2 block is a split point, at the offset of the byte holding its first bit. A
+   * record belongs to the block holding its first byte, except that the first bytes of a block,
+   * as many as the look-back of the delegate (see {@code FileBasedSource#getSubrangeLookBack()}),
+   * belong to the previous block. Unless the range begins with the first block of the file, the
+   * delegate reader is started at the offset of the decompressed data of the first block of the
+   * range that equals its look-back, so that it reads the block from its start to find its first
+   * record. The reader of the previous range in turn returns the records starting in the first
+   * bytes of that block.
+   *
+   * @param <T> The type of records read from the source.
+   */
+  public static class SplittableBZip2Reader<T> extends FileBasedReader<T> {
+
+    private final CompressedSource<T> source;
+    private final PipelineOptions options;
+    private final Object progressLock = new Object();
+    @GuardedBy("progressLock")
+    private long currentOffset = -1;
+    @GuardedBy("progressLock")
+    private boolean atSplitPoint;
+    private BZip2BlockChannel channel;
+    private FileBasedReader<T> readerDelegate;
+
+    /**
+     * Create a {@code SplittableBZip2Reader} from a {@code CompressedSource}.
+     */
+    public SplittableBZip2Reader(CompressedSource<T> source, PipelineOptions options) {
+      super(source);
+      this.source = source;
+      this.options = options;
+    }
+
+    /**
+     * Gets the current record from the delegate reader.
+     */
+    @Override
+    public T getCurrent() throws NoSuchElementException {
+      return readerDelegate.getCurrent();
+    }
+
+    /**
+     * Starts the delegate reader on the decompressed data of the blocks following the start
+     * offset of the source.
+     */
+    @Override
+    protected final void startReading(ReadableByteChannel channel) throws IOException {
+      long lookBack = source.sourceDelegate.getSubrangeLookBack();
+      this.channel = new BZip2BlockChannel(
+          new BZip2BlockScanner(
+              Channels.newInputStream(channel), getCurrentSource().getStartOffset()),
+          Ints.checkedCast(lookBack));
+      if (!this.channel.nextBlock()) {
+        // No block starts in the rest of the file.
+        return;
+      }
+      long delegateStartOffset = this.channel.isAtFirstBlockOfFile() ? 0 : lookBack;
+      this.channel.position(delegateStartOffset);
+      readerDelegate = source.sourceDelegate
+          .createForSubrangeOfFile(
+              getCurrentSource().getFileOrPatternSpec(), delegateStartOffset, Long.MAX_VALUE)
+          .createSingleFileReader(options);
+      readerDelegate.startReading(this.channel);
+    }
+
+    /**
+     * Reads the next record via the delegate reader, and locates the block it belongs to.
+     */
+    @Override
+    protected final boolean readNextRecord() throws IOException {
+      if (readerDelegate == null || !readerDelegate.readNextRecord()) {
+        return false;
+      }
+      long offset = channel.getOffsetOfBlockHolding(readerDelegate.getCurrentOffset());
+      synchronized (progressLock) {
+        atSplitPoint = offset != currentOffset;
+        currentOffset = offset;
+      }
+      return true;
+    }
+
+    @Override
+    protected final boolean isAtSplitPoint() {
+      synchronized (progressLock) {
+        return atSplitPoint;
+      }
+    }
+
+    @Override
+    protected final long getCurrentOffset() throws NoSuchElementException {
+      synchronized (progressLock) {
+        return currentOffset;
+      }
+    }
+  }
+
+  /**
+   * A channel over the decompressed data of the bzip2 blocks returned by a
+   * {@link BZip2BlockScanner}, whose positions are counted from the start of the first block.
+   *
+   * <p>It records where the data of each block starts, and only seeks forward, or back by up to
+   * the look-back of the delegate reader, as done by delegate readers started at that offset. Its
+   * {@link #size()} is unknown and throws an {@link IOException}.
+   */
+  private static class BZip2BlockChannel implements SeekableByteChannel {
+    private final BZip2BlockScanner scanner;
+    private final int lookBack;
+    /** Decompressed positions at which the blocks read so far start. */
+    private final List<Long> blockPositions = new ArrayList<>();
+    /** Offsets in the compressed file of the blocks read so far. */
+    private final List<Long> blockOffsets = new ArrayList<>();
+    private int blockHoldingLastRecord;
+    private InputStream block;
+    private long position;
+    /** The last bytes read from the blocks, up to {@link #lookBack} of them. */
+    private final byte[] recentBytes;
+    private int recentLength;
+    /** The number of {@link #recentBytes} to return again after seeking back. */
+    private int unreadLength;
+    private boolean open = true;
+
+    BZip2BlockChannel(BZip2BlockScanner scanner, int lookBack) {
+      this.scanner = scanner;
+      this.lookBack = lookBack;
+      this.recentBytes = new byte[lookBack];
+    }
+
+    /**
+     * Moves to the next block, returning false if there is none.
+     */
+    boolean nextBlock() throws IOException {
+      if (block != null) {
+        block.close();
+        block = null;
+      }
+      if (!scanner.nextBlock()) {
+        return false;
+      }
+      blockPositions.add(position);
+      blockOffsets.add(scanner.getBlockOffset());
+      block = scanner.openBlock();
+      return true;
+    }
+
+    boolean isAtFirstBlockOfFile() {
+      return scanner.isAtFirstBlockOfFile();
+    }
+
+    /**
+     * Returns the offset in the compressed file of the block holding the given decompressed
+     * position, where the first bytes of a block, as many as the look-back, belong to the previous
+     * one, unless it is the first block read. Positions must be requested in increasing order.
+     */
+    long getOffsetOfBlockHolding(long decompressedPosition) {
+      while (blockHoldingLastRecord + 1 < blockPositions.size()
+          && blockPositions.get(blockHoldingLastRecord + 1) + lookBack <= decompressedPosition) {
+        blockHoldingLastRecord++;
+      }
+      return blockOffsets.get(blockHoldingLastRecord);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      if (!dst.hasRemaining()) {
+        return 0;
+      }
+      if (dst.hasArray()) {
+        int bytes = read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+        if (bytes > 0) {
+          dst.position(dst.position() + bytes);
+        }
+        return bytes;
+      }
+      byte[] buffer = new byte[dst.remaining()];
+      int bytes = read(buffer, 0, buffer.length);
+      if (bytes > 0) {
+        dst.put(buffer, 0, bytes);
+      }
+      return bytes;
+    }
+
+    private int read(byte[] buffer, int offset, int length) throws IOException {
+      if (unreadLength > 0) {
+        int count = Math.min(unreadLength, length);
+        System.arraycopy(recentBytes, recentLength - unreadLength, buffer, offset, count);
+        unreadLength -= count;
+        position += count;
+        return count;
+      }
+      // Reads from the next blocks until some bytes are returned.
+      int count = 0;
+      while (count < length && block != null) {
+        int bytes = block.read(buffer, offset + count, length - count);
+        if (bytes == -1) {
+          nextBlock();
+        } else if (bytes > 0) {
+          count += bytes;
+          break;
+        }
+      }
+      if (count == 0) {
+        return -1;
+      }
+      position += count;
+      rememberRecentBytes(buffer, offset, count);
+      return count;
+    }
+
+    private void rememberRecentBytes(byte[] buffer, int offset, int length) {
+      if (length >= lookBack) {
+        System.arraycopy(buffer, offset + length - lookBack, recentBytes, 0, lookBack);
+        recentLength = lookBack;
+      } else {
+        int kept = Math.min(recentLength, lookBack - length);
+        System.arraycopy(recentBytes, recentLength - kept, recentBytes, 0, kept);
+        System.arraycopy(buffer, offset, recentBytes, kept, length);
+        recentLength = kept + length;
+      }
+    }
+
+    @Override
+    public long position() {
+      return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+      if (newPosition < position && position - newPosition <= recentLength - unreadLength) {
+        unreadLength += (int) (position - newPosition);
+        position = newPosition;
+        return this;
+      }
+      checkArgument(newPosition >= position,
+          "Cannot seek back to %s from %s in a bzip2 block", newPosition, position);
+      byte[] skipped = new byte[8192];
+      while (position < newPosition) {
+        if (read(skipped, 0, (int) Math.min(skipped.length, newPosition - position)) == -1) {
+          break;
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+      throw new IOException("The decompressed size of a bzip2 file is unknown");
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+      throw new NonWritableChannelException();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+      throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+      open = false;
+      if (block != null) {
+        block.close();
+      }
+    }
+  }
+
+  /**
+   * Locates the blocks of a bzip2 file from an arbitrary offset, and decompresses them one by one.
+   *
+   * <p>Blocks are not byte-aligned: each starts with a 48-bit magic number, followed by its CRC,
+   * and the last block of a stream is followed by a 48-bit end of stream magic number and the
+   * CRC of the stream. A block is extracted by copying its bits up to the next magic number into a
+   * new single-block stream, whose CRC is the CRC of the block.
+   */
+  private static class BZip2BlockScanner {
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = (1L << 48) - 1;
+    /** The stream header written before the extracted blocks, with the largest block size. */
+    private static final byte[] STREAM_HEADER = {'B', 'Z', 'h', '9'};
+    /** Bit offset of the first block of a file, following its stream header. */
+    private static final long FIRST_BLOCK_BIT_OFFSET = 8L * STREAM_HEADER.length;
+
+    private final InputStream in;
+    private long bitPosition;
+    private int currentByte;
+    private int bitsLeftInByte;
+    private long window;
+    private int bitsInWindow;
+
+    private long blockBitOffset = -1;
+    @Nullable
+    private BitWriter currentBlock;
+    private long pendingMagic;
+    private long pendingMagicBitOffset;
+
+    BZip2BlockScanner(InputStream in, long startOffset) {
+      this.in = new BufferedInputStream(in, 1 << 16);
+      this.bitPosition = 8 * startOffset;
+    }
+
+    /**
+     * Finds and extracts the next block, returning false if there is none.
+     */
+    boolean nextBlock() throws IOException {
+      long magic = pendingMagic;
+      blockBitOffset = pendingMagicBitOffset;
+      pendingMagic = 0;
+      if (magic == 0) {
+        magic = scan(null);
+        blockBitOffset = bitPosition - 48;
+      }
+      // Skips the end of a stream, up to the first block of the next one.
+      while (magic == END_OF_STREAM_MAGIC) {
+        magic = scan(null);
+        blockBitOffset = bitPosition - 48;
+      }
+      if (magic == 0) {
+        currentBlock = null;
+        return false;
+      }
+
+      currentBlock = new BitWriter();
+      for (byte b : STREAM_HEADER) {
+        currentBlock.writeBits(b, 8);
+      }
+      currentBlock.writeBits(BLOCK_MAGIC, 48);
+      long crc = 0;
+      for (int i = 0; i < 32; i++) {
+        int bit = readBit();
+        if (bit < 0) {
+          throw new IOException("Truncated bzip2 block at bit " + blockBitOffset);
+        }
+        crc = (crc << 1) | bit;
+      }
+      currentBlock.writeBits(crc, 32);
+      pendingMagic = scan(currentBlock);
+      pendingMagicBitOffset = bitPosition - 48;
+      currentBlock.writeBits(END_OF_STREAM_MAGIC, 48);
+      // The CRC of a single block stream is the CRC of its block.
+      currentBlock.writeBits(crc, 32);
+      return true;
+    }
+
+    /**
+     * Returns the offset of the byte holding the first bit of the current block.
+     */
+    long getBlockOffset() {
+      return blockBitOffset / 8;
+    }
+
+    boolean isAtFirstBlockOfFile() {
+      return blockBitOffset == FIRST_BLOCK_BIT_OFFSET;
+    }
+
+    /**
+     * Returns the decompressed data of the current block.
+     */
+    InputStream openBlock() throws IOException {
+      checkNotNull(currentBlock, "No current block");
+      return new BZip2CompressorInputStream(new ByteArrayInputStream(currentBlock.toByteArray()));
+    }
+
+    /**
+     * Reads bits until the last 48 bits read are a magic number, and returns it, or 0 at the end
+     * of the file. The bits preceding the magic number are copied to {@code block}, if any.
+     */
+    private long scan(@Nullable BitWriter block) throws IOException {
+      window = 0;
+      bitsInWindow = 0;
+      while (true) {
+        int bit = readBit();
+        if (bit < 0) {
+          if (block != null) {
+            block.writeBits(window, bitsInWindow);
+          }
+          return 0;
+        }
+        if (bitsInWindow == 48) {
+          if (block != null) {
+            block.writeBit((int) (window >>> 47) & 1);
+          }
+        } else {
+          bitsInWindow++;
+        }
+        window = ((window << 1) | bit) & MAGIC_MASK;
+        if (bitsInWindow == 48 && (window == BLOCK_MAGIC || window == END_OF_STREAM_MAGIC)) {
+          return window;
+        }
+      }
+    }
+
+    private int readBit() throws IOException {
+      if (bitsLeftInByte == 0) {
+        currentByte = in.read();
+        if (currentByte == -1) {
+          return -1;
+        }
+        bitsLeftInByte = 8;
+      }
+      bitsLeftInByte--;
+      bitPosition++;
+      return (currentByte >>> bitsLeftInByte) & 1;
+    }
+  }
+
+  /**
+   * Writes bits, most significant first, into a byte array padded with zeros.
+   */
+  private static class BitWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int currentByte;
+    private int bitsInByte;
+
+    void writeBit(int bit) {
+      currentByte = (currentByte << 1) | bit;
+      if (++bitsInByte == 8) {
+        out.write(currentByte);
+        currentByte = 0;
+        bitsInByte = 0;
+      }
+    }
+
+    void writeBits(long value, int count) {
+      for (int i = count - 1; i >= 0; i--) {
+        writeBit((int) (value >>> i) & 1);
+      }
+    }
+
+    byte[] toByteArray() {
+      if (bitsInByte > 0) {
+        out.write(currentByte << (8 - bitsInByte));
+        currentByte = 0;
+        bitsInByte = 0;
+      }
+      return out.toByteArray();
+    }
+  }
 }
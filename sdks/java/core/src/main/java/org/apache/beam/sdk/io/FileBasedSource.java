@@ -350,6 +350,18 @@ public abstract class FileBasedSource<T> extends OffsetBasedSource<T> {
     return factory.isReadSeekEfficient(fileOrPatternSpec);
   }
 
+  /**
+   * Returns the number of bytes before the start offset of a subrange that a reader of the
+   * subrange reads to find its first record. A reader of a subrange returns the records starting
+   * at or after its start offset, which it recognizes by the bytes that precede them.
+   *
+   * <p>Used by {@link CompressedSource.CompressionMode#SPLITTABLE_BZIP2} to start readers inside
+   * a block. Defaults to one byte.
+   */
+  long getSubrangeLookBack() {
+    return 1L;
+  }
+
   @Override
   public final BoundedReader<T> createReader(PipelineOptions options) throws IOException {
     // Validate the current source prior to creating a reader for it.
@@ -22,8 +22,8 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.protobuf.ByteString;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
@@ -181,6 +181,18 @@ public class TextIO {
       return new Bound<>(DEFAULT_TEXT_CODER).withCompressionType(compressionType);
     }
 
+    /**
+     * Returns a transform for reading text files whose records are separated by the given
+     * delimiter, instead of {@code \n}, {@code \r} or {@code \r\n}.
+     *
+     * <p>The delimiter must not overlap with itself, i.e. no proper prefix of it may also be a
+     * suffix of it (e.g., {@code "||"} or {@code "abca"}), since a reader starting in the middle
+     * of a file could otherwise not tell where a record starts.
+     */
+    public static Bound<String> withDelimiter(byte[] delimiter) {
+      return new Bound<>(DEFAULT_TEXT_CODER).withDelimiter(delimiter);
+    }
+
     // TODO: strippingNewlines, etc.
 
     /**
@@ -205,17 +217,21 @@ public class TextIO {
       /** Option to indicate the input source's compression type. Default is AUTO. */
       private final TextIO.CompressionType compressionType;
 
+      /** The delimiter of the records, or null to split on line separators. */
+      @Nullable private final byte[] delimiter;
+
       Bound(Coder<T> coder) {
-        this(null, null, coder, true, TextIO.CompressionType.AUTO);
+        this(null, null, coder, true, TextIO.CompressionType.AUTO, null);
       }
 
       private Bound(String name, String filepattern, Coder<T> coder, boolean validate,
-          TextIO.CompressionType compressionType) {
+          TextIO.CompressionType compressionType, @Nullable byte[] delimiter) {
         super(name);
         this.coder = coder;
         this.filepattern = filepattern;
         this.validate = validate;
         this.compressionType = compressionType;
+        this.delimiter = delimiter;
       }
 
       /**
@@ -227,7 +243,7 @@ public class TextIO {
 
        */
       public Bound<T> from(String filepattern) {
-        return new Bound<>(name, filepattern, coder, validate, compressionType);
+        return new Bound<>(name, filepattern, coder, validate, compressionType, delimiter);
       }
 
       /**
@@ -241,7 +257,7 @@ public class TextIO {
        * elements of the resulting PCollection
        */
       public <X> Bound<X> withCoder(Coder<X> coder) {
-        return new Bound<>(name, filepattern, coder, validate, compressionType);
+        return new Bound<>(name, filepattern, coder, validate, compressionType, delimiter);
       }
 
       /**
@@ -255,7 +271,7 @@ public class TextIO {
        * <p>Does not modify this object.
        */
       public Bound<T> withoutValidation() {
-        return new Bound<>(name, filepattern, coder, false, compressionType);
+        return new Bound<>(name, filepattern, coder, false, compressionType, delimiter);
       }
 
       /**
@@ -268,7 +284,38 @@ public class TextIO {
        * <p>Does not modify this object.
        */
       public Bound<T> withCompressionType(TextIO.CompressionType compressionType) {
-        return new Bound<>(name, filepattern, coder, validate, compressionType);
+        return new Bound<>(name, filepattern, coder, validate, compressionType, delimiter);
+      }
+
+      /**
+       * Returns a new transform for reading from text files that's like this one but
+       * separates records with the given delimiter. See {@link TextIO.Read#withDelimiter}.
+       *
+       * <p>Does not modify this object.
+       */
+      public Bound<T> withDelimiter(byte[] delimiter) {
+        checkArgument(delimiter != null && delimiter.length > 0, "delimiter can not be empty");
+        checkArgument(!isSelfOverlapping(delimiter),
+            "delimiter can not overlap with itself, but got %s",
+            new String(delimiter, StandardCharsets.UTF_8));
+        return new Bound<>(name, filepattern, coder, validate, compressionType, delimiter);
+      }
+
+      /**
+       * Returns whether a proper prefix of the given delimiter is also a suffix of it, so that
+       * two occurrences of the delimiter can overlap.
+       */
+      private static boolean isSelfOverlapping(byte[] delimiter) {
+        for (int length = 1; length < delimiter.length; length++) {
+          boolean overlaps = true;
+          for (int i = 0; i < length && overlaps; i++) {
+            overlaps = delimiter[i] == delimiter[delimiter.length - length + i];
+          }
+          if (overlaps) {
+            return true;
+          }
+        }
+        return false;
       }
 
       @Override
@@ -300,20 +347,24 @@ public class TextIO {
       protected FileBasedSource<T> getSource() {
         switch (compressionType) {
           case UNCOMPRESSED:
-            return new TextSource<T>(filepattern, coder);
+            return new TextSource<T>(filepattern, coder, delimiter);
           case AUTO:
-            return CompressedSource.from(new TextSource<T>(filepattern, coder));
+            return CompressedSource.from(new TextSource<T>(filepattern, coder, delimiter));
           case BZIP2:
             return
-                CompressedSource.from(new TextSource<T>(filepattern, coder))
+                CompressedSource.from(new TextSource<T>(filepattern, coder, delimiter))
                     .withDecompression(CompressedSource.CompressionMode.BZIP2);
+          case SPLITTABLE_BZIP2:
+            return
+                CompressedSource.from(new TextSource<T>(filepattern, coder, delimiter))
+                    .withDecompression(CompressedSource.CompressionMode.SPLITTABLE_BZIP2);
           case GZIP:
             return
-                CompressedSource.from(new TextSource<T>(filepattern, coder))
+                CompressedSource.from(new TextSource<T>(filepattern, coder, delimiter))
                     .withDecompression(CompressedSource.CompressionMode.GZIP);
           case ZIP:
             return
-                CompressedSource.from(new TextSource<T>(filepattern, coder))
+                CompressedSource.from(new TextSource<T>(filepattern, coder, delimiter))
                     .withDecompression(CompressedSource.CompressionMode.ZIP);
           default:
             throw new IllegalArgumentException("Unknown compression type: " + compressionType);
@@ -330,7 +381,10 @@ public class TextIO {
             .addIfNotDefault(DisplayData.item("validation", validate)
               .withLabel("Validation Enabled"), true)
             .addIfNotNull(DisplayData.item("filePattern", filepattern)
-              .withLabel("File Pattern"));
+              .withLabel("File Pattern"))
+            .addIfNotNull(DisplayData.item("delimiter",
+                delimiter == null ? null : new String(delimiter, StandardCharsets.UTF_8))
+              .withLabel("Record Delimiter"));
       }
 
       @Override
@@ -811,6 +865,10 @@ public class TextIO {
      * BZipped.
      */
     BZIP2(".bz2"),
+    /**
+     * BZipped, and split on the boundaries of the bzip2 blocks to be read in parallel.
+     */
+    SPLITTABLE_BZIP2(".bz2"),
     /**
      * Zipped.
      */
@@ -855,6 +913,9 @@ public class TextIO {
    * {@code \r\n} as the delimiter. This source is not strict and supports decoding the last record
    * even if it is not delimited. Finally, no records are decoded if the stream is empty.
    *
+   * <p>When a custom delimiter is given, records are instead separated by exactly that sequence of
+   * bytes, which must not overlap with itself (e.g., {@code "aa"}).
+   *
    * <p>This source supports reading from any arbitrary byte position within the stream. If the
    * starting position is not {@code 0}, then bytes are skipped until the first delimiter is found
    * representing the beginning of the first record to be decoded.
@@ -864,20 +925,31 @@ public class TextIO {
     /** The Coder to use to decode each line. */
     private final Coder<T> coder;
 
+    /** The delimiter of the records, or null to split on line separators. */
+    @Nullable private final byte[] delimiter;
+
     @VisibleForTesting
     TextSource(String fileSpec, Coder<T> coder) {
+      this(fileSpec, coder, null);
+    }
+
+    @VisibleForTesting
+    TextSource(String fileSpec, Coder<T> coder, @Nullable byte[] delimiter) {
       super(fileSpec, 1L);
       this.coder = coder;
+      this.delimiter = delimiter;
     }
 
-    private TextSource(String fileName, long start, long end, Coder<T> coder) {
+    private TextSource(String fileName, long start, long end, Coder<T> coder,
+        @Nullable byte[] delimiter) {
       super(fileName, 1L, start, end);
       this.coder = coder;
+      this.delimiter = delimiter;
     }
 
     @Override
     protected FileBasedSource<T> createForSubrangeOfFile(String fileName, long start, long end) {
-      return new TextSource<>(fileName, start, end, coder);
+      return new TextSource<>(fileName, start, end, coder, delimiter);
     }
 
     @Override
@@ -885,6 +957,15 @@ public class TextIO {
       return new TextBasedReader<>(this);
     }
 
+    /**
+     * Returns the length of the delimiter, as a reader looks for a delimiter ending at its start
+     * offset.
+     */
+    @Override
+    long getSubrangeLookBack() {
+      return delimiter == null ? 1L : delimiter.length;
+    }
+
     @Override
     public boolean producesSortedKeys(PipelineOptions options) throws Exception {
       return false;
@@ -899,14 +980,28 @@ public class TextIO {
      * A {@link org.apache.beam.sdk.io.FileBasedSource.FileBasedReader FileBasedReader}
      * which can decode records delimited by newline characters.
      *
+     * <p>Bytes are read into a single array, which is only compacted or grown when a record does
+     * not fit in the rest of it, and records are decoded in place. Separators are searched for a
+     * word at a time.
+     *
      * <p>See {@link TextSource} for further details.
      */
     @VisibleForTesting
     static class TextBasedReader<T> extends FileBasedReader<T> {
       private static final int READ_BUFFER_SIZE = 8192;
+      private static final long LOW_BITS = 0x0101010101010101L;
+      private static final long HIGH_BITS = 0x8080808080808080L;
+      private static final long LINE_FEEDS = '\n' * LOW_BITS;
+      private static final long CARRIAGE_RETURNS = '\r' * LOW_BITS;
       private final Coder<T> coder;
-      private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
-      private ByteString buffer;
+      @Nullable private final byte[] delimiter;
+      private byte[] buffer = new byte[READ_BUFFER_SIZE];
+      /** A view of {@link #buffer} to read it a word at a time. */
+      private ByteBuffer words = ByteBuffer.wrap(buffer);
+      /** The first byte of {@link #buffer} that is not consumed. */
+      private int bufferStart;
+      /** The end of the bytes read into {@link #buffer}. */
+      private int bufferEnd;
       private int startOfSeparatorInBuffer;
       private int endOfSeparatorInBuffer;
       private long startOfRecord;
@@ -919,7 +1014,7 @@ public class TextIO {
       private TextBasedReader(TextSource<T> source) {
         super(source);
         coder = source.coder;
-        buffer = ByteString.EMPTY;
+        delimiter = source.delimiter;
       }
 
       @Override
@@ -950,15 +1045,17 @@ public class TextIO {
       protected void startReading(ReadableByteChannel channel) throws IOException {
         this.inChannel = channel;
         // If the first offset is greater than zero, we need to skip bytes until we see our
-        // first separator.
+        // first separator. A separator ending at the start offset, which may be longer than one
+        // byte, still marks the beginning of our first record.
         if (getCurrentSource().getStartOffset() > 0) {
           checkState(channel instanceof SeekableByteChannel,
               "%s only supports reading from a SeekableByteChannel when given a start offset"
               + " greater than 0.", TextSource.class.getSimpleName());
-          long requiredPosition = getCurrentSource().getStartOffset() - 1;
+          long requiredPosition = Math.max(0L,
+              getCurrentSource().getStartOffset() - (delimiter == null ? 1 : delimiter.length));
           ((SeekableByteChannel) channel).position(requiredPosition);
           findSeparatorBounds();
-          buffer = buffer.substring(endOfSeparatorInBuffer);
+          bufferStart += endOfSeparatorInBuffer;
           startOfNextRecord = requiredPosition + endOfSeparatorInBuffer;
           endOfSeparatorInBuffer = 0;
           startOfSeparatorInBuffer = 0;
@@ -969,7 +1066,8 @@ public class TextIO {
        * Locates the start position and end position of the next delimiter. Will
        * consume the channel till either EOF or the delimiter bounds are found.
        *
-       * <p>This fills the buffer and updates the positions as follows:
+       * <p>This fills the buffer and updates the positions, relative to the first unconsumed
+       * byte of the buffer, as follows:
        * <pre>{@code
        * ------------------------------------------------------
        * | element bytes | delimiter bytes | unconsumed bytes |
@@ -987,28 +1085,98 @@ public class TextIO {
             break;
           }
 
-          byte currentByte = buffer.byteAt(bytePositionInBuffer);
-
-          if (currentByte == '\n') {
-            startOfSeparatorInBuffer = bytePositionInBuffer;
+          if (delimiter == null) {
+            int separator = indexOfLineSeparator(bufferStart + bytePositionInBuffer);
+            if (separator < 0) {
+              // Search again once more bytes are read.
+              bytePositionInBuffer = bufferEnd - bufferStart;
+              continue;
+            }
+            startOfSeparatorInBuffer = separator - bufferStart;
             endOfSeparatorInBuffer = startOfSeparatorInBuffer + 1;
+            if (buffer[separator] == '\r'
+                && tryToEnsureNumberOfBytesInBuffer(startOfSeparatorInBuffer + 2)
+                && buffer[bufferStart + startOfSeparatorInBuffer + 1] == '\n') {
+              endOfSeparatorInBuffer += 1;
+            }
+            break;
+          }
+
+          int candidate = indexOf(delimiter[0], bufferStart + bytePositionInBuffer);
+          if (candidate < 0) {
+            bytePositionInBuffer = bufferEnd - bufferStart;
+            continue;
+          }
+          bytePositionInBuffer = candidate - bufferStart;
+          if (!tryToEnsureNumberOfBytesInBuffer(bytePositionInBuffer + delimiter.length)) {
+            // The end of the input is too close for a delimiter to start here.
+            startOfSeparatorInBuffer = endOfSeparatorInBuffer = bufferEnd - bufferStart;
             break;
-          } else if (currentByte == '\r') {
+          }
+          if (isDelimiterAt(bufferStart + bytePositionInBuffer)) {
             startOfSeparatorInBuffer = bytePositionInBuffer;
-            endOfSeparatorInBuffer = startOfSeparatorInBuffer + 1;
+            endOfSeparatorInBuffer = startOfSeparatorInBuffer + delimiter.length;
+            break;
+          }
+          bytePositionInBuffer += 1;
+        }
+      }
 
-            if (tryToEnsureNumberOfBytesInBuffer(bytePositionInBuffer + 2)) {
-              currentByte = buffer.byteAt(bytePositionInBuffer + 1);
-              if (currentByte == '\n') {
-                endOfSeparatorInBuffer += 1;
-              }
-            }
+      /**
+       * Returns the index in the buffer of the first {@code \n} or {@code \r} from the given
+       * index, or -1 if there is none in the bytes read.
+       */
+      private int indexOfLineSeparator(int from) {
+        int index = from;
+        // Skips the words holding neither byte.
+        for (; index + 8 <= bufferEnd; index += 8) {
+          long word = words.getLong(index);
+          if (hasZeroByte(word ^ LINE_FEEDS) || hasZeroByte(word ^ CARRIAGE_RETURNS)) {
             break;
           }
+        }
+        for (; index < bufferEnd; index++) {
+          if (buffer[index] == '\n' || buffer[index] == '\r') {
+            return index;
+          }
+        }
+        return -1;
+      }
 
-          // Move to the next byte in buffer.
-          bytePositionInBuffer += 1;
+      /**
+       * Returns the index in the buffer of the first occurrence of the given byte from the given
+       * index, or -1 if there is none in the bytes read.
+       */
+      private int indexOf(byte value, int from) {
+        long values = (value & 0xffL) * LOW_BITS;
+        int index = from;
+        for (; index + 8 <= bufferEnd; index += 8) {
+          if (hasZeroByte(words.getLong(index) ^ values)) {
+            break;
+          }
+        }
+        for (; index < bufferEnd; index++) {
+          if (buffer[index] == value) {
+            return index;
+          }
+        }
+        return -1;
+      }
+
+      private boolean isDelimiterAt(int index) {
+        for (int i = 1; i < delimiter.length; i++) {
+          if (buffer[index + i] != delimiter[i]) {
+            return false;
+          }
         }
+        return true;
+      }
+
+      /**
+       * Returns whether any byte of the given word is zero.
+       */
+      private static boolean hasZeroByte(long word) {
+        return ((word - LOW_BITS) & ~word & HIGH_BITS) != 0;
       }
 
       @Override
@@ -1018,7 +1186,7 @@ public class TextIO {
 
         // If we have reached EOF file and consumed all of the buffer then we know
         // that there are no more records.
-        if (eof && buffer.size() == 0) {
+        if (eof && bufferStart == bufferEnd) {
           elementIsPresent = false;
           return false;
         }
@@ -1029,16 +1197,24 @@ public class TextIO {
       }
 
       /**
-       * Decodes the current element updating the buffer to only contain the unconsumed bytes.
+       * Decodes the current element directly from the buffer, and marks it and its separator as
+       * consumed.
        *
        * <p>This invalidates the currently stored {@code startOfSeparatorInBuffer} and
        * {@code endOfSeparatorInBuffer}.
        */
+      @SuppressWarnings("unchecked")
       private void decodeCurrentElement() throws IOException {
-        ByteString dataToDecode = buffer.substring(0, startOfSeparatorInBuffer);
-        currentValue = coder.decode(dataToDecode.newInput(), Context.OUTER);
+        if (coder instanceof StringUtf8Coder) {
+          currentValue = (T) new String(
+              buffer, bufferStart, startOfSeparatorInBuffer, StandardCharsets.UTF_8);
+        } else {
+          currentValue = coder.decode(
+              new ByteArrayInputStream(buffer, bufferStart, startOfSeparatorInBuffer),
+              Context.OUTER);
+        }
         elementIsPresent = true;
-        buffer = buffer.substring(endOfSeparatorInBuffer);
+        bufferStart += endOfSeparatorInBuffer;
       }
 
       /**
@@ -1047,14 +1223,36 @@ public class TextIO {
       private boolean tryToEnsureNumberOfBytesInBuffer(int minCapacity) throws IOException {
         // While we aren't at EOF or haven't fulfilled the minimum buffer capacity,
         // attempt to read more bytes.
-        while (buffer.size() <= minCapacity && !eof) {
-          eof = inChannel.read(readBuffer) == -1;
-          readBuffer.flip();
-          buffer = buffer.concat(ByteString.copyFrom(readBuffer));
-          readBuffer.clear();
+        while (bufferEnd - bufferStart < minCapacity && !eof) {
+          if (bufferEnd == buffer.length) {
+            makeRoomInBuffer();
+          }
+          int bytes = inChannel.read(ByteBuffer.wrap(buffer, bufferEnd, buffer.length - bufferEnd));
+          if (bytes == -1) {
+            eof = true;
+          } else {
+            bufferEnd += bytes;
+          }
         }
         // Return true if we were able to honor the minimum buffer capacity request
-        return buffer.size() >= minCapacity;
+        return bufferEnd - bufferStart >= minCapacity;
+      }
+
+      /**
+       * Moves the unconsumed bytes to the beginning of the buffer, growing it if they fill more
+       * than half of it.
+       */
+      private void makeRoomInBuffer() {
+        int unconsumed = bufferEnd - bufferStart;
+        byte[] target = buffer;
+        if (unconsumed > buffer.length / 2) {
+          target = new byte[buffer.length * 2];
+          words = ByteBuffer.wrap(target);
+        }
+        System.arraycopy(buffer, bufferStart, target, 0, unconsumed);
+        buffer = target;
+        bufferStart = 0;
+        bufferEnd = unconsumed;
       }
     }
   }
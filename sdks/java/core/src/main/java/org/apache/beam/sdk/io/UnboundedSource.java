@@ -273,4 +273,21 @@ public abstract class UnboundedSource<
     @Override
     public abstract UnboundedSource<OutputT, ?> getCurrentSource();
   }
+
+  /**
+   * An {@link UnboundedReader} that can signal when new data might be available.
+   *
+   * <p>When {@link UnboundedReader#advance} returns {@code false}, a runner may wait for some
+   * time before calling it again. Readers that learn about new data asynchronously, for example
+   * from a background fetching thread, can implement this interface to cut that wait short.
+   */
+  @Experimental(Experimental.Kind.SOURCE_SINK)
+  public interface NotifyingReader {
+
+    /**
+     * Sets the listener to run when new data might be available. The listener may be run from
+     * any thread, does not block, and may be run spuriously.
+     */
+    void setDataAvailableListener(Runnable listener);
+  }
 }
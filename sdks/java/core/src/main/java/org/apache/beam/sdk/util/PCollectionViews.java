@@ -365,10 +365,12 @@ public class PCollectionViews {
       Map<K, V> map = new HashMap<>();
       for (WindowedValue<KV<K, V>> elem : elements) {
         KV<K, V> kv = elem.getValue();
-        if (map.containsKey(kv.getKey())) {
+        int size = map.size();
+        map.put(kv.getKey(), kv.getValue());
+        // the map did not grow, so the key was already present
+        if (map.size() == size) {
           throw new IllegalArgumentException("Duplicate values for " + kv.getKey());
         }
-        map.put(kv.getKey(), kv.getValue());
       }
       return Collections.unmodifiableMap(map);
     }
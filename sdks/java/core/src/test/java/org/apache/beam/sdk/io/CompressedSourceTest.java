@@ -36,6 +36,7 @@ import com.google.common.primitives.Bytes;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
@@ -321,6 +322,51 @@ public class CompressedSourceTest {
     assertFalse(source.isSplittable());
   }
 
+  @Test
+  public void testSplittableBzip2FileIsSplittable() throws Exception {
+    CompressedSource<Byte> source = CompressedSource.from(new ByteSource("input.bz2", 1))
+        .withDecompression(CompressionMode.SPLITTABLE_BZIP2);
+    assertTrue(source.isSplittable());
+  }
+
+  /**
+   * Test reading a bzip2 file of several blocks and streams in bundles, and splitting a read of it
+   * dynamically.
+   */
+  @Test
+  public void testSplittableBzip2Read() throws Exception {
+    File compressedFile = tmpFolder.newFile("test-input.bz2");
+    byte[] input = generateInput(300000);
+    // Small blocks, and two concatenated streams.
+    try (OutputStream os = new FileOutputStream(compressedFile)) {
+      try (OutputStream bzip2 = new BZip2CompressorOutputStream(new NoCloseOutputStream(os), 1)) {
+        bzip2.write(input, 0, 200000);
+      }
+      try (OutputStream bzip2 = new BZip2CompressorOutputStream(os, 1)) {
+        bzip2.write(input, 200000, 100000);
+      }
+    }
+
+    PipelineOptions options = PipelineOptionsFactory.create();
+    CompressedSource<Byte> source =
+        CompressedSource.from(new ByteSource(compressedFile.getPath(), 1))
+            .withDecompression(CompressionMode.SPLITTABLE_BZIP2);
+    assertEquals(Bytes.asList(input), SourceTestUtils.readFromSource(source, options));
+
+    List<? extends BoundedSource<Byte>> splits =
+        source.splitIntoBundles(compressedFile.length() / 6, options);
+    SourceTestUtils.assertSourcesEqualReferenceSource(source, splits, options);
+    int nonEmptySplits = 0;
+    for (BoundedSource<Byte> split : splits) {
+      if (!SourceTestUtils.readFromSource(split, options).isEmpty()) {
+        nonEmptySplits++;
+      }
+    }
+    assertTrue(nonEmptySplits > 1);
+
+    SourceTestUtils.assertSplitAtFractionSucceedsAndConsistent(source, 100, 0.5, options);
+  }
+
   /**
    * Test reading an uncompressed file with {@link CompressionMode#GZIP}, since we must support
    * this due to properties of services that we read from.
@@ -494,6 +540,25 @@ public class CompressedSourceTest {
     runReadTest(input, mode, mode);
   }
 
+  /**
+   * Output stream that does not close its underlying stream, to concatenate compressed streams.
+   */
+  private static class NoCloseOutputStream extends FilterOutputStream {
+    NoCloseOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
   /**
    * Dummy source for use in tests.
    */
@@ -44,12 +44,15 @@ import static org.junit.Assert.assertTrue;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Strings;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Bytes;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
@@ -1020,6 +1023,29 @@ public class TextIOTest {
         ImmutableList.of("asdf", "hjkl", "xyz"));
   }
 
+  @Test
+  public void testReadFileWithCustomDelimiter() throws Exception {
+    TextSource<String> source = prepareSource(
+        "asdf|~hjkl|\n|~xyz|~".getBytes(StandardCharsets.UTF_8), "|~");
+    List<String> actual = SourceTestUtils.readFromSource(source, PipelineOptionsFactory.create());
+    assertEquals(ImmutableList.of("asdf", "hjkl|\n", "xyz"), actual);
+  }
+
+  @Test
+  public void testReadWithSelfOverlappingDelimiter() throws Exception {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("delimiter can not overlap with itself");
+    TextIO.Read.withDelimiter("||".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testReadFileWithLinesLongerThanReadBuffer() throws Exception {
+    String longLine = Strings.repeat("abcdefghij", 5000);
+    runTestReadWithData(
+        (longLine + "\n" + longLine + "\r\nxyz").getBytes(StandardCharsets.UTF_8),
+        ImmutableList.of(longLine, longLine, "xyz"));
+  }
+
   private void runTestReadWithData(byte[] data, List<String> expectedResults) throws Exception {
     TextSource<String> source = prepareSource(data);
     List<String> actual = SourceTestUtils.readFromSource(source, PipelineOptionsFactory.create());
@@ -1085,12 +1111,61 @@ public class TextIOTest {
     SourceTestUtils.assertSplitAtFractionExhaustive(source, PipelineOptionsFactory.create());
   }
 
+  @Test
+  public void testSplittingSourceWithCustomDelimiter() throws Exception {
+    TextSource<String> source = prepareSource(
+        "asdf|~hjkl|\n|~xyz|~".getBytes(StandardCharsets.UTF_8), "|~");
+    SourceTestUtils.assertSplitAtFractionExhaustive(source, PipelineOptionsFactory.create());
+  }
+
+  /**
+   * Tests splitting a bzip2 file read with
+   * {@link CompressedSource.CompressionMode#SPLITTABLE_BZIP2} whose second block starts inside a
+   * delimiter of two bytes, so that finding the first record of the second block requires the
+   * end of the first.
+   */
+  @Test
+  public void testSplittingSplittableBzip2WithDelimiterAcrossBlocks() throws Exception {
+    // Each stream holds a single block.
+    Path path = Files.createTempFile(tempFolder, "tempfile", ".bz2");
+    Files.write(path, Bytes.concat(bzip2("a|~bb|~c|"), bzip2("~dd|~e")));
+    PipelineOptions options = PipelineOptionsFactory.create();
+
+    FileBasedSource<String> source =
+        CompressedSource.from(
+                new TextSource<>(
+                    path.toString(), StringUtf8Coder.of(), "|~".getBytes(StandardCharsets.UTF_8)))
+            .withDecompression(CompressedSource.CompressionMode.SPLITTABLE_BZIP2);
+    assertEquals(
+        ImmutableList.of("a", "bb", "c", "dd", "e"),
+        SourceTestUtils.readFromSource(source, options));
+
+    List<? extends FileBasedSource<String>> splits = source.splitIntoBundles(1, options);
+    assertThat(splits, hasSize(greaterThan(1)));
+    SourceTestUtils.assertSourcesEqualReferenceSource(source, splits, options);
+  }
+
+  private static byte[] bzip2(String data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream os = new BZip2CompressorOutputStream(bytes)) {
+      os.write(data.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
   private TextSource<String> prepareSource(byte[] data) throws IOException {
     Path path = Files.createTempFile(tempFolder, "tempfile", "ext");
     Files.write(path, data);
     return new TextSource<>(path.toString(), StringUtf8Coder.of());
   }
 
+  private TextSource<String> prepareSource(byte[] data, String delimiter) throws IOException {
+    Path path = Files.createTempFile(tempFolder, "tempfile", "ext");
+    Files.write(path, data);
+    return new TextSource<>(
+        path.toString(), StringUtf8Coder.of(), delimiter.getBytes(StandardCharsets.UTF_8));
+  }
+
   @Test
   public void testInitialSplitIntoBundlesAutoModeTxt() throws Exception {
     PipelineOptions options = TestPipeline.testingPipelineOptions();
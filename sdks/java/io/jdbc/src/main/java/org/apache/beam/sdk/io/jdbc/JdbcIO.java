@@ -21,12 +21,17 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.UnsignedLongs;
 
 import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
@@ -72,6 +77,21 @@ import org.apache.commons.dbcp2.BasicDataSource;
  *   })
  * }</pre>
  *
+ * <p>By default, the query is executed by a single worker. To read a large table in parallel, the
+ * query can be split into range queries on a numeric column with
+ * {@link Read#withPartitioning(String, long, long, int)}, or into queries for a list of
+ * {@code WHERE} clause predicates with {@link Read#withPredicates(List)}. The partition queries
+ * are executed on different workers:
+ *
+ * <pre>{@code
+ * pipeline.apply(JdbcIO.<KV<Integer, String>>read()
+ *   .withDataSourceConfiguration(...)
+ *   .withQuery("select id,name from Person")
+ *   .withPartitioning("id", 0, 1000000, 10)
+ *   .withFetchSize(10000)
+ *   .withRowMapper(...)
+ * }</pre>
+ *
  * <h3>Writing to JDBC datasource</h3>
  *
  * <p>JDBC sink supports writing records into a database. It writes a {@link PCollection} to the
@@ -109,7 +129,12 @@ public class JdbcIO {
    * @param <T> Type of the data to be read.
    */
   public static <T> Read<T> read() {
-    return new AutoValue_JdbcIO_Read.Builder<T>().build();
+    return new AutoValue_JdbcIO_Read.Builder<T>()
+        .setLowerBound(0L)
+        .setUpperBound(0L)
+        .setNumPartitions(1)
+        .setFetchSize(0)
+        .build();
   }
 
   /**
@@ -137,6 +162,13 @@ public class JdbcIO {
    */
   @AutoValue
   public abstract static class DataSourceConfiguration implements Serializable {
+    /**
+     * The connection pools created for configurations given a driver class name and url, shared
+     * by all the readers and writers using the same configuration in a worker.
+     */
+    private static final ConcurrentMap<DataSourceConfiguration, BasicDataSource>
+        POOLED_DATA_SOURCES = new ConcurrentHashMap<>();
+
     @Nullable abstract String getDriverClassName();
     @Nullable abstract String getUrl();
     @Nullable abstract String getUsername();
@@ -179,20 +211,27 @@ public class JdbcIO {
     }
 
     Connection getConnection() throws Exception {
-      DataSource dataSource;
-      if (getDataSource() != null) {
-        dataSource = getDataSource();
-      } else {
+      DataSource dataSource = (getDataSource() != null) ? getDataSource() : getPooledDataSource();
+      return dataSource.getConnection();
+    }
+
+    private DataSource getPooledDataSource() throws Exception {
+      BasicDataSource pooledDataSource = POOLED_DATA_SOURCES.get(this);
+      if (pooledDataSource == null) {
         BasicDataSource basicDataSource = new BasicDataSource();
         basicDataSource.setDriverClassName(getDriverClassName());
         basicDataSource.setUrl(getUrl());
         basicDataSource.setUsername(getUsername());
         basicDataSource.setPassword(getPassword());
-        dataSource = basicDataSource;
+        pooledDataSource = POOLED_DATA_SOURCES.putIfAbsent(this, basicDataSource);
+        if (pooledDataSource == null) {
+          pooledDataSource = basicDataSource;
+        } else {
+          // another thread created the pool concurrently
+          basicDataSource.close();
+        }
       }
-      return (getUsername() == null)
-          ? dataSource.getConnection()
-          : dataSource.getConnection(getUsername(), getPassword());
+      return pooledDataSource;
     }
   }
 
@@ -203,6 +242,12 @@ public class JdbcIO {
     @Nullable abstract String getQuery();
     @Nullable abstract RowMapper<T> getRowMapper();
     @Nullable abstract Coder<T> getCoder();
+    @Nullable abstract String getPartitionColumn();
+    abstract long getLowerBound();
+    abstract long getUpperBound();
+    abstract int getNumPartitions();
+    @Nullable abstract List<String> getPredicates();
+    abstract int getFetchSize();
 
     abstract Builder<T> toBuilder();
 
@@ -212,6 +257,12 @@ public class JdbcIO {
       abstract Builder<T> setQuery(String query);
       abstract Builder<T> setRowMapper(RowMapper<T> rowMapper);
       abstract Builder<T> setCoder(Coder<T> coder);
+      abstract Builder<T> setPartitionColumn(String partitionColumn);
+      abstract Builder<T> setLowerBound(long lowerBound);
+      abstract Builder<T> setUpperBound(long upperBound);
+      abstract Builder<T> setNumPartitions(int numPartitions);
+      abstract Builder<T> setPredicates(List<String> predicates);
+      abstract Builder<T> setFetchSize(int fetchSize);
       abstract Read<T> build();
     }
 
@@ -235,29 +286,116 @@ public class JdbcIO {
       return toBuilder().setCoder(coder).build();
     }
 
+    /**
+     * Splits the query into {@code numPartitions} range queries on the numeric
+     * {@code partitionColumn} of its results, executed in parallel. The range between
+     * {@code lowerBound} (inclusive) and {@code upperBound} (exclusive) is split into partitions
+     * of equal size. The bounds only determine the ranges: rows below the lower bound (or with a
+     * {@code NULL} value) are read by the first partition, and rows above the upper bound by the
+     * last one.
+     */
+    public Read<T> withPartitioning(
+        String partitionColumn, long lowerBound, long upperBound, int numPartitions) {
+      checkNotNull(partitionColumn, "partitionColumn");
+      checkArgument(lowerBound < upperBound,
+          "lowerBound must be lower than upperBound, got %s and %s", lowerBound, upperBound);
+      checkArgument(numPartitions > 0, "numPartitions must be positive, got %s", numPartitions);
+      return toBuilder()
+          .setPartitionColumn(partitionColumn)
+          .setLowerBound(lowerBound)
+          .setUpperBound(upperBound)
+          .setNumPartitions(numPartitions)
+          .setPredicates(null)
+          .build();
+    }
+
+    /**
+     * Splits the query into one query per {@code WHERE} clause predicate on the columns of its
+     * results, executed in parallel. The predicates should not overlap, and should together cover
+     * all the rows to read.
+     */
+    public Read<T> withPredicates(List<String> predicates) {
+      checkNotNull(predicates, "predicates");
+      checkArgument(!predicates.isEmpty(), "predicates must not be empty");
+      return toBuilder()
+          .setPredicates(ImmutableList.copyOf(predicates))
+          .setPartitionColumn(null)
+          .build();
+    }
+
+    /**
+     * Sets the number of rows fetched from the database at a time when reading the results of
+     * the query (see {@link java.sql.Statement#setFetchSize(int)}). Some drivers, such as the
+     * PostgreSQL one, otherwise load the whole result set in memory.
+     */
+    public Read<T> withFetchSize(int fetchSize) {
+      checkArgument(fetchSize > 0, "fetchSize must be positive, got %s", fetchSize);
+      return toBuilder().setFetchSize(fetchSize).build();
+    }
+
     @Override
     public PCollection<T> apply(PBegin input) {
-      return input
-          .apply(Create.of(getQuery()))
+      List<String> queries = getPartitionQueries();
+      PCollection<String> partitionQueries = input.apply(Create.of(queries));
+      if (queries.size() > 1) {
+        // distribute the partition queries, so that they are executed in parallel
+        partitionQueries = partitionQueries.apply("Reshuffle Queries", new Reshuffle<String>());
+      }
+      return partitionQueries
           .apply(ParDo.of(new ReadFn<>(this))).setCoder(getCoder())
-          // generate a random key followed by a GroupByKey and then ungroup
-          // to prevent fusion
-          // see https://cloud.google.com/dataflow/service/dataflow-service-desc#preventing-fusion
-          // for details
-          .apply(ParDo.of(new DoFn<T, KV<Integer, T>>() {
-            private Random random;
-            @Setup
-            public void setup() {
-              random = new Random();
-            }
-            @ProcessElement
-            public void processElement(ProcessContext context) {
-              context.output(KV.of(random.nextInt(), context.element()));
-            }
-          }))
-          .apply(GroupByKey.<Integer, T>create())
-          .apply(Values.<Iterable<T>>create())
-          .apply(Flatten.<T>iterables());
+          .apply(new Reshuffle<T>());
+    }
+
+    /**
+     * Returns the queries to execute, one for each partition of the query.
+     */
+    List<String> getPartitionQueries() {
+      ImmutableList.Builder<String> queries = ImmutableList.builder();
+      if (getPredicates() != null) {
+        for (String predicate : getPredicates()) {
+          queries.add(getPartitionQuery(predicate));
+        }
+      } else if (getEffectiveNumPartitions() > 1) {
+        String column = getPartitionColumn();
+        long numPartitions = getEffectiveNumPartitions();
+        // the range may exceed Long.MAX_VALUE, but always fits in an unsigned long. Offsets from
+        // the lower bound wrap back into the range, as it lies between two signed longs.
+        long stride = UnsignedLongs.divide(getUpperBound() - getLowerBound(), numPartitions);
+        for (long i = 0; i < numPartitions; i++) {
+          long start = getLowerBound() + i * stride;
+          long end = start + stride;
+          if (i == 0) {
+            queries.add(getPartitionQuery(
+                String.format("%s < %d or %s is null", column, end, column)));
+          } else if (i == numPartitions - 1) {
+            queries.add(getPartitionQuery(String.format("%s >= %d", column, start)));
+          } else {
+            queries.add(getPartitionQuery(
+                String.format("%s >= %d and %s < %d", column, start, column, end)));
+          }
+        }
+      } else {
+        queries.add(getQuery());
+      }
+      return queries.build();
+    }
+
+    /**
+     * Returns the number of range queries to split the query into, which is at most the number of
+     * values in the range of the partition column, or 1 if the query is not partitioned by range.
+     */
+    private long getEffectiveNumPartitions() {
+      if (getPartitionColumn() == null) {
+        return 1;
+      }
+      long range = getUpperBound() - getLowerBound();
+      // don't create more partitions than values in the range
+      return UnsignedLongs.compare(range, getNumPartitions()) < 0 ? range : getNumPartitions();
+    }
+
+    private String getPartitionQuery(String predicate) {
+      return String.format(
+          "select * from (%s) as beam_partition where %s", getQuery(), predicate);
     }
 
     @Override
@@ -274,6 +412,16 @@ public class JdbcIO {
       builder.add(DisplayData.item("query", getQuery()));
       builder.add(DisplayData.item("rowMapper", getRowMapper().getClass().getName()));
       builder.add(DisplayData.item("coder", getCoder().getClass().getName()));
+      builder.addIfNotNull(DisplayData.item("partitionColumn", getPartitionColumn()));
+      if (getPartitionColumn() != null) {
+        builder.add(DisplayData.item("numPartitions", getNumPartitions()));
+      }
+      if (getPredicates() != null) {
+        builder.add(DisplayData.item("predicates", getPredicates().toString()));
+      }
+      if (getFetchSize() > 0) {
+        builder.add(DisplayData.item("fetchSize", getFetchSize()));
+      }
       getDataSourceConfiguration().populateDisplayData(builder);
     }
 
@@ -289,12 +437,19 @@ public class JdbcIO {
       @Setup
       public void setup() throws Exception {
         connection = spec.getDataSourceConfiguration().getConnection();
+        if (spec.getFetchSize() > 0) {
+          // some drivers, such as the PostgreSQL one, only use the fetch size in a transaction
+          connection.setAutoCommit(false);
+        }
       }
 
       @ProcessElement
       public void processElement(ProcessContext context) throws Exception {
         String query = context.element();
         try (PreparedStatement statement = connection.prepareStatement(query)) {
+          if (spec.getFetchSize() > 0) {
+            statement.setFetchSize(spec.getFetchSize());
+          }
           try (ResultSet resultSet = statement.executeQuery()) {
             while (resultSet.next()) {
               context.output(spec.getRowMapper().mapRow(resultSet));
@@ -312,6 +467,34 @@ public class JdbcIO {
     }
   }
 
+  /**
+   * A {@link PTransform} redistributing the elements of a {@link PCollection} among workers.
+   */
+  private static class Reshuffle<T> extends PTransform<PCollection<T>, PCollection<T>> {
+    @Override
+    public PCollection<T> apply(PCollection<T> input) {
+      // generate a random key followed by a GroupByKey and then ungroup
+      // to prevent fusion
+      // see https://cloud.google.com/dataflow/service/dataflow-service-desc#preventing-fusion
+      // for details
+      return input
+          .apply(ParDo.of(new DoFn<T, KV<Integer, T>>() {
+            private Random random;
+            @Setup
+            public void setup() {
+              random = new Random();
+            }
+            @ProcessElement
+            public void processElement(ProcessContext context) {
+              context.output(KV.of(random.nextInt(), context.element()));
+            }
+          }))
+          .apply(GroupByKey.<Integer, T>create())
+          .apply(Values.<Iterable<T>>create())
+          .apply(Flatten.<T>iterables());
+    }
+  }
+
   /**
    * An interface used by the JdbcIO Write to set the parameters of the {@link PreparedStatement}
    * used to setParameters into the database.
@@ -17,7 +17,9 @@
  */
 package org.apache.beam.sdk.io.jdbc;
 
+import static org.hamcrest.Matchers.contains;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import java.io.Serializable;
@@ -27,6 +29,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
 import org.apache.beam.sdk.coders.KvCoder;
@@ -174,6 +177,77 @@ public class JdbcIOTest implements Serializable {
     pipeline.run();
   }
 
+  @Test
+  @Category(NeedsRunner.class)
+  public void testReadWithPartitioning() throws Exception {
+    TestPipeline pipeline = TestPipeline.create();
+
+    PCollection<KV<String, Integer>> output = pipeline.apply(
+        JdbcIO.<KV<String, Integer>>read()
+            .withDataSourceConfiguration(JdbcIO.DataSourceConfiguration.create(dataSource))
+            .withQuery("select name,id from BEAM")
+            .withPartitioning("id", 100, 900, 4)
+            .withFetchSize(100)
+            .withRowMapper(new JdbcIO.RowMapper<KV<String, Integer>>() {
+              @Override
+              public KV<String, Integer> mapRow(ResultSet resultSet) throws Exception {
+                return KV.of(resultSet.getString("name"), resultSet.getInt("id"));
+              }
+            })
+            .withCoder(KvCoder.of(StringUtf8Coder.of(), BigEndianIntegerCoder.of())));
+
+    // the rows outside of the bounds are read by the first and last partitions
+    PAssert.thatSingleton(
+        output.apply("Count All", Count.<KV<String, Integer>>globally()))
+        .isEqualTo(1000L);
+
+    pipeline.run();
+  }
+
+  @Test
+  public void testPartitionQueries() throws Exception {
+    JdbcIO.Read<String> read = JdbcIO.<String>read()
+        .withQuery("select name from BEAM")
+        .withPartitioning("id", 0, 30, 3);
+
+    assertThat(read.getPartitionQueries(), contains(
+        "select * from (select name from BEAM) as beam_partition where id < 10 or id is null",
+        "select * from (select name from BEAM) as beam_partition where id >= 10 and id < 20",
+        "select * from (select name from BEAM) as beam_partition where id >= 20"));
+  }
+
+  @Test
+  public void testPartitionQueriesWithSingleValueRange() throws Exception {
+    JdbcIO.Read<String> read = JdbcIO.<String>read()
+        .withQuery("select name from BEAM")
+        .withPartitioning("id", 5, 6, 3);
+
+    // a single partition reads all rows, including those outside of the range
+    assertThat(read.getPartitionQueries(), contains("select name from BEAM"));
+  }
+
+  @Test
+  public void testPartitionQueriesWithFullRange() throws Exception {
+    JdbcIO.Read<String> read = JdbcIO.<String>read()
+        .withQuery("select name from BEAM")
+        .withPartitioning("id", Long.MIN_VALUE, Long.MAX_VALUE, 2);
+
+    assertThat(read.getPartitionQueries(), contains(
+        "select * from (select name from BEAM) as beam_partition where id < -1 or id is null",
+        "select * from (select name from BEAM) as beam_partition where id >= -1"));
+  }
+
+  @Test
+  public void testPredicateQueries() throws Exception {
+    JdbcIO.Read<String> read = JdbcIO.<String>read()
+        .withQuery("select name from BEAM")
+        .withPredicates(Arrays.asList("id < 500", "id >= 500"));
+
+    assertThat(read.getPartitionQueries(), contains(
+        "select * from (select name from BEAM) as beam_partition where id < 500",
+        "select * from (select name from BEAM) as beam_partition where id >= 500"));
+  }
+
   @Test
   @Category(NeedsRunner.class)
   public void testWrite() throws Exception {
@@ -19,7 +19,9 @@ package org.apache.beam.sdk.io.jms;
 
 import java.util.ArrayList;
 import java.util.List;
+import javax.annotation.Nullable;
 import javax.jms.Message;
+import javax.jms.Session;
 import org.apache.beam.sdk.coders.AvroCoder;
 import org.apache.beam.sdk.coders.DefaultCoder;
 import org.apache.beam.sdk.io.UnboundedSource;
@@ -27,25 +29,43 @@ import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.joda.time.Instant;
 
 /**
- * Checkpoint for an unbounded JmsIO.Read. Consists of
- * JMS destination name, and the latest message ID consumed so far.
+ * Checkpoint for an unbounded JmsIO.Read. Consists of the JMS messages read since the previous
+ * checkpoint and the session that consumed them. The messages are acknowledged once the
+ * checkpoint is finalized.
  */
 @DefaultCoder(AvroCoder.class)
 public class JmsCheckpointMark implements UnboundedSource.CheckpointMark {
 
   private final List<Message> messages = new ArrayList<>();
   private Instant oldestPendingTimestamp = BoundedWindow.TIMESTAMP_MIN_VALUE;
+  @Nullable private transient Session session;
 
   public JmsCheckpointMark() {
   }
 
+  /**
+   * Creates an empty checkpoint following a checkpoint whose newest message has the given
+   * timestamp.
+   */
+  protected JmsCheckpointMark(Instant oldestPendingTimestamp) {
+    this.oldestPendingTimestamp = oldestPendingTimestamp;
+  }
+
   protected List<Message> getMessages() {
     return this.messages;
   }
 
+  /**
+   * Sets the session that consumed the messages of this checkpoint. It is no longer used by the
+   * reader, and is closed once the checkpoint is finalized.
+   */
+  protected void setSession(Session session) {
+    this.session = session;
+  }
+
   protected void addMessage(Message message) throws Exception {
     Instant currentMessageTimestamp = new Instant(message.getJMSTimestamp());
-    if (currentMessageTimestamp.isBefore(oldestPendingTimestamp)) {
+    if (messages.isEmpty() || currentMessageTimestamp.isBefore(oldestPendingTimestamp)) {
       oldestPendingTimestamp = currentMessageTimestamp;
     }
     messages.add(message);
@@ -56,24 +76,42 @@ public class JmsCheckpointMark implements UnboundedSource.CheckpointMark {
   }
 
   /**
-   * Acknowledge all outstanding message. Since we believe that messages will be delivered in
-   * timestamp order, and acknowledged messages will not be retried, the newest message in this
-   * batch is a good bound for future messages.
+   * Returns the timestamp of the newest message in this checkpoint, or the oldest pending
+   * timestamp if there are no messages. Since we believe that messages will be delivered in
+   * timestamp order, this is a good bound for the messages read after this checkpoint.
+   */
+  protected Instant getNewestTimestamp() throws Exception {
+    if (messages.isEmpty()) {
+      return oldestPendingTimestamp;
+    }
+    return new Instant(messages.get(messages.size() - 1).getJMSTimestamp());
+  }
+
+  /**
+   * Acknowledge all outstanding messages. Acknowledging a message in a {@code CLIENT_ACKNOWLEDGE}
+   * session acknowledges all the messages consumed by the session. The session of this checkpoint
+   * only consumed the messages of this checkpoint, so only the newest message is acknowledged.
+   * The session is closed afterwards, so that messages prefetched for it are redelivered.
    */
   @Override
   public void finalizeCheckpoint() {
-    for (Message message : messages) {
-      try {
-        message.acknowledge();
-        Instant currentMessageTimestamp = new Instant(message.getJMSTimestamp());
-        if (currentMessageTimestamp.isAfter(oldestPendingTimestamp)) {
-          oldestPendingTimestamp = currentMessageTimestamp;
+    try {
+      if (!messages.isEmpty()) {
+        messages.get(messages.size() - 1).acknowledge();
+      }
+    } catch (Exception e) {
+      // the session was closed, messages will be redelivered
+    } finally {
+      messages.clear();
+      if (session != null) {
+        try {
+          session.close();
+        } catch (Exception e) {
+          // the session was already closed with the connection
         }
-      } catch (Exception e) {
-        // nothing to do
+        session = null;
       }
     }
-    messages.clear();
   }
 
 }
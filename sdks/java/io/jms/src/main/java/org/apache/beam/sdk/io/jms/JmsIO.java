@@ -28,10 +28,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.UUID;
 import javax.annotation.Nullable;
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageProducer;
 import javax.jms.Session;
@@ -48,6 +52,7 @@ import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PDone;
@@ -95,6 +100,11 @@ import org.slf4j.LoggerFactory;
  *        .withQueue("my-queue")
  *
  * }</pre>
+ *
+ * <p>Messages are sent in a transacted session, committed at the end of each bundle and every
+ * {@link Write#withMaxBatchSize(long) maxBatchSize} messages. Elements of other types than
+ * {@link String} can be written as {@link javax.jms.BytesMessage}s using
+ * {@link Write#withCoder(Coder)}.
  */
 public class JmsIO {
 
@@ -104,8 +114,8 @@ public class JmsIO {
     return new Read(null, null, null, Long.MAX_VALUE, null);
   }
 
-  public static Write write() {
-    return new Write(null, null, null);
+  public static Write<String> write() {
+    return new Write<>(null, null, null, null, Write.DEFAULT_MAX_BATCH_SIZE);
   }
 
   /**
@@ -236,8 +246,14 @@ public class JmsIO {
     public List<UnboundedJmsSource> generateInitialSplits(
         int desiredNumSplits, PipelineOptions options) throws Exception {
       List<UnboundedJmsSource> sources = new ArrayList<>();
-      for (int i = 0; i < desiredNumSplits; i++) {
-        sources.add(new UnboundedJmsSource(connectionFactory, queue, topic));
+      if (topic != null) {
+        // each subscriber of a topic receives all the messages, so it can't be split.
+        sources.add(this);
+      } else {
+        // the messages of a queue are distributed among its consumers.
+        for (int i = 0; i < desiredNumSplits; i++) {
+          sources.add(new UnboundedJmsSource(connectionFactory, queue, topic));
+        }
       }
       return sources;
     }
@@ -266,6 +282,16 @@ public class JmsIO {
 
   }
 
+  /**
+   * Reads messages from a {@code CLIENT_ACKNOWLEDGE} session with
+   * {@link MessageConsumer#receiveNoWait()}, relying on the prefetching of the JMS provider.
+   *
+   * <p>Acknowledging a message acknowledges all the messages consumed by its session. So that
+   * finalizing a checkpoint only acknowledges the messages of that checkpoint, the session and
+   * consumer are handed over to the checkpoint when it is taken, and the reader continues with a
+   * new session. Messages the provider prefetched for the old consumer but that were never
+   * received are redelivered when the checkpoint closes the old session.
+   */
   private static class UnboundedJmsReader extends UnboundedReader<JmsRecord> {
 
     private UnboundedJmsSource source;
@@ -295,23 +321,26 @@ public class JmsIO {
       try {
         this.connection = connectionFactory.createConnection();
         this.connection.start();
-        this.session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        if (source.topic != null) {
-          this.consumer = this.session.createConsumer(this.session.createTopic(source.topic));
-        } else {
-          this.consumer = this.session.createConsumer(this.session.createQueue(source.queue));
-        }
-
+        createConsumer();
         return advance();
       } catch (Exception e) {
         throw new IOException(e);
       }
     }
 
+    private void createConsumer() throws JMSException {
+      this.session = this.connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+      if (source.topic != null) {
+        this.consumer = this.session.createConsumer(this.session.createTopic(source.topic));
+      } else {
+        this.consumer = this.session.createConsumer(this.session.createQueue(source.queue));
+      }
+    }
+
     @Override
     public boolean advance() throws IOException {
       try {
-        TextMessage message = (TextMessage) this.consumer.receiveNoWait();
+        TextMessage message = (TextMessage) consumer.receiveNoWait();
 
         if (message == null) {
           currentRecord = null;
@@ -372,9 +401,24 @@ public class JmsIO {
       return currentTimestamp;
     }
 
+    /**
+     * Returns the messages read since the previous checkpoint, together with the session that
+     * consumed them. The messages read afterwards are consumed by a new session, so that
+     * finalizing this checkpoint only acknowledges the messages it includes.
+     */
     @Override
     public CheckpointMark getCheckpointMark() {
-      return checkpointMark;
+      JmsCheckpointMark mark = checkpointMark;
+      try {
+        checkpointMark = new JmsCheckpointMark(mark.getNewestTimestamp());
+        if (!mark.getMessages().isEmpty()) {
+          mark.setSession(session);
+          createConsumer();
+        }
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      return mark;
     }
 
     @Override
@@ -384,6 +428,8 @@ public class JmsIO {
 
     @Override
     public void close() throws IOException {
+      // closing the connection also closes the sessions of checkpoints that were not finalized
+      // yet, their messages are redelivered.
       try {
         if (consumer != null) {
           consumer.close();
@@ -409,97 +455,208 @@ public class JmsIO {
    * A {@link PTransform} to write to a JMS queue. See {@link JmsIO} for
    * more information on usage and configuration.
    */
-  public static class Write extends PTransform<PCollection<String>, PDone> {
+  public static class Write<T> extends PTransform<PCollection<T>, PDone> {
+
+    private static final long DEFAULT_MAX_BATCH_SIZE = 1000;
 
     protected ConnectionFactory connectionFactory;
     protected String queue;
     protected String topic;
+    @Nullable
+    protected Coder<T> coder;
+    protected long maxBatchSize;
 
-    public Write withConnectionFactory(ConnectionFactory connectionFactory) {
-      return new Write(connectionFactory, queue, topic);
+    public Write<T> withConnectionFactory(ConnectionFactory connectionFactory) {
+      return new Write<>(connectionFactory, queue, topic, coder, maxBatchSize);
     }
 
-    public Write withQueue(String queue) {
-      return new Write(connectionFactory, queue, topic);
+    public Write<T> withQueue(String queue) {
+      return new Write<>(connectionFactory, queue, topic, coder, maxBatchSize);
     }
 
-    public Write withTopic(String topic) {
-      return new Write(connectionFactory, queue, topic);
+    public Write<T> withTopic(String topic) {
+      return new Write<>(connectionFactory, queue, topic, coder, maxBatchSize);
+    }
+
+    /**
+     * Returns a new {@link Write} that writes elements of any type, encoded with the given
+     * {@link Coder} into the body of {@link BytesMessage}s. By default, elements are
+     * {@link String}s written as {@link TextMessage}s.
+     */
+    public <InputT> Write<InputT> withCoder(Coder<InputT> coder) {
+      checkNotNull(coder, "coder");
+      return new Write<>(connectionFactory, queue, topic, coder, maxBatchSize);
     }
 
-    private Write(ConnectionFactory connectionFactory, String queue, String topic) {
+    /**
+     * Returns a new {@link Write} that commits the messages sent in a bundle every
+     * {@code maxBatchSize} messages, in addition to the end of the bundle. Default is 1000.
+     */
+    public Write<T> withMaxBatchSize(long maxBatchSize) {
+      checkArgument(maxBatchSize > 0, "maxBatchSize should be positive, but was %s", maxBatchSize);
+      return new Write<>(connectionFactory, queue, topic, coder, maxBatchSize);
+    }
+
+    private Write(
+        ConnectionFactory connectionFactory,
+        String queue,
+        String topic,
+        @Nullable Coder<T> coder,
+        long maxBatchSize) {
       this.connectionFactory = connectionFactory;
       this.queue = queue;
       this.topic = topic;
+      this.coder = coder;
+      this.maxBatchSize = maxBatchSize;
     }
 
     @Override
-    public PDone apply(PCollection<String> input) {
-      input.apply(ParDo.of(new JmsWriter(connectionFactory, queue, topic)));
+    public PDone apply(PCollection<T> input) {
+      input.apply(ParDo.of(new JmsWriter<>(connectionFactory, queue, topic, coder, maxBatchSize)));
       return PDone.in(input.getPipeline());
     }
 
     @Override
-    public void validate(PCollection<String> input) {
+    public void validate(PCollection<T> input) {
       checkNotNull(connectionFactory, "ConnectionFactory is not defined");
       checkArgument((queue != null || topic != null), "Either queue or topic is required");
     }
 
-    private static class JmsWriter extends DoFn<String, Void> {
+    /**
+     * Sends the elements through a transacted session, committed every {@code maxBatchSize}
+     * messages and at the end of each bundle. The writers of a transform in a JVM share a JMS
+     * connection, each of them using its own session.
+     */
+    private static class JmsWriter<T> extends DoFn<T, Void> {
+
+      private static final Map<String, SharedConnection> SHARED_CONNECTIONS = new HashMap<>();
+
+      private static class SharedConnection {
+        private final Connection connection;
+        private int refCount = 0;
+
+        SharedConnection(Connection connection) {
+          this.connection = connection;
+        }
+      }
 
       private ConnectionFactory connectionFactory;
       private String queue;
       private String topic;
-
-      private Connection connection;
-      private Session session;
-      private MessageProducer producer;
-
-      public JmsWriter(ConnectionFactory connectionFactory, String queue, String topic) {
+      @Nullable
+      private Coder<T> coder;
+      private long maxBatchSize;
+      // identifies the connection shared by the instances of this writer.
+      private final String connectionId = UUID.randomUUID().toString();
+
+      private transient Connection connection;
+      private transient Session session;
+      private transient MessageProducer producer;
+      private transient long numUncommitted;
+
+      public JmsWriter(
+          ConnectionFactory connectionFactory,
+          String queue,
+          String topic,
+          @Nullable Coder<T> coder,
+          long maxBatchSize) {
         this.connectionFactory = connectionFactory;
         this.queue = queue;
         this.topic = topic;
+        this.coder = coder;
+        this.maxBatchSize = maxBatchSize;
       }
 
-      @StartBundle
-      public void startBundle(Context c) throws Exception {
-        if (producer == null) {
-          this.connection = connectionFactory.createConnection();
-          this.connection.start();
-          // false means we don't use JMS transaction.
-          this.session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-          Destination destination;
-          if (queue != null) {
-            destination = session.createQueue(queue);
-          } else {
-            destination = session.createTopic(topic);
-          }
-          this.producer = this.session.createProducer(destination);
+      @Setup
+      public void setup() throws JMSException {
+        connection = acquireConnection(connectionId, connectionFactory);
+        session = connection.createSession(true, Session.SESSION_TRANSACTED);
+        Destination destination;
+        if (queue != null) {
+          destination = session.createQueue(queue);
+        } else {
+          destination = session.createTopic(topic);
         }
+        producer = session.createProducer(destination);
       }
 
       @ProcessElement
       public void processElement(ProcessContext ctx) throws Exception {
-        String value = ctx.element();
+        T value = ctx.element();
 
         try {
-          TextMessage message = session.createTextMessage(value);
+          Message message;
+          if (coder == null) {
+            message = session.createTextMessage((String) value);
+          } else {
+            BytesMessage bytesMessage = session.createBytesMessage();
+            bytesMessage.writeBytes(CoderUtils.encodeToByteArray(coder, value));
+            message = bytesMessage;
+          }
           producer.send(message);
-        } catch (Exception t) {
-          finishBundle(null);
-          throw t;
+          if (++numUncommitted >= maxBatchSize) {
+            commit();
+          }
+        } catch (Exception e) {
+          session.rollback();
+          numUncommitted = 0;
+          throw e;
         }
       }
 
       @FinishBundle
       public void finishBundle(Context c) throws Exception {
-        producer.close();
-        producer = null;
-        session.close();
-        session = null;
-        connection.stop();
-        connection.close();
-        connection = null;
+        if (numUncommitted > 0) {
+          commit();
+        }
+      }
+
+      @Teardown
+      public void teardown() throws JMSException {
+        try {
+          if (producer != null) {
+            producer.close();
+            producer = null;
+          }
+          if (session != null) {
+            // rolls back any uncommitted message
+            session.close();
+            session = null;
+          }
+        } finally {
+          if (connection != null) {
+            releaseConnection(connectionId);
+            connection = null;
+          }
+        }
+      }
+
+      private void commit() throws JMSException {
+        session.commit();
+        numUncommitted = 0;
+      }
+
+      private static synchronized Connection acquireConnection(
+          String connectionId, ConnectionFactory connectionFactory) throws JMSException {
+        SharedConnection shared = SHARED_CONNECTIONS.get(connectionId);
+        if (shared == null) {
+          Connection connection = connectionFactory.createConnection();
+          connection.start();
+          shared = new SharedConnection(connection);
+          SHARED_CONNECTIONS.put(connectionId, shared);
+        }
+        shared.refCount++;
+        return shared.connection;
+      }
+
+      private static synchronized void releaseConnection(String connectionId)
+          throws JMSException {
+        SharedConnection shared = SHARED_CONNECTIONS.get(connectionId);
+        if (shared != null && --shared.refCount == 0) {
+          SHARED_CONNECTIONS.remove(connectionId);
+          shared.connection.stop();
+          shared.connection.close();
+        }
       }
     }
 
@@ -18,6 +18,9 @@
 package org.apache.beam.sdk.io.jms;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Message;
@@ -29,11 +32,17 @@ import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.BigEndianLongCoder;
+import org.apache.beam.sdk.io.UnboundedSource;
+import org.apache.beam.sdk.io.UnboundedSource.UnboundedReader;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.NeedsRunner;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Count;
 import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.values.PCollection;
 import org.junit.After;
 import org.junit.Assert;
@@ -139,4 +148,161 @@ public class JmsIOTest {
     Assert.assertEquals(100, count);
   }
 
+  @Test
+  @Category(NeedsRunner.class)
+  public void testWriteMessagesWithCoder() throws Exception {
+
+    Pipeline pipeline = TestPipeline.create();
+
+    List<Long> data = new ArrayList<>();
+    for (long i = 0; i < 100; i++) {
+      data.add(i);
+    }
+    pipeline.apply(Create.of(data))
+        .apply(JmsIO.write()
+            .withConnectionFactory(connectionFactory)
+            .withQueue("test")
+            .withCoder(BigEndianLongCoder.of())
+            .withMaxBatchSize(10));
+
+    pipeline.run();
+
+    Connection connection = connectionFactory.createConnection();
+    connection.start();
+    Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+    MessageConsumer consumer = session.createConsumer(session.createQueue("test"));
+    List<Long> received = new ArrayList<>();
+    BytesMessage message;
+    while ((message = (BytesMessage) consumer.receive(1000)) != null) {
+      byte[] bytes = new byte[(int) message.getBodyLength()];
+      message.readBytes(bytes);
+      received.add(CoderUtils.decodeFromByteArray(BigEndianLongCoder.of(), bytes));
+    }
+    connection.close();
+    Collections.sort(received);
+    Assert.assertEquals(data, received);
+  }
+
+  @Test
+  public void testCheckpointMarkAcknowledgesMessages() throws Exception {
+    Connection connection = connectionFactory.createConnection();
+    Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+    MessageProducer producer = session.createProducer(session.createQueue("test"));
+    for (int i = 0; i < 10; i++) {
+      producer.send(session.createTextMessage("Message " + i));
+    }
+    producer.close();
+    session.close();
+    connection.close();
+
+    UnboundedSource<JmsRecord, JmsCheckpointMark> source = JmsIO.read()
+        .withConnectionFactory(connectionFactory)
+        .withQueue("test")
+        .createSource();
+
+    // messages which are not acknowledged are redelivered once the reader is closed.
+    UnboundedReader<JmsRecord> reader = source.createReader(null, null);
+    Assert.assertEquals(10, readMessages(reader, 10));
+    reader.close();
+
+    reader = source.createReader(null, null);
+    Assert.assertEquals(10, readMessages(reader, 10));
+    reader.getCheckpointMark().finalizeCheckpoint();
+    reader.close();
+
+    reader = source.createReader(null, null);
+    Assert.assertEquals(0, readMessages(reader, 1));
+    reader.close();
+  }
+
+  @Test
+  public void testFinalizeOnlyAcknowledgesMessagesOfCheckpoint() throws Exception {
+    Connection connection = connectionFactory.createConnection();
+    Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+    MessageProducer producer = session.createProducer(session.createQueue("test"));
+    for (int i = 0; i < 10; i++) {
+      producer.send(session.createTextMessage("Message " + i));
+    }
+    producer.close();
+    session.close();
+    connection.close();
+
+    UnboundedSource<JmsRecord, JmsCheckpointMark> source = JmsIO.read()
+        .withConnectionFactory(connectionFactory)
+        .withQueue("test")
+        .createSource();
+
+    // the provider prefetches all the messages, but only 4 of them are emitted before the
+    // checkpoint and 3 after it
+    UnboundedReader<JmsRecord> reader = source.createReader(null, null);
+    Assert.assertEquals(4, readMessages(reader, 4));
+    UnboundedSource.CheckpointMark checkpointMark = reader.getCheckpointMark();
+    Assert.assertEquals(3, advanceMessages(reader, 3));
+    checkpointMark.finalizeCheckpoint();
+    reader.close();
+
+    // after a restart, the messages emitted after the checkpoint and the messages which were
+    // prefetched but never emitted are redelivered
+    reader = source.createReader(null, null);
+    Assert.assertEquals(6, readMessages(reader, 7));
+    reader.close();
+  }
+
+  @Test
+  public void testSplitQueueButNotTopic() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    Assert.assertEquals(4, JmsIO.read()
+        .withConnectionFactory(connectionFactory)
+        .withQueue("test")
+        .createSource()
+        .generateInitialSplits(4, options)
+        .size());
+    Assert.assertEquals(1, JmsIO.read()
+        .withConnectionFactory(connectionFactory)
+        .withTopic("test")
+        .createSource()
+        .generateInitialSplits(4, options)
+        .size());
+  }
+
+  // Advances the started reader until the expected number of messages is read or no message
+  // arrives for a while.
+  private static int advanceMessages(UnboundedReader<JmsRecord> reader, int expected)
+      throws Exception {
+    int count = 0;
+    int attempts = 0;
+    while (count < expected && attempts < 50) {
+      if (reader.advance()) {
+        count++;
+        attempts = 0;
+      } else {
+        attempts++;
+        Thread.sleep(20);
+      }
+    }
+    return count;
+  }
+
+  // Messages are delivered to the reader asynchronously, keep advancing until the expected number
+  // of messages is read or no message arrives for a while.
+  private static int readMessages(UnboundedReader<JmsRecord> reader, int expected)
+      throws Exception {
+    int count = 0;
+    int attempts = 0;
+    boolean available = reader.start();
+    while (true) {
+      if (available) {
+        if (++count == expected) {
+          return count;
+        }
+        attempts = 0;
+      } else if (++attempts == 50) {
+        return count;
+      } else {
+        Thread.sleep(20);
+      }
+      available = reader.advance();
+    }
+  }
+
 }
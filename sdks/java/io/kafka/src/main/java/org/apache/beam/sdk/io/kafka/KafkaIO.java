@@ -32,6 +32,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.io.Closeables;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -42,10 +43,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
@@ -58,8 +60,11 @@ import org.apache.beam.sdk.coders.VoidCoder;
 import org.apache.beam.sdk.io.Read.Unbounded;
 import org.apache.beam.sdk.io.UnboundedSource;
 import org.apache.beam.sdk.io.UnboundedSource.CheckpointMark;
+import org.apache.beam.sdk.io.UnboundedSource.NotifyingReader;
 import org.apache.beam.sdk.io.UnboundedSource.UnboundedReader;
 import org.apache.beam.sdk.io.kafka.KafkaCheckpointMark.PartitionMark;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.MapElements;
@@ -69,6 +74,7 @@ import org.apache.beam.sdk.transforms.SerializableFunction;
 import org.apache.beam.sdk.transforms.SimpleFunction;
 import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.ExposedByteArrayInputStream;
+import org.apache.beam.sdk.util.SerializableUtils;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
@@ -215,7 +221,8 @@ public class KafkaIO {
         Read.KAFKA_9_CONSUMER_FACTORY_FN,
         Read.DEFAULT_CONSUMER_PROPERTIES,
         Long.MAX_VALUE,
-        null);
+        null,
+        Read.DEFAULT_MAX_PENDING_BATCHES);
   }
 
   /**
@@ -258,7 +265,7 @@ public class KafkaIO {
       checkState(topicPartitions.isEmpty(), "Only topics or topicPartitions can be set, not both");
 
       return new Read<K, V>(ImmutableList.copyOf(topics), topicPartitions, keyCoder, valueCoder,
-          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime);
+          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime, maxPendingBatches);
     }
 
     /**
@@ -271,7 +278,7 @@ public class KafkaIO {
       checkState(topics.isEmpty(), "Only topics or topicPartitions can be set, not both");
 
       return new Read<K, V>(topics, ImmutableList.copyOf(topicPartitions), keyCoder, valueCoder,
-          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime);
+          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime, maxPendingBatches);
     }
 
     /**
@@ -279,7 +286,7 @@ public class KafkaIO {
      */
     public <KeyT> Read<KeyT, V> withKeyCoder(Coder<KeyT> keyCoder) {
       return new Read<KeyT, V>(topics, topicPartitions, keyCoder, valueCoder,
-          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime);
+          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime, maxPendingBatches);
     }
 
     /**
@@ -287,7 +294,7 @@ public class KafkaIO {
      */
     public <ValueT> Read<K, ValueT> withValueCoder(Coder<ValueT> valueCoder) {
       return new Read<K, ValueT>(topics, topicPartitions, keyCoder, valueCoder,
-          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime);
+          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime, maxPendingBatches);
     }
 
     /**
@@ -298,7 +305,7 @@ public class KafkaIO {
     public Read<K, V> withConsumerFactoryFn(
         SerializableFunction<Map<String, Object>, Consumer<byte[], byte[]>> consumerFactoryFn) {
       return new Read<K, V>(topics, topicPartitions, keyCoder, valueCoder,
-          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime);
+          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime, maxPendingBatches);
     }
 
     /**
@@ -310,7 +317,7 @@ public class KafkaIO {
           IGNORED_CONSUMER_PROPERTIES, configUpdates);
 
       return new Read<K, V>(topics, topicPartitions, keyCoder, valueCoder,
-          consumerFactoryFn, config, maxNumRecords, maxReadTime);
+          consumerFactoryFn, config, maxNumRecords, maxReadTime, maxPendingBatches);
     }
 
     /**
@@ -319,7 +326,7 @@ public class KafkaIO {
      */
     public Read<K, V> withMaxNumRecords(long maxNumRecords) {
       return new Read<K, V>(topics, topicPartitions, keyCoder, valueCoder,
-          consumerFactoryFn, consumerConfig, maxNumRecords, null);
+          consumerFactoryFn, consumerConfig, maxNumRecords, null, maxPendingBatches);
     }
 
     /**
@@ -330,7 +337,20 @@ public class KafkaIO {
      */
     public Read<K, V> withMaxReadTime(Duration maxReadTime) {
       return new Read<K, V>(topics, topicPartitions, keyCoder, valueCoder,
-          consumerFactoryFn, consumerConfig, Long.MAX_VALUE, maxReadTime);
+          consumerFactoryFn, consumerConfig, Long.MAX_VALUE, maxReadTime, maxPendingBatches);
+    }
+
+    /**
+     * Sets the maximum number of batches of records polled from Kafka that each reader buffers
+     * ahead of the records it has emitted. Records are decoded with the key and value coders as
+     * they are polled, so a larger number lets polling and decoding overlap with downstream
+     * processing for longer, at the cost of memory. Default is 4.
+     */
+    public Read<K, V> withMaxPendingBatches(int maxPendingBatches) {
+      checkArgument(maxPendingBatches > 0,
+          "maxPendingBatches should be positive, but was %s", maxPendingBatches);
+      return new Read<K, V>(topics, topicPartitions, keyCoder, valueCoder,
+          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime, maxPendingBatches);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////
@@ -343,12 +363,15 @@ public class KafkaIO {
         SerializableFunction<Map<String, Object>, Consumer<byte[], byte[]>> consumerFactoryFn,
         Map<String, Object> consumerConfig,
         long maxNumRecords,
-        @Nullable Duration maxReadTime) {
+        @Nullable Duration maxReadTime,
+        int maxPendingBatches) {
 
       super(topics, topicPartitions, keyCoder, valueCoder, null, null,
-          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime);
+          consumerFactoryFn, consumerConfig, maxNumRecords, maxReadTime, maxPendingBatches);
     }
 
+    private static final int DEFAULT_MAX_PENDING_BATCHES = 4;
+
     /**
      * A set of properties that are not required or don't make sense for our consumer.
      */
@@ -404,7 +427,7 @@ public class KafkaIO {
       checkNotNull(timestampFn);
       return new TypedRead<K, V>(topics, topicPartitions, keyCoder, valueCoder,
           timestampFn, watermarkFn, consumerFactoryFn, consumerConfig,
-          maxNumRecords, maxReadTime);
+          maxNumRecords, maxReadTime, maxPendingBatches);
     }
 
     /**
@@ -416,7 +439,7 @@ public class KafkaIO {
       checkNotNull(watermarkFn);
       return new TypedRead<K, V>(topics, topicPartitions, keyCoder, valueCoder,
           timestampFn, watermarkFn, consumerFactoryFn, consumerConfig,
-          maxNumRecords, maxReadTime);
+          maxNumRecords, maxReadTime, maxPendingBatches);
     }
 
     /**
@@ -473,6 +496,7 @@ public class KafkaIO {
     protected final Map<String, Object> consumerConfig;
     protected final long maxNumRecords; // bounded read, mainly for testing
     protected final Duration maxReadTime; // bounded read, mainly for testing
+    protected final int maxPendingBatches;
 
     private TypedRead(List<String> topics,
         List<TopicPartition> topicPartitions,
@@ -483,7 +507,8 @@ public class KafkaIO {
         SerializableFunction<Map<String, Object>, Consumer<byte[], byte[]>> consumerFactoryFn,
         Map<String, Object> consumerConfig,
         long maxNumRecords,
-        @Nullable Duration maxReadTime) {
+        @Nullable Duration maxReadTime,
+        int maxPendingBatches) {
       super("KafkaIO.Read");
 
       this.topics = topics;
@@ -496,6 +521,7 @@ public class KafkaIO {
       this.consumerConfig = consumerConfig;
       this.maxNumRecords = maxNumRecords;
       this.maxReadTime = maxReadTime;
+      this.maxPendingBatches = maxPendingBatches;
     }
 
     /**
@@ -514,7 +540,8 @@ public class KafkaIO {
           timestampFn,
           Optional.fromNullable(watermarkFn),
           consumerFactoryFn,
-          consumerConfig);
+          consumerConfig,
+          maxPendingBatches);
     }
 
     // utility method to convert KafkRecord<K, V> to user KV<K, V> before applying user functions
@@ -604,6 +631,7 @@ public class KafkaIO {
     private
       SerializableFunction<Map<String, Object>, Consumer<byte[], byte[]>> consumerFactoryFn;
     private final Map<String, Object> consumerConfig;
+    private final int maxPendingBatches;
 
     public UnboundedKafkaSource(
         int id,
@@ -614,7 +642,8 @@ public class KafkaIO {
         @Nullable SerializableFunction<KafkaRecord<K, V>, Instant> timestampFn,
         Optional<SerializableFunction<KafkaRecord<K, V>, Instant>> watermarkFn,
         SerializableFunction<Map<String, Object>, Consumer<byte[], byte[]>> consumerFactoryFn,
-        Map<String, Object> consumerConfig) {
+        Map<String, Object> consumerConfig,
+        int maxPendingBatches) {
 
       this.id = id;
       this.assignedPartitions = assignedPartitions;
@@ -626,6 +655,7 @@ public class KafkaIO {
       this.watermarkFn = watermarkFn;
       this.consumerFactoryFn = consumerFactoryFn;
       this.consumerConfig = consumerConfig;
+      this.maxPendingBatches = maxPendingBatches;
     }
 
     /**
@@ -698,7 +728,8 @@ public class KafkaIO {
             this.timestampFn,
             this.watermarkFn,
             this.consumerFactoryFn,
-            this.consumerConfig));
+            this.consumerConfig,
+            this.maxPendingBatches));
       }
 
       return result;
@@ -745,7 +776,8 @@ public class KafkaIO {
     }
   }
 
-  private static class UnboundedKafkaReader<K, V> extends UnboundedReader<KafkaRecord<K, V>> {
+  private static class UnboundedKafkaReader<K, V> extends UnboundedReader<KafkaRecord<K, V>>
+      implements NotifyingReader {
 
     private final UnboundedKafkaSource<K, V> source;
     private final String name;
@@ -765,10 +797,20 @@ public class KafkaIO {
     // network I/O inside poll(). Polling only inside #advance(), especially with a small timeout
     // like 100 milliseconds does not work well. This along with large receive buffer for
     // consumer achieved best throughput in tests (see `defaultConsumerProperties`).
+    // Records are decoded on this thread as well, so that decoding of a batch overlaps with
+    // processing of the batches queued before it.
     private final ExecutorService consumerPollThread = Executors.newSingleThreadExecutor();
-    private final SynchronousQueue<ConsumerRecords<byte[], byte[]>> availableRecordsQueue =
-        new SynchronousQueue<>();
+    private final BlockingQueue<PolledBatch<K, V>> availableRecordsQueue;
     private AtomicBoolean closed = new AtomicBoolean(false);
+    // set by consumer poll thread if it fails, reported by advance().
+    private volatile Exception consumerPollException;
+    // run by consumer poll thread after it enqueues a batch, may be null.
+    private volatile Runnable dataAvailableListener;
+
+    private final Distribution pendingBatches =
+        Metrics.distribution(UnboundedKafkaReader.class, "pendingBatches");
+    private final Distribution pollLatencyMillis =
+        Metrics.distribution(UnboundedKafkaReader.class, "pollLatencyMillis");
 
     // Backlog support :
     // Kafka consumer does not have an API to fetch latest offset for topic. We need to seekToEnd()
@@ -791,12 +833,40 @@ public class KafkaIO {
       return name;
     }
 
+    // a record decoded by consumer poll thread, along with its size in bytes.
+    private static class DecodedRecord<K, V> {
+      private final KafkaRecord<K, V> record;
+      private final int size;
+
+      DecodedRecord(KafkaRecord<K, V> record, int size) {
+        this.record = record;
+        this.size = size;
+      }
+    }
+
+    // a batch of records returned by a single consumer poll(), decoded and grouped by partition.
+    private static class PolledBatch<K, V> {
+      private final Map<TopicPartition, List<DecodedRecord<K, V>>> records;
+      private final long pollLatencyMillis;
+
+      PolledBatch(Map<TopicPartition, List<DecodedRecord<K, V>>> records, long pollLatencyMillis) {
+        this.records = records;
+        this.pollLatencyMillis = pollLatencyMillis;
+      }
+
+      List<DecodedRecord<K, V>> records(TopicPartition partition) {
+        List<DecodedRecord<K, V>> partitionRecords = records.get(partition);
+        return partitionRecords == null
+            ? Collections.<DecodedRecord<K, V>>emptyList() : partitionRecords;
+      }
+    }
+
     // maintains state of each assigned partition (buffered records, consumed offset, etc)
-    private static class PartitionState {
+    private class PartitionState {
       private final TopicPartition topicPartition;
       private long nextOffset;
       private long latestOffset;
-      private Iterator<ConsumerRecord<byte[], byte[]>> recordIter = Collections.emptyIterator();
+      private Iterator<DecodedRecord<K, V>> recordIter = Collections.emptyIterator();
 
       // simple moving average for size of each record in bytes
       private double avgRecordSize = 0;
@@ -840,6 +910,7 @@ public class KafkaIO {
 
       this.source = source;
       this.name = "Reader-" + source.id;
+      this.availableRecordsQueue = new ArrayBlockingQueue<>(source.maxPendingBatches);
 
       partitionStates = ImmutableList.copyOf(Lists.transform(source.assignedPartitions,
           new Function<TopicPartition, PartitionState>() {
@@ -873,42 +944,94 @@ public class KafkaIO {
       // Read in a loop and enqueue the batch of records, if any, to availableRecordsQueue
       while (!closed.get()) {
         try {
+          long pollStart = System.currentTimeMillis();
           ConsumerRecords<byte[], byte[]> records = consumer.poll(KAFKA_POLL_TIMEOUT.getMillis());
+          long pollLatency = System.currentTimeMillis() - pollStart;
           if (!records.isEmpty() && !closed.get()) {
-            availableRecordsQueue.put(records); // blocks until dequeued.
+            // blocks while the queue is full.
+            availableRecordsQueue.put(decodeBatch(records, pollLatency));
+            Runnable listener = dataAvailableListener;
+            if (listener != null) {
+              listener.run();
+            }
           }
         } catch (InterruptedException e) {
           LOG.warn("{}: consumer thread is interrupted", this, e); // not expected
           break;
         } catch (WakeupException e) {
           break;
+        } catch (IOException | RuntimeException e) {
+          LOG.error("{}: exception while reading from Kafka", this, e);
+          consumerPollException = e;
+          break;
         }
       }
 
       LOG.info("{}: Returning from consumer pool loop", this);
     }
 
-    private void nextBatch(Duration timeout) {
+    private PolledBatch<K, V> decodeBatch(ConsumerRecords<byte[], byte[]> records,
+                                          long pollLatency) throws IOException {
+      Map<TopicPartition, List<DecodedRecord<K, V>>> decoded = new HashMap<>();
+
+      for (PartitionState p : partitionStates) {
+        List<ConsumerRecord<byte[], byte[]>> rawRecords = records.records(p.topicPartition);
+        if (rawRecords.isEmpty()) {
+          continue;
+        }
+        List<DecodedRecord<K, V>> partitionRecords = new ArrayList<>(rawRecords.size());
+        for (ConsumerRecord<byte[], byte[]> rawRecord : rawRecords) {
+          // apply user coders. might want to allow skipping records that fail to decode.
+          // TODO: wrap exceptions from coders to make explicit to users
+          KafkaRecord<K, V> record = new KafkaRecord<K, V>(
+              rawRecord.topic(),
+              rawRecord.partition(),
+              rawRecord.offset(),
+              decode(rawRecord.key(), source.keyCoder),
+              decode(rawRecord.value(), source.valueCoder));
+
+          int recordSize = (rawRecord.key() == null ? 0 : rawRecord.key().length)
+              + (rawRecord.value() == null ? 0 : rawRecord.value().length);
+          partitionRecords.add(new DecodedRecord<>(record, recordSize));
+        }
+        decoded.put(p.topicPartition, partitionRecords);
+      }
+
+      return new PolledBatch<>(decoded, pollLatency);
+    }
+
+    @Override
+    public void setDataAvailableListener(Runnable listener) {
+      dataAvailableListener = listener;
+    }
+
+    private void nextBatch(Duration timeout) throws IOException {
       curBatch = Collections.emptyIterator();
 
-      ConsumerRecords<byte[], byte[]> records;
+      PolledBatch<K, V> batch;
       try {
-        records = availableRecordsQueue.poll(timeout.getMillis(),
-                                             TimeUnit.MILLISECONDS);
+        batch = availableRecordsQueue.poll(timeout.getMillis(),
+                                           TimeUnit.MILLISECONDS);
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
         LOG.warn("{}: Unexpected", this, e);
         return;
       }
 
-      if (records == null) {
+      if (batch == null) {
+        if (consumerPollException != null) {
+          throw new IOException("Exception while reading from Kafka", consumerPollException);
+        }
         return;
       }
 
+      pendingBatches.update(availableRecordsQueue.size());
+      pollLatencyMillis.update(batch.pollLatencyMillis);
+
       List<PartitionState> nonEmpty = new LinkedList<>();
 
       for (PartitionState p : partitionStates) {
-        p.recordIter = records.records(p.topicPartition).iterator();
+        p.recordIter = batch.records(p.topicPartition).iterator();
         if (p.recordIter.hasNext()) {
           nonEmpty.add(p);
         }
@@ -990,9 +1113,9 @@ public class KafkaIO {
             continue;
           }
 
-          ConsumerRecord<byte[], byte[]> rawRecord = pState.recordIter.next();
+          DecodedRecord<K, V> decoded = pState.recordIter.next();
           long expected = pState.nextOffset;
-          long offset = rawRecord.offset();
+          long offset = decoded.record.getOffset();
 
           if (offset < expected) { // -- (a)
             // this can happen when compression is enabled in Kafka (seems to be fixed in 0.10)
@@ -1012,23 +1135,12 @@ public class KafkaIO {
             LOG.info("{}: first record offset {}", name, offset);
           }
 
-          curRecord = null; // user coders below might throw.
+          curRecord = null; // user timestampFn below might throw.
 
-          // apply user coders. might want to allow skipping records that fail to decode.
-          // TODO: wrap exceptions from coders to make explicit to users
-          KafkaRecord<K, V> record = new KafkaRecord<K, V>(
-              rawRecord.topic(),
-              rawRecord.partition(),
-              rawRecord.offset(),
-              decode(rawRecord.key(), source.keyCoder),
-              decode(rawRecord.value(), source.valueCoder));
-
-          curTimestamp = source.timestampFn.apply(record);
-          curRecord = record;
+          curTimestamp = source.timestampFn.apply(decoded.record);
+          curRecord = decoded.record;
 
-          int recordSize = (rawRecord.key() == null ? 0 : rawRecord.key().length)
-              + (rawRecord.value() == null ? 0 : rawRecord.value().length);
-          pState.recordConsumed(offset, recordSize);
+          pState.recordConsumed(offset, decoded.size);
           return true;
 
         } else { // -- (b)
@@ -1135,12 +1247,12 @@ public class KafkaIO {
       boolean isShutdown = false;
 
       // Wait for threads to shutdown. Trying this a loop to handle a tiny race where poll thread
-      // might block to enqueue right after availableRecordsQueue.poll() below.
+      // might block to enqueue right after availableRecordsQueue.clear() below.
       while (!isShutdown) {
 
         consumer.wakeup();
         offsetConsumer.wakeup();
-        availableRecordsQueue.poll(); // drain unread batch, this unblocks consumer thread.
+        availableRecordsQueue.clear(); // drain unread batches, this unblocks consumer thread.
         try {
           isShutdown = consumerPollThread.awaitTermination(10, TimeUnit.SECONDS)
               && offsetFetcherThread.awaitTermination(10, TimeUnit.SECONDS);
@@ -1206,6 +1318,35 @@ public class KafkaIO {
       return new Write<K, V>(topic, keyCoder, valueCoder, config);
     }
 
+    /**
+     * Returns a new {@link Write} with the producer waiting up to {@code linger} for more records
+     * before sending a batch to Kafka (see {@link ProducerConfig#LINGER_MS_CONFIG}).
+     */
+    public Write<K, V> withLinger(Duration linger) {
+      return updateProducerProperties(
+          ImmutableMap.<String, Object>of(ProducerConfig.LINGER_MS_CONFIG, linger.getMillis()));
+    }
+
+    /**
+     * Returns a new {@link Write} with the producer batching up to {@code batchSizeBytes} of
+     * records per partition (see {@link ProducerConfig#BATCH_SIZE_CONFIG}).
+     */
+    public Write<K, V> withBatchSizeBytes(int batchSizeBytes) {
+      checkArgument(batchSizeBytes >= 0,
+          "batchSizeBytes should not be negative, but was %s", batchSizeBytes);
+      return updateProducerProperties(
+          ImmutableMap.<String, Object>of(ProducerConfig.BATCH_SIZE_CONFIG, batchSizeBytes));
+    }
+
+    /**
+     * Returns a new {@link Write} with the producer compressing batches of records with the given
+     * codec, e.g. "gzip", "snappy" or "lz4" (see {@link ProducerConfig#COMPRESSION_TYPE_CONFIG}).
+     */
+    public Write<K, V> withCompressionType(String compressionType) {
+      return updateProducerProperties(
+          ImmutableMap.<String, Object>of(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType));
+    }
+
     private Write(
         String topic,
         Coder<K> keyCoder,
@@ -1325,15 +1466,13 @@ public class KafkaIO {
     }
   }
 
-  private static class KafkaWriter<K, V> extends DoFn<KV<K, V>, Void> {
+  @VisibleForTesting
+  static class KafkaWriter<K, V> extends DoFn<KV<K, V>, Void> {
 
     @Setup
     public void setup() {
-      if (producerFactoryFnOpt.isPresent()) {
-        producer = producerFactoryFnOpt.get().apply(producerConfig);
-      } else {
-        producer = new KafkaProducer<K, V>(producerConfig);
-      }
+      producerKey = producerKey(producerConfig, producerFactoryFnOpt);
+      producer = acquireProducer(producerKey, producerConfig, producerFactoryFnOpt);
     }
 
     @ProcessElement
@@ -1354,7 +1493,7 @@ public class KafkaIO {
 
     @Teardown
     public void teardown() {
-      producer.close();
+      releaseProducer(producerKey);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////
@@ -1364,6 +1503,7 @@ public class KafkaIO {
     private final Optional<SerializableFunction<Map<String, Object>, Producer<K, V>>>
                   producerFactoryFnOpt;
 
+    private transient List<Object> producerKey = null;
     private transient Producer<K, V> producer = null;
     //private transient Callback sendCallback = new SendCallback();
     // first exception and number of failures since last invocation of checkForFailures():
@@ -1390,6 +1530,60 @@ public class KafkaIO {
       this.producerConfig.put(configForValueSerializer(), valueCoder);
     }
 
+    // Kafka producer is thread safe and batches records sent from all the threads, so all the
+    // writers in a JVM with the same configuration share a producer. This saves memory and
+    // connections to the brokers. The producer is closed when the last writer is torn down.
+    private static final Map<List<Object>, SharedProducer> SHARED_PRODUCERS = new HashMap<>();
+
+    private static class SharedProducer {
+      private final Producer<?, ?> producer;
+      private int refCount = 0;
+
+      SharedProducer(Producer<?, ?> producer) {
+        this.producer = producer;
+      }
+    }
+
+    private static List<Object> producerKey(
+        Map<String, Object> producerConfig,
+        Optional<? extends SerializableFunction<Map<String, Object>, ?>> producerFactoryFnOpt) {
+      // factory functions are deserialized for each writer, and may differ in the state they
+      // captured. compare them by their serialized form.
+      return ImmutableList.<Object>of(producerConfig,
+          producerFactoryFnOpt.isPresent()
+              ? ByteBuffer.wrap(SerializableUtils.serializeToByteArray(producerFactoryFnOpt.get()))
+              : "default");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static synchronized <KeyT, ValueT> Producer<KeyT, ValueT> acquireProducer(
+        List<Object> key,
+        Map<String, Object> producerConfig,
+        Optional<SerializableFunction<Map<String, Object>, Producer<KeyT, ValueT>>>
+            producerFactoryFnOpt) {
+      SharedProducer shared = SHARED_PRODUCERS.get(key);
+      if (shared == null) {
+        Producer<KeyT, ValueT> producer;
+        if (producerFactoryFnOpt.isPresent()) {
+          producer = producerFactoryFnOpt.get().apply(producerConfig);
+        } else {
+          producer = new KafkaProducer<KeyT, ValueT>(producerConfig);
+        }
+        shared = new SharedProducer(producer);
+        SHARED_PRODUCERS.put(key, shared);
+      }
+      shared.refCount++;
+      return (Producer<KeyT, ValueT>) shared.producer;
+    }
+
+    private static synchronized void releaseProducer(List<Object> key) {
+      SharedProducer shared = SHARED_PRODUCERS.get(key);
+      if (shared != null && --shared.refCount == 0) {
+        SHARED_PRODUCERS.remove(key);
+        shared.producer.close();
+      }
+    }
+
     private synchronized void checkForFailures() throws IOException {
       if (numSendFailures == 0) {
         return;
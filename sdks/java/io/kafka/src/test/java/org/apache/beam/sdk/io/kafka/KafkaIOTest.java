@@ -22,9 +22,12 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -36,6 +39,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
@@ -43,6 +47,8 @@ import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.Pipeline.PipelineExecutionException;
 import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
 import org.apache.beam.sdk.coders.BigEndianLongCoder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.CustomCoder;
 import org.apache.beam.sdk.io.Read;
 import org.apache.beam.sdk.io.UnboundedSource;
 import org.apache.beam.sdk.io.UnboundedSource.UnboundedReader;
@@ -69,10 +75,12 @@ import org.apache.kafka.clients.consumer.MockConsumer;
 import org.apache.kafka.clients.consumer.OffsetResetStrategy;
 import org.apache.kafka.clients.producer.MockProducer;
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.hamcrest.collection.IsIterableContainingInAnyOrder;
+import org.joda.time.Duration;
 import org.joda.time.Instant;
 import org.junit.Rule;
 import org.junit.Test;
@@ -507,6 +515,79 @@ public class KafkaIOTest {
     assertThat(actual, IsIterableContainingInAnyOrder.containsInAnyOrder(expected.toArray()));
   }
 
+  /**
+   * A coder that fails to decode values larger than the given threshold.
+   */
+  private static class FailingLongCoder extends CustomCoder<Long> {
+    private final long maxValue;
+
+    FailingLongCoder(long maxValue) {
+      this.maxValue = maxValue;
+    }
+
+    @Override
+    public void encode(Long value, OutputStream outStream, Context context) throws IOException {
+      BigEndianLongCoder.of().encode(value, outStream, context);
+    }
+
+    @Override
+    public Long decode(InputStream inStream, Context context) throws IOException {
+      Long value = BigEndianLongCoder.of().decode(inStream, context);
+      if (value > maxValue) {
+        throw new CoderException("Failed to decode " + value);
+      }
+      return value;
+    }
+  }
+
+  @Test
+  public void testUnboundedReaderReportsDecodingFailure() throws Exception {
+    // With a single pending batch, the consumer poll thread blocks until the reader consumed the
+    // previous batch. Verify that all the records are read, and that a failure to decode a record
+    // on the poll thread is reported by the reader.
+    int numElements = 100;
+    List<String> topics = ImmutableList.of("topic_a", "topic_b");
+
+    UnboundedSource<KafkaRecord<Integer, Long>, KafkaCheckpointMark> source = KafkaIO.read()
+        .withBootstrapServers("none")
+        .withTopics(topics)
+        .withConsumerFactoryFn(new ConsumerFactoryFn(
+            topics, 10, numElements, OffsetResetStrategy.EARLIEST))
+        .withKeyCoder(BigEndianIntegerCoder.of())
+        .withValueCoder(new FailingLongCoder(numElements))
+        .withMaxPendingBatches(1)
+        .makeSource()
+        .generateInitialSplits(1, PipelineOptionsFactory.fromArgs(new String[0]).create())
+        .get(0);
+
+    UnboundedReader<KafkaRecord<Integer, Long>> reader = source.createReader(null, null);
+    reader.start();
+    for (int i = 1; i < numElements; ++i) {
+      advanceOnce(reader);
+    }
+    reader.close();
+
+    source = KafkaIO.read()
+        .withBootstrapServers("none")
+        .withTopics(topics)
+        .withConsumerFactoryFn(new ConsumerFactoryFn(
+            topics, 10, numElements, OffsetResetStrategy.EARLIEST))
+        .withKeyCoder(BigEndianIntegerCoder.of())
+        .withValueCoder(new FailingLongCoder(numElements / 2))
+        .withMaxPendingBatches(1)
+        .makeSource()
+        .generateInitialSplits(1, PipelineOptionsFactory.fromArgs(new String[0]).create())
+        .get(0);
+
+    reader = source.createReader(null, null);
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Exception while reading from Kafka");
+    reader.start();
+    while (true) {
+      advanceOnce(reader);
+    }
+  }
+
   @Test
   public void testSink() throws Exception {
     // Simply read from kafka source and write to kafka sink. Then verify the records
@@ -621,6 +702,77 @@ public class KafkaIOTest {
     }
   }
 
+  @Test
+  public void testSinkProducerProperties() {
+    KafkaIO.Write<byte[], byte[]> write = KafkaIO.write()
+        .withBootstrapServers("none")
+        .withTopic("test")
+        .withLinger(Duration.millis(20))
+        .withBatchSizeBytes(64 * 1024)
+        .withCompressionType("snappy");
+
+    assertEquals(20L, write.producerConfig.get(ProducerConfig.LINGER_MS_CONFIG));
+    assertEquals(64 * 1024, write.producerConfig.get(ProducerConfig.BATCH_SIZE_CONFIG));
+    assertEquals("snappy", write.producerConfig.get(ProducerConfig.COMPRESSION_TYPE_CONFIG));
+  }
+
+  @Test
+  public void testWritersShareProducer() {
+    Map<String, Object> producerConfig = ImmutableMap.<String, Object>of(
+        ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "testWritersShareProducer");
+    Optional<SerializableFunction<Map<String, Object>, Producer<Integer, Long>>> factoryFn =
+        Optional.<SerializableFunction<Map<String, Object>, Producer<Integer, Long>>>of(
+            new CountingProducerFactoryFn("shared"));
+    KafkaIO.KafkaWriter<Integer, Long> first = new KafkaIO.KafkaWriter<>("test",
+        BigEndianIntegerCoder.of(), BigEndianLongCoder.of(), producerConfig, factoryFn);
+    KafkaIO.KafkaWriter<Integer, Long> second = new KafkaIO.KafkaWriter<>("test",
+        BigEndianIntegerCoder.of(), BigEndianLongCoder.of(), producerConfig, factoryFn);
+
+    CountingProducerFactoryFn.CREATED.set(0);
+    CountingProducerFactoryFn.CLOSED.set(0);
+
+    first.setup();
+    second.setup();
+    assertEquals(1, CountingProducerFactoryFn.CREATED.get());
+
+    first.teardown();
+    assertEquals(0, CountingProducerFactoryFn.CLOSED.get());
+    second.teardown();
+    assertEquals(1, CountingProducerFactoryFn.CLOSED.get());
+
+    // the closed producer is not handed out again
+    first.setup();
+    assertEquals(2, CountingProducerFactoryFn.CREATED.get());
+    first.teardown();
+    assertEquals(2, CountingProducerFactoryFn.CLOSED.get());
+  }
+
+  @Test
+  public void testWritersWithDifferentFactoryStateDoNotShareProducer() {
+    Map<String, Object> producerConfig = ImmutableMap.<String, Object>of(
+        ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "testWritersWithDifferentFactoryState");
+    KafkaIO.KafkaWriter<Integer, Long> first = new KafkaIO.KafkaWriter<>("test",
+        BigEndianIntegerCoder.of(), BigEndianLongCoder.of(), producerConfig,
+        Optional.<SerializableFunction<Map<String, Object>, Producer<Integer, Long>>>of(
+            new CountingProducerFactoryFn("first")));
+    KafkaIO.KafkaWriter<Integer, Long> second = new KafkaIO.KafkaWriter<>("test",
+        BigEndianIntegerCoder.of(), BigEndianLongCoder.of(), producerConfig,
+        Optional.<SerializableFunction<Map<String, Object>, Producer<Integer, Long>>>of(
+            new CountingProducerFactoryFn("second")));
+
+    CountingProducerFactoryFn.CREATED.set(0);
+    CountingProducerFactoryFn.CLOSED.set(0);
+
+    first.setup();
+    second.setup();
+    assertEquals(2, CountingProducerFactoryFn.CREATED.get());
+
+    first.teardown();
+    assertEquals(1, CountingProducerFactoryFn.CLOSED.get());
+    second.teardown();
+    assertEquals(2, CountingProducerFactoryFn.CLOSED.get());
+  }
+
   private static void verifyProducerRecords(String topic, int numElements, boolean keyIsAbsent) {
 
     // verify that appropriate messages are written to kafka
@@ -685,6 +837,42 @@ public class KafkaIOTest {
     }
   }
 
+  /**
+   * Creates producers that count how many of them were created and closed. Factories with
+   * different names stand for factories that captured different state.
+   */
+  private static class CountingProducerFactoryFn
+    implements SerializableFunction<Map<String, Object>, Producer<Integer, Long>> {
+
+    private static final AtomicInteger CREATED = new AtomicInteger();
+    private static final AtomicInteger CLOSED = new AtomicInteger();
+
+    private final String name;
+
+    CountingProducerFactoryFn(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+
+    @Override
+    public Producer<Integer, Long> apply(Map<String, Object> config) {
+      CREATED.incrementAndGet();
+      return new MockProducer<Integer, Long>(
+          true,
+          new KafkaIO.CoderBasedKafkaSerializer<Integer>(),
+          new KafkaIO.CoderBasedKafkaSerializer<Long>()) {
+        @Override
+        public void close() {
+          CLOSED.incrementAndGet();
+        }
+      };
+    }
+  }
+
   private static class InjectedErrorException extends RuntimeException {
     public InjectedErrorException(String message) {
       super(message);
@@ -21,9 +21,12 @@ package org.apache.beam.sdk.io.kinesis;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import org.apache.beam.sdk.io.UnboundedSource;
 import org.joda.time.Instant;
 import org.slf4j.Logger;
@@ -31,16 +34,19 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * Reads data from multiple kinesis shards in a single thread.
- * It uses simple round robin algorithm when fetching data from shards.
+ * Reads data from multiple kinesis shards.
+ * Records of all shards are prefetched in parallel by a pool of background threads, while
+ * the reader itself consumes them in a single thread, using simple round robin algorithm.
  */
 class KinesisReader extends UnboundedSource.UnboundedReader<KinesisRecord> {
     private static final Logger LOG = LoggerFactory.getLogger(KinesisReader.class);
+    private static final int MAX_FETCHER_THREADS = 8;
 
     private final SimplifiedKinesisClient kinesis;
     private final UnboundedSource<KinesisRecord, ?> source;
     private final CheckpointGenerator initialCheckpointGenerator;
     private RoundRobin<ShardRecordsIterator> shardIterators;
+    private ScheduledExecutorService fetcherExecutor;
     private CustomOptional<KinesisRecord> currentRecord = CustomOptional.absent();
 
     public KinesisReader(SimplifiedKinesisClient kinesis,
@@ -67,6 +73,7 @@ class KinesisReader extends UnboundedSource.UnboundedReader<KinesisRecord> {
                 iterators.add(checkpoint.getShardRecordsIterator(kinesis));
             }
             shardIterators = new RoundRobin<>(iterators);
+            startPrefetching(iterators);
         } catch (TransientKinesisException e) {
             throw new IOException(e);
         }
@@ -74,6 +81,18 @@ class KinesisReader extends UnboundedSource.UnboundedReader<KinesisRecord> {
         return advance();
     }
 
+    private void startPrefetching(List<ShardRecordsIterator> iterators) {
+        fetcherExecutor = Executors.newScheduledThreadPool(
+                Math.max(1, Math.min(iterators.size(), MAX_FETCHER_THREADS)),
+                new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("kinesis-fetcher-%d")
+                        .build());
+        for (ShardRecordsIterator iterator : iterators) {
+            iterator.startPrefetching(fetcherExecutor);
+        }
+    }
+
     /**
      * Moves to the next record in one of the shards.
      * If current shard iterator can be move forward (i.e. there's a record present) then we do it.
@@ -119,6 +138,9 @@ class KinesisReader extends UnboundedSource.UnboundedReader<KinesisRecord> {
 
     @Override
     public void close() throws IOException {
+        if (fetcherExecutor != null) {
+            fetcherExecutor.shutdownNow();
+        }
     }
 
     /**
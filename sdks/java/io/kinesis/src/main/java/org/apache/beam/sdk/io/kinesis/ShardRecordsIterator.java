@@ -17,11 +17,19 @@
  */
 package org.apache.beam.sdk.io.kinesis;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Queues.newArrayDeque;
+import static com.google.common.base.Preconditions.checkState;
 
 import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
-import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,15 +37,39 @@ import org.slf4j.LoggerFactory;
  * Iterates over records in a single shard.
  * Under the hood records are retrieved from Kinesis in batches and stored in the in-memory queue.
  * Then the caller of {@link ShardRecordsIterator#next()} can read from queue one by one.
+ *
+ * <p>By default, records are retrieved by the caller of {@link ShardRecordsIterator#next()} when
+ * the queue is empty. Once {@link ShardRecordsIterator#startPrefetching} was called, records are
+ * instead retrieved in the background, for as long as the data of the records in the queue takes
+ * less than {@link ShardRecordsIterator#DEFAULT_PREFETCH_CAPACITY_BYTES} bytes.
  */
 class ShardRecordsIterator {
     private static final Logger LOG = LoggerFactory.getLogger(ShardRecordsIterator.class);
 
+    /** Default maximum size of the data of the records held in the queue when prefetching. */
+    static final long DEFAULT_PREFETCH_CAPACITY_BYTES = 4L * 1024 * 1024;
+    /** Maximum number of records Kinesis returns for a single request. */
+    private static final int MAX_RECORDS_PER_REQUEST = 10000;
+    private static final long EMPTY_FETCH_DELAY_MILLIS = 200;
+    private static final long TRANSIENT_FAILURE_DELAY_MILLIS = 1000;
+
     private final SimplifiedKinesisClient kinesis;
     private final RecordFilter filter;
+    private final Queue<KinesisRecord> data = new ConcurrentLinkedQueue<>();
+    private final AtomicLong dataBytes = new AtomicLong();
+    private final long prefetchCapacityBytes;
+    /** Totals of the records retrieved so far, used to estimate the size of a record. */
+    private long fetchedBytes;
+    private long fetchedRecords;
+    /** Position after the last record returned by {@link #next()}. */
     private ShardCheckpoint checkpoint;
+    /** Position after the last record retrieved from Kinesis. */
+    private ShardCheckpoint fetchCheckpoint;
     private String shardIterator;
-    private Deque<KinesisRecord> data = newArrayDeque();
+
+    private ScheduledExecutorService prefetchExecutor;
+    private final AtomicBoolean fetchScheduled = new AtomicBoolean();
+    private volatile RuntimeException prefetchFailure;
 
     public ShardRecordsIterator(final ShardCheckpoint initialCheckpoint,
                                 SimplifiedKinesisClient simplifiedKinesisClient) throws
@@ -49,24 +81,55 @@ class ShardRecordsIterator {
                                 SimplifiedKinesisClient simplifiedKinesisClient,
                                 RecordFilter filter) throws
             TransientKinesisException {
+        this(initialCheckpoint, simplifiedKinesisClient, filter, DEFAULT_PREFETCH_CAPACITY_BYTES);
+    }
+
+    ShardRecordsIterator(final ShardCheckpoint initialCheckpoint,
+                         SimplifiedKinesisClient simplifiedKinesisClient,
+                         RecordFilter filter,
+                         long prefetchCapacityBytes) throws
+            TransientKinesisException {
 
+        checkArgument(prefetchCapacityBytes > 0,
+                "prefetchCapacityBytes must be positive, but was %s", prefetchCapacityBytes);
+        this.prefetchCapacityBytes = prefetchCapacityBytes;
         this.checkpoint = checkNotNull(initialCheckpoint, "initialCheckpoint");
+        this.fetchCheckpoint = checkpoint;
         this.filter = checkNotNull(filter, "filter");
         this.kinesis = checkNotNull(simplifiedKinesisClient, "simplifiedKinesisClient");
         shardIterator = checkpoint.getShardIterator(kinesis);
     }
 
+    /**
+     * Starts retrieving records from Kinesis in the background, using the given executor.
+     * The executor is owned by the caller, who should shut it down once done reading.
+     */
+    public void startPrefetching(ScheduledExecutorService executor) {
+        checkState(prefetchExecutor == null, "Prefetching was already started");
+        prefetchExecutor = checkNotNull(executor, "executor");
+        fetchScheduled.set(true);
+        prefetchExecutor.execute(new FetchTask());
+    }
+
     /**
      * Returns record if there's any present.
      * Returns absent() if there are no new records at this time in the shard.
      */
     public CustomOptional<KinesisRecord> next() throws TransientKinesisException {
-        readMoreIfNecessary();
+        if (prefetchExecutor == null) {
+            readMoreIfNecessary();
+        } else {
+            if (prefetchFailure != null) {
+                throw prefetchFailure;
+            }
+            resumePrefetchingIfNecessary();
+        }
 
-        if (data.isEmpty()) {
+        KinesisRecord record = data.poll();
+        if (record == null) {
             return CustomOptional.absent();
         } else {
-            KinesisRecord record = data.removeFirst();
+            dataBytes.addAndGet(-sizeOf(record));
             checkpoint = checkpoint.moveAfter(record);
             return CustomOptional.of(record);
         }
@@ -74,25 +137,112 @@ class ShardRecordsIterator {
 
     private void readMoreIfNecessary() throws TransientKinesisException {
         if (data.isEmpty()) {
-            GetKinesisRecordsResult response;
-            try {
-                response = kinesis.getRecords(shardIterator, checkpoint.getStreamName(),
-                        checkpoint.getShardId());
-            } catch (ExpiredIteratorException e) {
-                LOG.info("Refreshing expired iterator", e);
-                shardIterator = checkpoint.getShardIterator(kinesis);
-                response = kinesis.getRecords(shardIterator, checkpoint.getStreamName(),
-                        checkpoint.getShardId());
-            }
-            LOG.debug("Fetched {} new records", response.getRecords().size());
-            shardIterator = response.getNextShardIterator();
-            data.addAll(filter.apply(response.getRecords(), checkpoint));
+            fetch(null);
+        }
+    }
+
+    /**
+     * Fetching stops when the queue is full, and is resumed once it was drained by half.
+     */
+    private void resumePrefetchingIfNecessary() {
+        if (dataBytes.get() <= prefetchCapacityBytes / 2
+                && fetchScheduled.compareAndSet(false, true)) {
+            prefetchExecutor.execute(new FetchTask());
+        }
+    }
+
+    /**
+     * Retrieves the next batch of records from Kinesis into the queue, requesting at most
+     * {@code limit} records if not null.
+     *
+     * @return number of records added to the queue
+     */
+    private int fetch(Integer limit) throws TransientKinesisException {
+        GetKinesisRecordsResult response;
+        try {
+            response = getRecords(limit);
+        } catch (ExpiredIteratorException e) {
+            LOG.info("Refreshing expired iterator", e);
+            shardIterator = fetchCheckpoint.getShardIterator(kinesis);
+            response = getRecords(limit);
+        }
+        LOG.debug("Fetched {} new records", response.getRecords().size());
+        shardIterator = response.getNextShardIterator();
+        List<KinesisRecord> records = filter.apply(response.getRecords(), fetchCheckpoint);
+        long recordsBytes = 0;
+        for (KinesisRecord record : records) {
+            fetchCheckpoint = fetchCheckpoint.moveAfter(record);
+            recordsBytes += sizeOf(record);
+        }
+        fetchedBytes += recordsBytes;
+        fetchedRecords += records.size();
+        data.addAll(records);
+        dataBytes.addAndGet(recordsBytes);
+        return records.size();
+    }
+
+    private static long sizeOf(KinesisRecord record) {
+        return record.getData().remaining();
+    }
+
+    /**
+     * Returns how many records to request so that their data fits in the given number of bytes,
+     * judging by the average size of the records retrieved so far. Before any record was
+     * retrieved, this is as many as a single request allows; Kinesis limits the size of a
+     * response as well.
+     */
+    private int recordsLimit(long remainingBytes) {
+        if (fetchedRecords == 0) {
+            return MAX_RECORDS_PER_REQUEST;
         }
+        long averageRecordBytes = Math.max(1, fetchedBytes / fetchedRecords);
+        return (int) Math.max(1,
+                Math.min(MAX_RECORDS_PER_REQUEST, remainingBytes / averageRecordBytes));
+    }
+
+    private GetKinesisRecordsResult getRecords(Integer limit) throws TransientKinesisException {
+        if (limit == null) {
+            return kinesis.getRecords(shardIterator, fetchCheckpoint.getStreamName(),
+                    fetchCheckpoint.getShardId());
+        }
+        return kinesis.getRecords(shardIterator, fetchCheckpoint.getStreamName(),
+                fetchCheckpoint.getShardId(), limit);
     }
 
     public ShardCheckpoint getCheckpoint() {
         return checkpoint;
     }
 
-
+    /**
+     * Retrieves records in the background, and reschedules itself until the queue is full.
+     * The number of records requested is limited by the remaining capacity of the queue.
+     */
+    private class FetchTask implements Runnable {
+        @Override
+        public void run() {
+            long delayMillis;
+            try {
+                long remainingBytes = prefetchCapacityBytes - dataBytes.get();
+                if (remainingBytes <= 0) {
+                    // resumed by next() once the queue was drained
+                    fetchScheduled.set(false);
+                    return;
+                }
+                int fetched = fetch(recordsLimit(remainingBytes));
+                delayMillis = fetched > 0 ? 0 : EMPTY_FETCH_DELAY_MILLIS;
+            } catch (TransientKinesisException e) {
+                LOG.warn("Transient exception occurred", e);
+                delayMillis = TRANSIENT_FAILURE_DELAY_MILLIS;
+            } catch (RuntimeException e) {
+                LOG.error("Failed to fetch records from Kinesis", e);
+                prefetchFailure = e;
+                return;
+            }
+            try {
+                prefetchExecutor.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Stopped prefetching, executor was shut down");
+            }
+        }
+    }
 }
@@ -21,12 +21,19 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -46,6 +53,7 @@ public class ShardRecordsIteratorTest {
     private static final String THIRD_ITERATOR = "THIRD_ITERATOR";
     private static final String STREAM_NAME = "STREAM_NAME";
     private static final String SHARD_ID = "SHARD_ID";
+    private static final int RECORD_BYTES = 100;
 
     @Mock
     private SimplifiedKinesisClient kinesisClient;
@@ -66,6 +74,10 @@ public class ShardRecordsIteratorTest {
         when(firstCheckpoint.getStreamName()).thenReturn(STREAM_NAME);
         when(firstCheckpoint.getShardId()).thenReturn(SHARD_ID);
 
+        for (KinesisRecord record : asList(a, b, c, d)) {
+            when(record.getData()).thenReturn(ByteBuffer.wrap(new byte[RECORD_BYTES]));
+        }
+
         when(firstCheckpoint.moveAfter(a)).thenReturn(aCheckpoint);
         when(aCheckpoint.moveAfter(b)).thenReturn(bCheckpoint);
         when(aCheckpoint.getStreamName()).thenReturn(STREAM_NAME);
@@ -142,6 +154,74 @@ public class ShardRecordsIteratorTest {
         assertThat(iterator.next()).isEqualTo(CustomOptional.absent());
     }
 
+    @Test
+    public void prefetchesRecordsInBackground() throws Exception {
+        when(firstResult.getRecords()).thenReturn(asList(a, b));
+        when(secondResult.getRecords()).thenReturn(singletonList(c));
+        when(kinesisClient.getRecords(eq(INITIAL_ITERATOR), eq(STREAM_NAME), eq(SHARD_ID),
+                anyInt())).thenReturn(firstResult);
+        when(kinesisClient.getRecords(eq(SECOND_ITERATOR), eq(STREAM_NAME), eq(SHARD_ID),
+                anyInt())).thenReturn(secondResult);
+        when(kinesisClient.getRecords(eq(THIRD_ITERATOR), eq(STREAM_NAME), eq(SHARD_ID),
+                anyInt())).thenReturn(thirdResult);
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            iterator.startPrefetching(executor);
+
+            assertThat(nextPrefetched()).isEqualTo(CustomOptional.of(a));
+            assertThat(iterator.getCheckpoint()).isEqualTo(aCheckpoint);
+            assertThat(nextPrefetched()).isEqualTo(CustomOptional.of(b));
+            assertThat(iterator.getCheckpoint()).isEqualTo(bCheckpoint);
+            assertThat(nextPrefetched()).isEqualTo(CustomOptional.of(c));
+            assertThat(iterator.getCheckpoint()).isEqualTo(cCheckpoint);
+            assertThat(iterator.next()).isEqualTo(CustomOptional.absent());
+            assertThat(iterator.getCheckpoint()).isEqualTo(cCheckpoint);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void stopsPrefetchingWhenQueueIsFull() throws Exception {
+        when(firstResult.getRecords()).thenReturn(asList(a, b));
+        when(secondResult.getRecords()).thenReturn(singletonList(c));
+        when(kinesisClient.getRecords(eq(INITIAL_ITERATOR), eq(STREAM_NAME), eq(SHARD_ID),
+                anyInt())).thenReturn(firstResult);
+        when(kinesisClient.getRecords(eq(SECOND_ITERATOR), eq(STREAM_NAME), eq(SHARD_ID),
+                anyInt())).thenReturn(secondResult);
+        when(kinesisClient.getRecords(eq(THIRD_ITERATOR), eq(STREAM_NAME), eq(SHARD_ID),
+                anyInt())).thenReturn(thirdResult);
+        iterator = new ShardRecordsIterator(firstCheckpoint, kinesisClient, recordFilter,
+                2 * RECORD_BYTES);
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            iterator.startPrefetching(executor);
+            Thread.sleep(500);
+            // the queue is full after the first request
+            verify(kinesisClient, never()).getRecords(eq(SECOND_ITERATOR), eq(STREAM_NAME),
+                    eq(SHARD_ID), anyInt());
+
+            assertThat(nextPrefetched()).isEqualTo(CustomOptional.of(a));
+            assertThat(nextPrefetched()).isEqualTo(CustomOptional.of(b));
+            assertThat(nextPrefetched()).isEqualTo(CustomOptional.of(c));
+            // once drained by half, only as many records as fit in the queue are requested
+            verify(kinesisClient).getRecords(SECOND_ITERATOR, STREAM_NAME, SHARD_ID, 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CustomOptional<KinesisRecord> nextPrefetched() throws Exception {
+        CustomOptional<KinesisRecord> record = iterator.next();
+        for (int i = 0; i < 100 && !record.isPresent(); ++i) {
+            Thread.sleep(50);
+            record = iterator.next();
+        }
+        return record;
+    }
+
     private static class IdentityAnswer implements Answer<Object> {
         @Override
         public Object answer(InvocationOnMock invocation) throws Throwable {
@@ -20,6 +20,7 @@ package org.apache.beam.sdk.io.mongodb;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.io.ByteStreams;
 import com.mongodb.DB;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
@@ -29,14 +30,18 @@ import com.mongodb.gridfs.GridFS;
 import com.mongodb.gridfs.GridFSDBFile;
 import com.mongodb.util.JSON;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 
 import javax.annotation.Nullable;
 
@@ -84,6 +89,10 @@ import org.joda.time.Instant;
  * the file as the timestamp.
  * When using a parser that outputs with custom timestamps, you may also need to specify
  * the allowedTimestampSkew option.</p>
+ *
+ * <p>Files larger than the desired bundle size are split on chunk boundaries and their sections
+ * are read in parallel when the parser is a {@code SplittableParser}, as the default text parser
+ * is. Other parsers always receive whole files.</p>
  */
 public class MongoDbGridFSIO {
 
@@ -115,25 +124,86 @@ public class MongoDbGridFSIO {
     void parse(GridFSDBFile input, ParserCallback<T> callback) throws IOException;
   }
 
+  /**
+   * A {@link Parser} that can also parse a section of a file, allowing large files to be split on
+   * chunk boundaries and read in parallel.
+   *
+   * <p>As with {@link org.apache.beam.sdk.io.FileBasedSource}, a section owns the records starting
+   * within {@code [startOffset, endOffset)}: when resuming from a non-zero offset, the parser must
+   * skip the partial record it lands in, and it may read past {@code endOffset} to complete its
+   * last record.
+   * @param <T>
+   */
+  public interface SplittableParser<T> extends Parser<T> {
+    void parse(GridFSDBFile input, long startOffset, long endOffset, ParserCallback<T> callback)
+        throws IOException;
+  }
+
   /**
    * For the default {@code Read<String>} case, this is the parser that is used to
-   * split the input file into Strings. It uses the timestamp of the file
+   * split the input file into UTF-8 Strings. It uses the timestamp of the file
    * for the event timestamp.
    */
-  private static final Parser<String> TEXT_PARSER = new Parser<String>() {
+  private static final Parser<String> TEXT_PARSER = new SplittableParser<String>() {
     @Override
     public void parse(GridFSDBFile input, ParserCallback<String> callback)
         throws IOException {
+      parse(input, 0, input.getLength(), callback);
+    }
+
+    @Override
+    public void parse(GridFSDBFile input, long startOffset, long endOffset,
+        ParserCallback<String> callback) throws IOException {
       final Instant time = new Instant(input.getUploadDate().getTime());
-      try (BufferedReader reader =
-        new BufferedReader(new InputStreamReader(input.getInputStream()))) {
-        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-          callback.output(line, time);
+      try (PushbackInputStream stream =
+          new PushbackInputStream(new BufferedInputStream(input.getInputStream()))) {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long position = 0;
+        if (startOffset > 0) {
+          // the line holding the byte just before the section belongs to the previous section
+          ByteStreams.skipFully(stream, startOffset - 1);
+          position = startOffset - 1 + readLine(stream, line);
+        }
+        while (position < endOffset) {
+          line.reset();
+          long consumed = readLine(stream, line);
+          if (consumed == 0) {
+            break;
+          }
+          position += consumed;
+          callback.output(new String(line.toByteArray(), StandardCharsets.UTF_8), time);
         }
       }
     }
   };
 
+  /**
+   * Reads the bytes of the next line, without its line terminator, and returns the number of
+   * bytes consumed from the stream. As with {@link java.io.BufferedReader#readLine()}, a line is
+   * terminated by a line feed, a carriage return, or a carriage return followed by a line feed.
+   */
+  private static long readLine(PushbackInputStream stream, ByteArrayOutputStream line)
+      throws IOException {
+    long consumed = 0;
+    for (int b = stream.read(); b != -1; b = stream.read()) {
+      consumed++;
+      if (b == '\n') {
+        break;
+      }
+      if (b == '\r') {
+        int next = stream.read();
+        if (next == '\n') {
+          consumed++;
+        } else if (next != -1) {
+          stream.unread(next);
+        }
+        break;
+      }
+      line.write(b);
+    }
+    return consumed;
+  }
+
   /** Read data from GridFS. Default behavior with String. */
   public static Read<String> read() {
     return new AutoValue_MongoDbGridFSIO_Read.Builder<String>().build()
@@ -217,10 +287,10 @@ public class MongoDbGridFSIO {
     @Override
     public PCollection<T> apply(PBegin input) {
       final BoundedGridFSSource source = new BoundedGridFSSource(this, null);
-      org.apache.beam.sdk.io.Read.Bounded<ObjectId> objectIds =
+      org.apache.beam.sdk.io.Read.Bounded<ChunkRange> ranges =
           org.apache.beam.sdk.io.Read.from(source);
-      PCollection<T> output = input.getPipeline().apply(objectIds)
-          .apply(ParDo.of(new DoFn<ObjectId, T>() {
+      PCollection<T> output = input.getPipeline().apply(ranges)
+          .apply(ParDo.of(new DoFn<ChunkRange, T>() {
             Mongo mongo;
             GridFS gridfs;
 
@@ -237,9 +307,9 @@ public class MongoDbGridFSIO {
 
             @ProcessElement
             public void processElement(final ProcessContext c) throws IOException {
-              ObjectId oid = c.element();
-              GridFSDBFile file = gridfs.find(oid);
-              parser().parse(file, new ParserCallback<T>() {
+              ChunkRange range = c.element();
+              GridFSDBFile file = gridfs.find(range.getId());
+              ParserCallback<T> callback = new ParserCallback<T>() {
                 @Override
                 public void output(T output, Instant timestamp) {
                   checkNotNull(timestamp);
@@ -250,7 +320,13 @@ public class MongoDbGridFSIO {
                 public void output(T output) {
                   c.output(output);
                 }
-              });
+              };
+              if (range.getStartOffset() == 0 && range.getEndOffset() >= file.getLength()) {
+                parser().parse(file, callback);
+              } else {
+                ((SplittableParser<T>) parser()).parse(
+                    file, range.getStartOffset(), range.getEndOffset(), callback);
+              }
             }
 
             @Override
@@ -264,19 +340,66 @@ public class MongoDbGridFSIO {
       return output;
     }
 
+    /**
+     * A section of a GridFS file, starting on a chunk boundary.
+     */
+    static class ChunkRange implements Serializable {
+      private final ObjectId id;
+      private final long startOffset;
+      private final long endOffset;
+
+      ChunkRange(ObjectId id, long startOffset, long endOffset) {
+        this.id = id;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+      }
+
+      ObjectId getId() {
+        return id;
+      }
+
+      long getStartOffset() {
+        return startOffset;
+      }
+
+      long getEndOffset() {
+        return endOffset;
+      }
+
+      @Override
+      public boolean equals(Object other) {
+        if (!(other instanceof ChunkRange)) {
+          return false;
+        }
+        ChunkRange that = (ChunkRange) other;
+        return id.equals(that.id) && startOffset == that.startOffset
+            && endOffset == that.endOffset;
+      }
+
+      @Override
+      public int hashCode() {
+        return Objects.hash(id, startOffset, endOffset);
+      }
+
+      @Override
+      public String toString() {
+        return id + "[" + startOffset + ", " + endOffset + ")";
+      }
+    }
+
     /**
      * A {@link BoundedSource} for MongoDB GridFS.
      */
-    protected static class BoundedGridFSSource extends BoundedSource<ObjectId> {
+    protected static class BoundedGridFSSource extends BoundedSource<ChunkRange> {
 
       private Read spec;
 
       @Nullable
-      private List<ObjectId> objectIds;
+      private List<ChunkRange> ranges;
 
-      BoundedGridFSSource(Read spec, List<ObjectId> objectIds) {
+      BoundedGridFSSource(Read spec, List<ChunkRange> ranges) {
         this.spec = spec;
-        this.objectIds = objectIds;
+        this.ranges = ranges;
       }
 
       private Mongo setupMongo() {
@@ -297,24 +420,36 @@ public class MongoDbGridFSIO {
       }
 
       @Override
-      public List<? extends BoundedSource<ObjectId>> splitIntoBundles(long desiredBundleSizeBytes,
-          PipelineOptions options) throws Exception {
+      public List<? extends BoundedSource<ChunkRange>> splitIntoBundles(
+          long desiredBundleSizeBytes, PipelineOptions options) throws Exception {
         Mongo mongo = setupMongo();
         try {
           GridFS gridfs = setupGridFS(mongo);
           DBCursor cursor = createCursor(gridfs);
+          boolean splittable = spec.parser() instanceof SplittableParser;
           long size = 0;
           List<BoundedGridFSSource> list = new ArrayList<>();
-          List<ObjectId> objects = new ArrayList<>();
+          List<ChunkRange> objects = new ArrayList<>();
           while (cursor.hasNext()) {
             GridFSDBFile file = (GridFSDBFile) cursor.next();
+            ObjectId id = (ObjectId) file.getId();
             long len = file.getLength();
+            if (splittable && len > desiredBundleSizeBytes) {
+              // sections hold whole chunks, so each reader only fetches the chunks it parses
+              long chunkSize = file.getChunkSize();
+              long sectionSize = Math.max(1L, desiredBundleSizeBytes / chunkSize) * chunkSize;
+              for (long start = 0; start < len; start += sectionSize) {
+                ChunkRange range = new ChunkRange(id, start, Math.min(len, start + sectionSize));
+                list.add(new BoundedGridFSSource(spec, Collections.singletonList(range)));
+              }
+              continue;
+            }
             if ((size + len) > desiredBundleSizeBytes && !objects.isEmpty()) {
               list.add(new BoundedGridFSSource(spec, objects));
               size = 0;
               objects = new ArrayList<>();
             }
-            objects.add((ObjectId) file.getId());
+            objects.add(new ChunkRange(id, 0, len));
             size += len;
           }
           if (!objects.isEmpty() || list.isEmpty()) {
@@ -328,6 +463,13 @@ public class MongoDbGridFSIO {
 
       @Override
       public long getEstimatedSizeBytes(PipelineOptions options) throws Exception {
+        if (ranges != null) {
+          long size = 0;
+          for (ChunkRange range : ranges) {
+            size += range.getEndOffset() - range.getStartOffset();
+          }
+          return size;
+        }
         Mongo mongo = setupMongo();
         try {
           GridFS gridfs = setupGridFS(mongo);
@@ -349,9 +491,9 @@ public class MongoDbGridFSIO {
       }
 
       @Override
-      public BoundedSource.BoundedReader<ObjectId> createReader(
+      public BoundedSource.BoundedReader<ChunkRange> createReader(
           PipelineOptions options) throws IOException {
-        return new GridFSReader(this, objectIds);
+        return new GridFSReader(this, ranges);
       }
 
       @Override
@@ -364,33 +506,33 @@ public class MongoDbGridFSIO {
       }
 
       @Override
-      public Coder<ObjectId> getDefaultOutputCoder() {
-        return SerializableCoder.of(ObjectId.class);
+      public Coder<ChunkRange> getDefaultOutputCoder() {
+        return SerializableCoder.of(ChunkRange.class);
       }
 
-      static class GridFSReader extends BoundedSource.BoundedReader<ObjectId> {
+      static class GridFSReader extends BoundedSource.BoundedReader<ChunkRange> {
         final BoundedGridFSSource source;
 
-        /* When split into bundles, this records the ObjectId's of the files for
-         * this bundle.  Otherwise, this is null.  When null, a DBCursor of the
+        /* When split into bundles, this records the file sections for this
+         * bundle.  Otherwise, this is null.  When null, a DBCursor of the
          * files is used directly to avoid having the ObjectId's queried and
          * loaded ahead of time saving time and memory.
          */
         @Nullable
-        final List<ObjectId> objects;
+        final List<ChunkRange> objects;
 
         Mongo mongo;
         DBCursor cursor;
-        Iterator<ObjectId> iterator;
-        ObjectId current;
+        Iterator<ChunkRange> iterator;
+        ChunkRange current;
 
-        GridFSReader(BoundedGridFSSource source, List<ObjectId> objects) {
+        GridFSReader(BoundedGridFSSource source, List<ChunkRange> objects) {
           this.source = source;
           this.objects = objects;
         }
 
         @Override
-        public BoundedSource<ObjectId> getCurrentSource() {
+        public BoundedSource<ChunkRange> getCurrentSource() {
           return source;
         }
 
@@ -413,7 +555,7 @@ public class MongoDbGridFSIO {
             return true;
           } else if (cursor != null && cursor.hasNext()) {
             GridFSDBFile file = (GridFSDBFile) cursor.next();
-            current = (ObjectId) file.getId();
+            current = new ChunkRange((ObjectId) file.getId(), 0, file.getLength());
             return true;
           }
           current = null;
@@ -421,7 +563,7 @@ public class MongoDbGridFSIO {
         }
 
         @Override
-        public ObjectId getCurrent() throws NoSuchElementException {
+        public ChunkRange getCurrent() throws NoSuchElementException {
           if (current == null) {
             throw new NoSuchElementException();
           }
@@ -432,7 +574,7 @@ public class MongoDbGridFSIO {
           if (current == null) {
             throw new NoSuchElementException();
           }
-          long time = current.getTimestamp();
+          long time = current.getId().getTimestamp();
           time *= 1000L;
           return new Instant(time);
         }
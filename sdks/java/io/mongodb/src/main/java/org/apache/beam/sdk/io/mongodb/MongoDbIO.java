@@ -21,14 +21,31 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.mongodb.BasicDBObject;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.SerializableCoder;
@@ -42,6 +59,8 @@ import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PDone;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,8 +88,14 @@ import org.slf4j.LoggerFactory;
  *
  * }</pre>
  *
- * <p>The source also accepts an optional configuration: {@code withFilter()} allows you to
- * define a JSON filter to get subset of data.</p>
+ * <p>The source also accepts optional configuration: {@code withFilter()} allows you to
+ * define a JSON filter to get subset of data, {@code withProjection()} to read only some fields
+ * of the documents, {@code withSort()} to sort them and {@code withCursorBatchSize()} to set the
+ * number of documents fetched by each round trip. The filter, projection and sort are applied by
+ * MongoDB.</p>
+ *
+ * <p>The collection is split into bundles on the {@code _id} field, or on another indexed field
+ * set with {@code withSplitField()}.</p>
  *
  * <h3>Writing to MongoDB</h3>
  *
@@ -97,12 +122,21 @@ public class MongoDbIO {
 
   /** Read data from MongoDB. */
   public static Read read() {
-    return new AutoValue_MongoDbIO_Read.Builder().setNumSplits(0).build();
+    return new AutoValue_MongoDbIO_Read.Builder()
+        .setNumSplits(0)
+        .setSplitField("_id")
+        .setCursorBatchSize(0)
+        .build();
   }
 
   /** Write data to MongoDB. */
   public static Write write() {
-    return new AutoValue_MongoDbIO_Write.Builder().setBatchSize(1024L).build();
+    return new AutoValue_MongoDbIO_Write.Builder()
+        .setBatchSize(1024L)
+        .setBatchSizeBytes(8L * 1024L * 1024L)
+        .setMaxConcurrentFlushes(4)
+        .setUpsert(true)
+        .build();
   }
 
   private MongoDbIO() {
@@ -117,7 +151,11 @@ public class MongoDbIO {
     @Nullable abstract String database();
     @Nullable abstract String collection();
     @Nullable abstract String filter();
+    @Nullable abstract String projection();
+    @Nullable abstract String sort();
     abstract int numSplits();
+    abstract String splitField();
+    abstract int cursorBatchSize();
 
     abstract Builder toBuilder();
 
@@ -127,7 +165,11 @@ public class MongoDbIO {
       abstract Builder setDatabase(String database);
       abstract Builder setCollection(String collection);
       abstract Builder setFilter(String filter);
+      abstract Builder setProjection(String projection);
+      abstract Builder setSort(String sort);
       abstract Builder setNumSplits(int numSplits);
+      abstract Builder setSplitField(String splitField);
+      abstract Builder setCursorBatchSize(int cursorBatchSize);
       abstract Read build();
     }
 
@@ -154,11 +196,48 @@ public class MongoDbIO {
       return toBuilder().setFilter(filter).build();
     }
 
+    /**
+     * Define a JSON projection, e.g. {@code {"name": 1, "age": 1}}, to read only some fields of
+     * the documents. The projection is applied by MongoDB, so the other fields are not
+     * transferred.
+     */
+    public Read withProjection(String projection) {
+      checkNotNull(projection);
+      return toBuilder().setProjection(projection).build();
+    }
+
+    /**
+     * Define a JSON sort order of the documents, e.g. {@code {"age": -1}}, within each split.
+     */
+    public Read withSort(String sort) {
+      checkNotNull(sort);
+      return toBuilder().setSort(sort).build();
+    }
+
     public Read withNumSplits(int numSplits) {
       checkArgument(numSplits >= 0);
       return toBuilder().setNumSplits(numSplits).build();
     }
 
+    /**
+     * Define the field used to split the collection into bundles. The field must be indexed.
+     * Default is {@code _id}.
+     */
+    public Read withSplitField(String splitField) {
+      checkNotNull(splitField);
+      return toBuilder().setSplitField(splitField).build();
+    }
+
+    /**
+     * Define the number of documents returned by each batch of the cursor. Default is 0, meaning
+     * that MongoDB chooses the batch size.
+     */
+    public Read withCursorBatchSize(int cursorBatchSize) {
+      checkArgument(cursorBatchSize >= 0,
+          "cursorBatchSize should not be negative, but was %s", cursorBatchSize);
+      return toBuilder().setCursorBatchSize(cursorBatchSize).build();
+    }
+
     @Override
     public PCollection<Document> apply(PBegin input) {
       return input.apply(org.apache.beam.sdk.io.Read.from(new BoundedMongoDbSource(this)));
@@ -178,11 +257,15 @@ public class MongoDbIO {
       builder.add(DisplayData.item("database", database()));
       builder.add(DisplayData.item("collection", collection()));
       builder.addIfNotNull(DisplayData.item("filter", filter()));
+      builder.addIfNotNull(DisplayData.item("projection", projection()));
+      builder.addIfNotNull(DisplayData.item("sort", sort()));
       builder.add(DisplayData.item("numSplit", numSplits()));
+      builder.add(DisplayData.item("splitField", splitField()));
+      builder.add(DisplayData.item("cursorBatchSize", cursorBatchSize()));
     }
   }
 
-  private static class BoundedMongoDbSource extends BoundedSource<Document> {
+  static class BoundedMongoDbSource extends BoundedSource<Document> {
     private Read spec;
 
     private BoundedMongoDbSource(Read spec) {
@@ -214,30 +297,59 @@ public class MongoDbIO {
       return new BoundedMongoDbReader(this);
     }
 
+    /**
+     * Estimates the size from the collection statistics. When the source reads a subset of the
+     * collection, the size is estimated as the number of matching documents times the average
+     * document size.
+     */
     @Override
     public long getEstimatedSizeBytes(PipelineOptions pipelineOptions) {
-      MongoClient mongoClient = new MongoClient();
-      MongoDatabase mongoDatabase = mongoClient.getDatabase(spec.database());
+      MongoClient mongoClient = new MongoClient(new MongoClientURI(spec.uri()));
+      try {
+        return getEstimatedSizeBytes(mongoClient.getDatabase(spec.database()));
+      } finally {
+        mongoClient.close();
+      }
+    }
 
+    private long getEstimatedSizeBytes(MongoDatabase mongoDatabase) {
       // get the Mongo collStats object
       // it gives the size for the entire collection
       BasicDBObject stat = new BasicDBObject();
       stat.append("collStats", spec.collection());
       Document stats = mongoDatabase.runCommand(stat);
-      return Long.valueOf(stats.get("size").toString());
+      long size = Long.valueOf(stats.get("size").toString());
+      if (spec.filter() == null) {
+        return size;
+      }
+      Object avgObjSize = stats.get("avgObjSize");
+      if (avgObjSize == null) {
+        // empty collection
+        return size;
+      }
+      long count = mongoDatabase.getCollection(spec.collection())
+          .count(Document.parse(spec.filter()));
+      return (long) (count * Double.valueOf(avgObjSize.toString()));
     }
 
     @Override
     public List<BoundedSource<Document>> splitIntoBundles(long desiredBundleSizeBytes,
                                                 PipelineOptions options) {
-      MongoClient mongoClient = new MongoClient();
-      MongoDatabase mongoDatabase = mongoClient.getDatabase(spec.database());
+      MongoClient mongoClient = new MongoClient(new MongoClientURI(spec.uri()));
+      try {
+        return splitIntoBundles(desiredBundleSizeBytes, mongoClient.getDatabase(spec.database()));
+      } finally {
+        mongoClient.close();
+      }
+    }
 
+    private List<BoundedSource<Document>> splitIntoBundles(long desiredBundleSizeBytes,
+                                                           MongoDatabase mongoDatabase) {
       List<Document> splitKeys;
       if (spec.numSplits() > 0) {
         // the user defines his desired number of splits
         // calculate the batch size
-        long estimatedSizeBytes = getEstimatedSizeBytes(options);
+        long estimatedSizeBytes = getEstimatedSizeBytes(mongoDatabase);
         desiredBundleSizeBytes = estimatedSizeBytes / spec.numSplits();
       }
 
@@ -250,7 +362,7 @@ public class MongoDbIO {
       // we use Mongo splitVector command to get the split keys
       BasicDBObject splitVectorCommand = new BasicDBObject();
       splitVectorCommand.append("splitVector", spec.database() + "." + spec.collection());
-      splitVectorCommand.append("keyPattern", new BasicDBObject().append("_id", 1));
+      splitVectorCommand.append("keyPattern", new BasicDBObject().append(spec.splitField(), 1));
       splitVectorCommand.append("force", false);
       // maxChunkSize is the Mongo partition size in MB
       LOGGER.debug("Splitting in chunk of {} MB", desiredBundleSizeBytes / 1024 / 1024);
@@ -264,15 +376,41 @@ public class MongoDbIO {
         sources.add(this);
         return sources;
       }
+      if (!haveSameType(splitKeys, spec.splitField())) {
+        LOGGER.warn("Split keys on {} have values of different types, using an unique source",
+            spec.splitField());
+        sources.add(this);
+        return sources;
+      }
 
-      LOGGER.debug("Number of splits is {}", splitKeys.size());
-      for (String shardFilter : splitKeysToFilters(splitKeys, spec.filter())) {
+      LOGGER.debug("Number of splits is {}", splitKeys.size() + 1);
+      for (String shardFilter : splitKeysToFilters(splitKeys, spec.splitField(), spec.filter())) {
         sources.add(new BoundedMongoDbSource(spec.withFilter(shardFilter)));
       }
 
       return sources;
     }
 
+    /**
+     * Returns whether the split keys have non-null values of the same BSON type, so that MongoDB
+     * can compare documents with all of them. Numbers of all types are compared with each other.
+     */
+    private static boolean haveSameType(List<Document> splitKeys, String splitField) {
+      Class<?> type = null;
+      for (Document splitKey : splitKeys) {
+        Object value = splitKey.get(splitField);
+        if (value == null) {
+          return false;
+        }
+        Class<?> valueType = value instanceof Number ? Number.class : value.getClass();
+        if (type != null && !type.equals(valueType)) {
+          return false;
+        }
+        type = valueType;
+      }
+      return true;
+    }
+
     /**
      * Transform a list of split keys as a list of filters containing corresponding range.
      *
@@ -286,50 +424,45 @@ public class MongoDbIO {
      * <p>This method will generate a list of range filters performing the following splits:
      * <ul>
      *   <li>from the beginning of the collection up to _id 56, so basically data with
-     *   _id lower than 56</li>
-     *   <li>from _id 57 up to _id 109</li>
-     *   <li>from _id 110 up to _id 256</li>
-     *   <li>from _id 257 up to the end of the collection, so basically data with _id greater
-     *   than 257</li>
+     *   _id lower than 56, or without an _id of the type of the split keys</li>
+     *   <li>from _id 56 (included) up to _id 109 (excluded)</li>
+     *   <li>from _id 109 (included) up to _id 256 (excluded)</li>
+     *   <li>from _id 256 (included) up to the end of the collection</li>
      * </ul>
      *
+     * <p>MongoDB only compares values of the same BSON type, so the first range is expressed as
+     * "not greater than or equal to the first split key". It includes the documents that lack the
+     * split field or have a value of another type, which no range would match otherwise. The split
+     * keys must have values of the same type.
+     *
      * @param splitKeys The list of split keys.
+     * @param splitField The field the split keys are defined on.
      * @param additionalFilter A custom (user) additional filter to append to the range filters.
      * @return A list of filters containing the ranges.
      */
-    private static List<String> splitKeysToFilters(List<Document> splitKeys, String
-        additionalFilter) {
+    @VisibleForTesting
+    static List<String> splitKeysToFilters(List<Document> splitKeys, String splitField,
+        @Nullable String additionalFilter) {
       ArrayList<String> filters = new ArrayList<>();
-      String lowestBound = null; // lower boundary (previous split in the iteration)
-      for (int i = 0; i < splitKeys.size(); i++) {
-        String splitKey = splitKeys.get(i).toString();
-        String rangeFilter = null;
+      for (int i = 0; i <= splitKeys.size(); i++) {
+        Document range = new Document();
         if (i == 0) {
-          // this is the first split in the list, the filter defines
-          // the range from the beginning up to this split
-          rangeFilter = String.format("{ $and: [ {\"_id\":{$lte:Objectd(\"%s\")}}",
-              splitKey);
-        } else if (i == splitKeys.size() - 1) {
-          // this is the last split in the list, the filter defines
-          // the range from the split up to the end
-          rangeFilter = String.format("{ $and: [ {\"_id\":{$gt:ObjectId(\"%s\")}}",
-              splitKey);
+          range.append("$not", new Document("$gte", splitKeys.get(0).get(splitField)));
         } else {
-          // we are between two splits
-          rangeFilter = String.format("{ $and: [ {\"_id\":{$gt:ObjectId(\"%s\"),"
-              + "$lte:ObjectId(\"%s\")}}", lowestBound, splitKey);
+          range.append("$gte", splitKeys.get(i - 1).get(splitField));
+          if (i < splitKeys.size()) {
+            range.append("$lt", splitKeys.get(i).get(splitField));
+          }
         }
+        Document rangeFilter = new Document(splitField, range);
+
         if (additionalFilter != null && !additionalFilter.isEmpty()) {
           // user provided a filter, we append the user filter to the range filter
-          rangeFilter = String.format("%s,%s ]}", rangeFilter, additionalFilter);
-        } else {
-          // user didn't provide a filter, just cleany close the range filter
-          rangeFilter = String.format("%s ]}", rangeFilter);
+          rangeFilter = new Document("$and",
+              Arrays.asList(rangeFilter, Document.parse(additionalFilter)));
         }
 
-        filters.add(rangeFilter);
-
-        lowestBound = splitKey;
+        filters.add(rangeFilter.toJson());
       }
       return filters;
     }
@@ -355,12 +488,22 @@ public class MongoDbIO {
 
       MongoCollection<Document> mongoCollection = mongoDatabase.getCollection(spec.collection());
 
+      FindIterable<Document> find;
       if (spec.filter() == null) {
-        cursor = mongoCollection.find().iterator();
+        find = mongoCollection.find();
       } else {
-        Document bson = Document.parse(spec.filter());
-        cursor = mongoCollection.find(bson).iterator();
+        find = mongoCollection.find(Document.parse(spec.filter()));
       }
+      if (spec.projection() != null) {
+        find = find.projection(Document.parse(spec.projection()));
+      }
+      if (spec.sort() != null) {
+        find = find.sort(Document.parse(spec.sort()));
+      }
+      if (spec.cursorBatchSize() > 0) {
+        find = find.batchSize(spec.cursorBatchSize());
+      }
+      cursor = find.iterator();
 
       return advance();
     }
@@ -405,6 +548,17 @@ public class MongoDbIO {
 
   /**
    * A {@link PTransform} to write to a MongoDB database.
+   *
+   * <p>Documents are written in unordered bulk writes, flushed once a batch reaches
+   * {@link #withBatchSize(long) batchSize} documents or
+   * {@link #withBatchSizeBytes(long) batchSizeBytes} of BSON, whichever comes first. Up to
+   * {@link #withMaxConcurrentFlushes(int) maxConcurrentFlushes} batches are written concurrently,
+   * so the order in which documents are written is not guaranteed.
+   *
+   * <p>By default documents are inserted. When a {@link #withKeyField(String) keyField} is set,
+   * each document replaces the document with the same value of this field, and is inserted if there
+   * is no such document unless {@link #withUpsert(boolean) upsert} is disabled. Documents without
+   * a value for the key field are then rejected.
    */
   @AutoValue
   public abstract static class Write extends PTransform<PCollection<Document>, PDone> {
@@ -412,6 +566,10 @@ public class MongoDbIO {
     @Nullable abstract String database();
     @Nullable abstract String collection();
     abstract long batchSize();
+    abstract long batchSizeBytes();
+    abstract int maxConcurrentFlushes();
+    @Nullable abstract String keyField();
+    abstract boolean upsert();
 
     abstract Builder toBuilder();
 
@@ -421,6 +579,10 @@ public class MongoDbIO {
       abstract Builder setDatabase(String database);
       abstract Builder setCollection(String collection);
       abstract Builder setBatchSize(long batchSize);
+      abstract Builder setBatchSizeBytes(long batchSizeBytes);
+      abstract Builder setMaxConcurrentFlushes(int maxConcurrentFlushes);
+      abstract Builder setKeyField(String keyField);
+      abstract Builder setUpsert(boolean upsert);
       abstract Write build();
     }
 
@@ -437,9 +599,44 @@ public class MongoDbIO {
     }
 
     public Write withBatchSize(long batchSize) {
+      checkArgument(batchSize > 0, "batchSize should be positive, but was %s", batchSize);
       return toBuilder().setBatchSize(batchSize).build();
     }
 
+    /**
+     * Define the maximum size in bytes of the BSON documents written in a single bulk write.
+     */
+    public Write withBatchSizeBytes(long batchSizeBytes) {
+      checkArgument(batchSizeBytes > 0,
+          "batchSizeBytes should be positive, but was %s", batchSizeBytes);
+      return toBuilder().setBatchSizeBytes(batchSizeBytes).build();
+    }
+
+    /**
+     * Define the maximum number of bulk writes in flight for each writer.
+     */
+    public Write withMaxConcurrentFlushes(int maxConcurrentFlushes) {
+      checkArgument(maxConcurrentFlushes > 0,
+          "maxConcurrentFlushes should be positive, but was %s", maxConcurrentFlushes);
+      return toBuilder().setMaxConcurrentFlushes(maxConcurrentFlushes).build();
+    }
+
+    /**
+     * Replace the documents having the same value of {@code keyField} instead of inserting.
+     */
+    public Write withKeyField(String keyField) {
+      checkNotNull(keyField);
+      return toBuilder().setKeyField(keyField).build();
+    }
+
+    /**
+     * Define if documents are inserted when there is no document to replace with the same value
+     * of {@link #withKeyField(String) keyField}. Default is true.
+     */
+    public Write withUpsert(boolean upsert) {
+      return toBuilder().setUpsert(upsert).build();
+    }
+
     @Override
     public PDone apply(PCollection<Document> input) {
       input.apply(ParDo.of(new WriteFn(this)));
@@ -456,8 +653,13 @@ public class MongoDbIO {
 
     private static class WriteFn extends DoFn<Document, Void> {
       private final Write spec;
-      private MongoClient client;
-      private List<Document> batch;
+      private transient MongoClient client;
+      private transient MongoCollection<RawBsonDocument> mongoCollection;
+      private transient Codec<Document> documentCodec;
+      private transient ExecutorService flushExecutor;
+      private transient List<WriteModel<RawBsonDocument>> batch;
+      private transient long batchBytes;
+      private transient Deque<Future<?>> pendingFlushes;
 
       public WriteFn(Write spec) {
         this.spec = spec;
@@ -466,37 +668,96 @@ public class MongoDbIO {
       @Setup
       public void createMongoClient() throws Exception {
         client = new MongoClient(new MongoClientURI(spec.uri()));
+        mongoCollection = client.getDatabase(spec.database())
+            .getCollection(spec.collection(), RawBsonDocument.class);
+        // encodes the values that the client supports, such as DBObject and DBRef
+        documentCodec = mongoCollection.getCodecRegistry().get(Document.class);
+        flushExecutor = Executors.newFixedThreadPool(spec.maxConcurrentFlushes());
+        pendingFlushes = new ArrayDeque<>();
       }
 
       @StartBundle
       public void startBundle(Context ctx) throws Exception {
         batch = new ArrayList<>();
+        batchBytes = 0;
       }
 
       @ProcessElement
       public void processElement(ProcessContext ctx) throws Exception {
-        // Need to copy the document because mongoCollection.insertMany() will mutate it
-        // before inserting (will assign an id).
-        batch.add(new Document(ctx.element()));
-        if (batch.size() >= spec.batchSize()) {
-          finishBundle(ctx);
+        Document document = ctx.element();
+        if (spec.keyField() != null) {
+          // a filter on a missing or null key would match and replace an arbitrary document
+          checkArgument(document.get(spec.keyField()) != null,
+              "Document has no value for the key field %s: %s", spec.keyField(), document);
+        }
+        // encoded once, to measure the batch and to write it. The element is not mutated, the
+        // server assigns the ids of inserted documents which have none.
+        RawBsonDocument encoded = new RawBsonDocument(document, documentCodec);
+        batch.add(toWriteModel(document, encoded));
+        batchBytes += encoded.getByteBuffer().remaining();
+        if (batch.size() >= spec.batchSize() || batchBytes >= spec.batchSizeBytes()) {
+          flush();
         }
       }
 
       @FinishBundle
       public void finishBundle(Context ctx) throws Exception {
-        MongoDatabase mongoDatabase = client.getDatabase(spec.database());
-        MongoCollection<Document> mongoCollection = mongoDatabase.getCollection(spec.collection());
+        flush();
+        while (!pendingFlushes.isEmpty()) {
+          waitForOldestFlush();
+        }
+      }
+
+      private WriteModel<RawBsonDocument> toWriteModel(
+          Document document, RawBsonDocument encoded) {
+        if (spec.keyField() == null) {
+          return new InsertOneModel<>(encoded);
+        }
+        return new ReplaceOneModel<>(
+            Filters.eq(spec.keyField(), document.get(spec.keyField())),
+            encoded,
+            new UpdateOptions().upsert(spec.upsert()));
+      }
 
-        mongoCollection.insertMany(batch);
+      private void flush() throws Exception {
+        if (batch.isEmpty()) {
+          return;
+        }
+        // bounds the number of bulk writes in flight
+        if (pendingFlushes.size() >= spec.maxConcurrentFlushes()) {
+          waitForOldestFlush();
+        }
+        final List<WriteModel<RawBsonDocument>> models = batch;
+        pendingFlushes.add(flushExecutor.submit(new Runnable() {
+          @Override
+          public void run() {
+            mongoCollection.bulkWrite(models, new BulkWriteOptions().ordered(false));
+          }
+        }));
+        batch = new ArrayList<>();
+        batchBytes = 0;
+      }
 
-        batch.clear();
+      private void waitForOldestFlush() throws Exception {
+        try {
+          pendingFlushes.poll().get();
+        } catch (ExecutionException e) {
+          // the bundle fails, drop the other flushes: they are retried with the bundle.
+          pendingFlushes.clear();
+          Throwables.propagateIfPossible(e.getCause(), Exception.class);
+          throw e;
+        }
       }
 
       @Teardown
       public void closeMongoClient() throws Exception {
-        client.close();
-        client = null;
+        flushExecutor.shutdown();
+        try {
+          flushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } finally {
+          client.close();
+          client = null;
+        }
       }
     }
   }
@@ -45,6 +45,9 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
@@ -54,6 +57,7 @@ import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.io.BoundedSource;
 import org.apache.beam.sdk.io.mongodb.MongoDbGridFSIO.Read.BoundedGridFSSource;
+import org.apache.beam.sdk.io.mongodb.MongoDbGridFSIO.Read.ChunkRange;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.NeedsRunner;
@@ -65,7 +69,6 @@ import org.apache.beam.sdk.transforms.Max;
 import org.apache.beam.sdk.transforms.SerializableFunction;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
-import org.bson.types.ObjectId;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 import org.junit.AfterClass;
@@ -153,6 +156,19 @@ public class MongoDBGridFSIOTest implements Serializable {
       writer.flush();
       writer.close();
     }
+
+    gridfs = new GridFS(database, "chunkBucket");
+    out = new ByteArrayOutputStream();
+    for (int x = 0; x < 2000; x++) {
+      out.write(("line " + x + "\n").getBytes());
+    }
+    gridfs.createFile(new ByteArrayInputStream(out.toByteArray()), "large").save(1024);
+
+    gridfs = new GridFS(database, "crlfBucket");
+    // the carriage return and the line feed ending the first line are in different chunks
+    byte[] crlfLines =
+        "abcdefghijklmno\r\nsecond line\r\nthird\r\n".getBytes(StandardCharsets.UTF_8);
+    gridfs.createFile(new ByteArrayInputStream(crlfLines), "crlf").save(16);
     client.close();
   }
 
@@ -253,7 +269,7 @@ public class MongoDBGridFSIOTest implements Serializable {
 
     // make sure 2 files can fit in
     long desiredBundleSizeBytes = (src.getEstimatedSizeBytes(options) * 2L) / 5L + 1000;
-    List<? extends BoundedSource<ObjectId>> splits = src.splitIntoBundles(
+    List<? extends BoundedSource<ChunkRange>> splits = src.splitIntoBundles(
         desiredBundleSizeBytes, options);
 
     int expectedNbSplits = 3;
@@ -262,8 +278,8 @@ public class MongoDBGridFSIOTest implements Serializable {
       assertSourcesEqualReferenceSource(src, splits, options);
     int nonEmptySplits = 0;
     int count = 0;
-    for (BoundedSource<ObjectId> subSource : splits) {
-      List<ObjectId> result = SourceTestUtils.readFromSource(subSource, options);
+    for (BoundedSource<ChunkRange> subSource : splits) {
+      List<ChunkRange> result = SourceTestUtils.readFromSource(subSource, options);
       if (result.size() > 0) {
         nonEmptySplits += 1;
       }
@@ -273,4 +289,108 @@ public class MongoDBGridFSIOTest implements Serializable {
     assertEquals(5, count);
   }
 
+  @Test
+  public void testSplitLargeFileOnChunkBoundaries() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    MongoDbGridFSIO.Read<String> read = MongoDbGridFSIO.<String>read()
+        .withUri("mongodb://localhost:" + PORT)
+        .withDatabase(DATABASE)
+        .withBucket("chunkBucket");
+
+    BoundedGridFSSource src = new BoundedGridFSSource(read, null);
+    long fileSize = src.getEstimatedSizeBytes(options);
+
+    // sections of four 1024 bytes chunks
+    List<? extends BoundedSource<ChunkRange>> splits = src.splitIntoBundles(4096, options);
+    assertEquals((fileSize + 4095) / 4096, splits.size());
+
+    Mongo client = new Mongo("localhost", PORT);
+    try {
+      GridFS gridfs = new GridFS(client.getDB(DATABASE), "chunkBucket");
+      MongoDbGridFSIO.SplittableParser<String> parser =
+          (MongoDbGridFSIO.SplittableParser<String>) read.parser();
+      final List<String> lines = new ArrayList<>();
+      long size = 0;
+      for (BoundedSource<ChunkRange> subSource : splits) {
+        size += subSource.getEstimatedSizeBytes(options);
+        for (ChunkRange range : SourceTestUtils.readFromSource(subSource, options)) {
+          assertEquals(0, range.getStartOffset() % 4096);
+          parser.parse(gridfs.find(range.getId()), range.getStartOffset(), range.getEndOffset(),
+              new MongoDbGridFSIO.ParserCallback<String>() {
+                @Override
+                public void output(String output) {
+                  lines.add(output);
+                }
+
+                @Override
+                public void output(String output, Instant timestamp) {
+                  lines.add(output);
+                }
+              });
+        }
+      }
+      assertEquals(fileSize, size);
+
+      // every line is read exactly once, even when it straddles two sections
+      assertEquals(2000, lines.size());
+      for (int x = 0; x < 2000; x++) {
+        assertEquals("line " + x, lines.get(x));
+      }
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  public void testSplitCrlfLinesOnChunkBoundaries() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    MongoDbGridFSIO.Read<String> read = MongoDbGridFSIO.<String>read()
+        .withUri("mongodb://localhost:" + PORT)
+        .withDatabase(DATABASE)
+        .withBucket("crlfBucket");
+
+    BoundedGridFSSource src = new BoundedGridFSSource(read, null);
+
+    // sections of one 16 bytes chunk
+    List<? extends BoundedSource<ChunkRange>> splits = src.splitIntoBundles(16, options);
+    assertEquals(3, splits.size());
+
+    Mongo client = new Mongo("localhost", PORT);
+    try {
+      GridFS gridfs = new GridFS(client.getDB(DATABASE), "crlfBucket");
+      MongoDbGridFSIO.SplittableParser<String> parser =
+          (MongoDbGridFSIO.SplittableParser<String>) read.parser();
+      List<String> expected = Arrays.asList("abcdefghijklmno", "second line", "third");
+
+      List<String> sectionLines = new ArrayList<>();
+      for (BoundedSource<ChunkRange> subSource : splits) {
+        for (ChunkRange range : SourceTestUtils.readFromSource(subSource, options)) {
+          parser.parse(gridfs.find(range.getId()), range.getStartOffset(), range.getEndOffset(),
+              collectLines(sectionLines));
+        }
+      }
+      assertEquals(expected, sectionLines);
+
+      // the whole file is split into the same lines
+      List<String> fileLines = new ArrayList<>();
+      parser.parse(gridfs.findOne("crlf"), collectLines(fileLines));
+      assertEquals(expected, fileLines);
+    } finally {
+      client.close();
+    }
+  }
+
+  private static MongoDbGridFSIO.ParserCallback<String> collectLines(final List<String> lines) {
+    return new MongoDbGridFSIO.ParserCallback<String>() {
+      @Override
+      public void output(String output) {
+        lines.add(output);
+      }
+
+      @Override
+      public void output(String output, Instant timestamp) {
+        lines.add(output);
+      }
+    };
+  }
 }
@@ -19,6 +19,8 @@ package org.apache.beam.sdk.io.mongodb;
 
 import static org.junit.Assert.assertEquals;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBRef;
 import com.mongodb.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
@@ -38,7 +40,10 @@ import de.flapdoodle.embed.process.runtime.Network;
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.testing.NeedsRunner;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
@@ -174,6 +179,62 @@ public class MongoDbIOTest implements Serializable {
     pipeline.run();
   }
 
+  @Test
+  @Category(NeedsRunner.class)
+  public void testReadWithProjection() throws Exception {
+    TestPipeline pipeline = TestPipeline.create();
+
+    PCollection<Document> output = pipeline.apply(
+        MongoDbIO.read()
+        .withUri("mongodb://localhost:" + PORT)
+        .withDatabase(DATABASE)
+        .withCollection(COLLECTION)
+        .withFilter("{\"scientist\":\"Einstein\"}")
+        .withProjection("{\"_id\":0, \"scientist\":1}")
+        .withSort("{\"_id\":-1}")
+        .withCursorBatchSize(10));
+
+    PAssert.thatSingleton(output.apply("Count", Count.<Document>globally()))
+        .isEqualTo(100L);
+    PAssert.that(output).satisfies(new SerializableFunction<Iterable<Document>, Void>() {
+      @Override
+      public Void apply(Iterable<Document> input) {
+        for (Document document : input) {
+          assertEquals(new Document("scientist", "Einstein"), document);
+        }
+        return null;
+      }
+    });
+
+    pipeline.run();
+  }
+
+  @Test
+  public void testSplitFiltersMatchDocumentsWithoutSplitField() throws Exception {
+    MongoClient client = new MongoClient("localhost", PORT);
+    try {
+      MongoCollection<Document> collection =
+          client.getDatabase(DATABASE).getCollection("scores");
+      collection.insertOne(new Document("_id", 1).append("score", 10));
+      collection.insertOne(new Document("_id", 2).append("score", 20));
+      collection.insertOne(new Document("_id", 3).append("score", 30));
+      collection.insertOne(new Document("_id", 4));
+      collection.insertOne(new Document("_id", 5).append("score", null));
+      collection.insertOne(new Document("_id", 6).append("score", "high"));
+
+      List<String> filters = MongoDbIO.BoundedMongoDbSource.splitKeysToFilters(
+          Arrays.asList(new Document("score", 15), new Document("score", 25)), "score", null);
+
+      long count = 0;
+      for (String filter : filters) {
+        count += collection.count(Document.parse(filter));
+      }
+      assertEquals(6L, count);
+    } finally {
+      client.close();
+    }
+  }
+
   @Test
   @Category(NeedsRunner.class)
   public void testWrite() throws Exception {
@@ -205,4 +266,69 @@ public class MongoDbIOTest implements Serializable {
 
   }
 
+  @Test
+  @Category(NeedsRunner.class)
+  public void testWriteWithKeyField() throws Exception {
+    MongoClient client = new MongoClient("localhost", PORT);
+    MongoDatabase database = client.getDatabase("test");
+    MongoCollection<Document> collection = database.getCollection("test");
+    // the documents to replace exist before, so concurrent bulk writes don't race to insert them
+    for (int i = 0; i < 100; i++) {
+      collection.insertOne(new Document("key", i).append("value", -1));
+    }
+
+    TestPipeline pipeline = TestPipeline.create();
+
+    ArrayList<Document> data = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      data.add(Document.parse(String.format("{\"key\":%s, \"value\":%s}", i % 100, i)));
+    }
+    pipeline.apply(Create.of(data))
+        .apply(MongoDbIO.write().withUri("mongodb://localhost:" + PORT).withDatabase("test")
+            .withCollection("test").withKeyField("key").withBatchSize(10));
+
+    pipeline.run();
+
+    // documents with the same key replaced each other
+    Assert.assertEquals(100, collection.count());
+    Assert.assertEquals(1, collection.count(new Document("key", 42)));
+    Assert.assertEquals(0, collection.count(new Document("value", -1)));
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testWriteWithClientCodecs() throws Exception {
+    TestPipeline pipeline = TestPipeline.create();
+
+    // values which only the codecs of the client can encode
+    Document document = new Document("object", new BasicDBObject("field", 1))
+        .append("ref", new DBRef("other", 1));
+    pipeline.apply(Create.of(document))
+        .apply(MongoDbIO.write().withUri("mongodb://localhost:" + PORT).withDatabase("test")
+            .withCollection("test"));
+
+    pipeline.run();
+
+    MongoClient client = new MongoClient("localhost", PORT);
+    MongoCollection<Document> collection = client.getDatabase("test").getCollection("test");
+    Assert.assertEquals(1, collection.count(new Document("object.field", 1)));
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testWriteWithKeyFieldRejectsDocumentsWithoutKey() throws Exception {
+    TestPipeline pipeline = TestPipeline.create();
+
+    pipeline.apply(Create.of(Document.parse("{\"value\":1}")))
+        .apply(MongoDbIO.write().withUri("mongodb://localhost:" + PORT).withDatabase("test")
+            .withCollection("test").withKeyField("key"));
+
+    try {
+      pipeline.run();
+      Assert.fail("Writing a document without the key field should fail");
+    } catch (Pipeline.PipelineExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+  }
+
 }